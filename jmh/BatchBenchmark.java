@@ -0,0 +1,173 @@
+package stocks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * BatchBenchmark.java
+ * This class measures insert and delete, which change the number of stocks, with JMH for every engine,
+ * tree size and key distribution. The tree holds the even-numbered symbols, and insert adds odd-numbered ones.
+ * An invocation adds or removes a batch of BATCH distinct symbols, and the batch of the previous invocation
+ * is undone in a setup outside the measurement, so the tree keeps its size.
+ * JMH timestamps every invocation and runs the setup between them, which only stays negligible if an
+ * invocation takes well over a millisecond. A batch is therefore thousands of operations, which is
+ * at most a tenth of the tree, so the smallest size of StockBenchmark is left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+	/**
+   * The number of stocks an invocation adds or removes, at most a tenth of the smallest size.
+   */
+	static final int BATCH = 10_000;
+
+	@Param({"avl", "concurrent", "compact", "persistent", "sharded", "mapped"})
+	private String engine;
+	@Param({"100000", "1000000"})
+	private int size;
+	@Param({"sequential", "random", "zipfian"})
+	private String distribution;
+
+	private Engine stocks;
+	/**
+   * The symbols in the tree, in symbol order.
+   */
+	private String[] present;
+	/**
+   * The symbols between those in the tree, which are not in the tree between invocations.
+   */
+	private String[] absent;
+	/**
+   * The indices of all symbols without repeats, in the order of the distribution, which the batches
+   * are taken from.
+   */
+	private int[] batchOrder;
+
+	/**
+   * Method to fill the tree with the even-numbered symbols in random order and to prepare the order of the batches.
+   * @throws IOException If the engine cannot be created.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() throws IOException {
+		present = Workload.symbols(size, 0, 2);
+		absent = Workload.symbols(size, 1, 2);
+		Random random = new Random(Workload.SEED);
+		stocks = Engine.create(engine);
+		for (int index : Workload.permutation(size, random))
+			stocks.add(present[index], 100, 1000, 1000000);
+		batchOrder = Workload.distinctOrder(distribution, size, random);
+	}
+
+	/**
+   * Method to release the engine.
+   * @throws IOException If the engine cannot be closed.
+   */
+	@TearDown(Level.Trial)
+	public void
+	tearDown() throws IOException {
+		stocks.close();
+	}
+
+	/**
+   * Method to add a batch of stocks that are not in the tree.
+   * @param batch The symbols of the batch.
+   * @param blackhole The sink of the results.
+   */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void
+	insert(Inserts batch, Blackhole blackhole) {
+		for (String symbol : batch.symbols)
+			blackhole.consume(stocks.add(symbol, 100, 1000, 1000000));
+	}
+
+	/**
+   * Method to remove a batch of stocks from the tree.
+   * @param batch The symbols of the batch.
+   * @param blackhole The sink of the results.
+   */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void
+	delete(Removals batch, Blackhole blackhole) {
+		for (String symbol : batch.symbols)
+			blackhole.consume(stocks.remove(symbol));
+	}
+
+	/**
+   * Class holding the symbols the next invocation of insert adds.
+   */
+	@State(Scope.Thread)
+	public static class Inserts {
+		private final String[] symbols = new String[BATCH];
+		private int from;
+		private boolean filled;
+
+		/**
+     * Method to remove the stocks the previous invocation added and to pick the next batch of absent symbols.
+     * @param benchmark The benchmark holding the tree.
+     */
+		@Setup(Level.Invocation)
+		public void
+		setUp(BatchBenchmark benchmark) {
+			if (filled) {
+				for (String symbol : symbols)
+					benchmark.stocks.remove(symbol);
+			}
+			for (int i = 0; i < BATCH; i++) {
+				symbols[i] = benchmark.absent[benchmark.batchOrder[from]];
+				from = (from + 1) % benchmark.size;
+			}
+			filled = true;
+		}
+	}
+
+	/**
+   * Class holding the symbols the next invocation of delete removes.
+   */
+	@State(Scope.Thread)
+	public static class Removals {
+		private final String[] symbols = new String[BATCH];
+		private int from;
+		private boolean filled;
+
+		/**
+     * Method to add back the stocks the previous invocation removed and to pick the next batch of present symbols.
+     * @param benchmark The benchmark holding the tree.
+     */
+		@Setup(Level.Invocation)
+		public void
+		setUp(BatchBenchmark benchmark) {
+			if (filled) {
+				for (String symbol : symbols)
+					benchmark.stocks.add(symbol, 100, 1000, 1000000);
+			}
+			for (int i = 0; i < BATCH; i++) {
+				symbols[i] = benchmark.present[benchmark.batchOrder[from]];
+				from = (from + 1) % benchmark.size;
+			}
+			filled = true;
+		}
+	}
+}
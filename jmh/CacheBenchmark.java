@@ -0,0 +1,85 @@
+package stocks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CacheBenchmark.java
+ * This class measures the search cache of the CompactStockDataManager on a Zipfian workload with JMH,
+ * for every cache capacity, where 0 disables the cache. With scan, every fifth search is taken from a scan
+ * over all symbols instead, which a scan-resistant cache keeps from pushing out the hot symbols.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+	/**
+   * The number of stocks in the manager.
+   */
+	private static final int SIZE = 1_000_000;
+
+	/**
+   * The length of the order of the searches, a power of two of at least the size.
+   */
+	private static final int ORDER_LENGTH = 1 << 21;
+
+	@Param({"0", "1000", "10000", "100000"})
+	private int capacity;
+	@Param({"false", "true"})
+	private boolean scan;
+
+	private CompactStockDataManager manager;
+	private String[] symbols;
+	/**
+   * The indices of the symbols the searches touch.
+   */
+	private int[] order;
+	private int cursor;
+
+	/**
+   * Method to fill the manager with the symbols in random order, to enable the cache and to prepare the order.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() {
+		symbols = Workload.symbols(SIZE, 0, 1);
+		Random random = new Random(Workload.SEED);
+		manager = new CompactStockDataManager();
+		for (int index : Workload.permutation(SIZE, random))
+			manager.addOrUpdateStock(symbols[index], 100, 1000, 1000000);
+		if (capacity > 0)
+			manager.enableSearchCache(capacity);
+		order = Workload.order("zipfian", SIZE, ORDER_LENGTH, random);
+		if (scan) {
+			for (int i = 0; i < ORDER_LENGTH; i += 5)
+				order[i] = (i / 5) % SIZE;
+		}
+	}
+
+	/**
+   * Method to search for the next stock of the order.
+   * @return The stock, which JMH consumes.
+   */
+	@Benchmark
+	public Stock
+	search() {
+		String symbol = symbols[order[cursor]];
+		cursor = (cursor + 1) & (ORDER_LENGTH - 1);
+		return manager.searchStock(symbol);
+	}
+}
@@ -0,0 +1,99 @@
+package stocks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * ConcurrentBenchmark.java
+ * This class measures the throughput of the ConcurrentStockDataManager under a 95/5 read/write mix with JMH,
+ * for every tree size. Every thread walks its own random order of existing symbols and updates every
+ * twentieth one instead of searching it. The number of threads is chosen with the -t option of JMH,
+ * so the scaling is found by running it with 1, 2, 4, ... threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ConcurrentBenchmark {
+	/**
+   * The length of the order of every thread, a power of two of at least the largest size.
+   */
+	private static final int ORDER_LENGTH = 1 << 20;
+
+	/**
+   * The number of operations per write, so 5% of the operations are writes.
+   */
+	private static final int WRITE_INTERVAL = 20;
+
+	@Param({"1000", "100000", "1000000"})
+	private int size;
+
+	private ConcurrentStockDataManager manager;
+	private String[] symbols;
+
+	/**
+   * Method to fill the manager with the symbols in random order.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() {
+		symbols = Workload.symbols(size, 0, 1);
+		manager = new ConcurrentStockDataManager();
+		for (int index : Workload.permutation(size, new Random(Workload.SEED)))
+			manager.addOrUpdateStock(symbols[index], 100, 1000, 1000000);
+	}
+
+	/**
+   * Method to search or, for every twentieth operation of a thread, update a stock.
+   * @param thread The order of the calling thread.
+   * @return The stock searched, or null for an update, which JMH consumes.
+   */
+	@Benchmark
+	public Stock
+	mixed(Cursor thread) {
+		int index = thread.order[thread.position];
+		thread.position = (thread.position + 1) & (ORDER_LENGTH - 1);
+		if (++thread.count == WRITE_INTERVAL) {
+			thread.count = 0;
+			manager.addOrUpdateStock(symbols[index], index, 1000, 1000000);
+			return null;
+		}
+		return manager.searchStock(symbols[index]);
+	}
+
+	/**
+   * Class holding the order of the symbols of one thread.
+   */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int[] order;
+		private int position;
+		private int count;
+
+		/**
+     * Method to draw the order of the thread, seeded by its index so the threads touch different symbols.
+     * @param benchmark The benchmark holding the manager.
+     * @param params The parameters of the thread.
+     */
+		@Setup(Level.Trial)
+		public void
+		setUp(ConcurrentBenchmark benchmark, ThreadParams params) {
+			order = Workload.order("random", benchmark.size, ORDER_LENGTH, new Random(Workload.SEED + params.getThreadIndex()));
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package stocks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Engine.java
+ * This class gives the JMH benchmarks one view of the stock data managers. StockDataManager, its subclasses
+ * and CompactStockDataManager implement StockStore and share one adapter; the persistent, sharded and mapped
+ * managers have an adapter each. Every benchmark fork creates a single engine, so the calls through this class
+ * stay monomorphic there and are inlined like direct calls to the manager.
+ */
+abstract class Engine {
+	/**
+   * The number of shards of the sharded engine.
+   */
+	private static final int SHARDS = 4;
+
+	/**
+   * Method to create an empty engine by name.
+   * @param name The name of the engine, avl, concurrent, compact, persistent, sharded or mapped.
+   * @return The engine.
+   * @throws IOException If the file of the mapped engine cannot be created.
+   * @throws IllegalArgumentException If the name is unknown.
+   */
+	static Engine
+	create(String name) throws IOException {
+		switch (name) {
+		case "avl":
+			return new Store(new StockDataManager());
+		case "concurrent":
+			return new Store(new ConcurrentStockDataManager());
+		case "compact":
+			return new Store(new CompactStockDataManager());
+		case "persistent":
+			return new Persistent();
+		case "sharded":
+			return new Sharded();
+		case "mapped":
+			return new Mapped();
+		default:
+			throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+
+	/**
+   * Method to add a stock or update the values of an existing one.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return The result of the manager, which the caller consumes.
+   */
+	abstract int
+	add(String symbol, double price, long volume, long marketCap);
+
+	/**
+   * Method to search for a stock.
+   * @param symbol The symbol of the stock.
+   * @return The stock, or null if not found.
+   */
+	abstract Stock
+	search(String symbol);
+
+	/**
+   * Method to remove a stock.
+   * @param symbol The symbol of the stock.
+   * @return The removed stock, or null if not found.
+   */
+	abstract Stock
+	remove(String symbol);
+
+	/**
+   * Method to update a stock, which may change its symbol.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param newSymbol The new symbol of the stock.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   * @return The updated stock, or null if not found.
+   */
+	abstract Stock
+	update(String symbol, String newSymbol, double price, long volume, long marketCap);
+
+	/**
+   * Method to pass every stock to an action in symbol order.
+   * @param action The action.
+   */
+	abstract void
+	forEach(Consumer<Stock> action);
+
+	/**
+   * Method to release the resources of the engine.
+   * @throws IOException If the resources cannot be released.
+   */
+	void
+	close() throws IOException {
+		// most engines hold nothing but heap memory
+	}
+
+	/**
+   * Engine class over a manager implementing StockStore.
+   */
+	private static final class Store extends Engine {
+		private final StockStore manager;
+
+		/**
+     * Constructor to wrap a manager.
+     * @param manager The manager.
+     */
+		Store(StockStore manager) {
+			this.manager = manager;
+		}
+
+		/**
+     * Method to add or update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
+     * @return The result of the manager.
+     */
+		@Override
+		int
+		add(String symbol, double price, long volume, long marketCap) {
+			return manager.addOrUpdateStock(symbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to search the manager for a stock.
+     * @param symbol The symbol of the stock.
+     * @return The stock, or null if not found.
+     */
+		@Override
+		Stock
+		search(String symbol) {
+			return manager.searchStock(symbol);
+		}
+
+		/**
+     * Method to remove a stock from the manager.
+     * @param symbol The symbol of the stock.
+     * @return The removed stock, or null if not found.
+     */
+		@Override
+		Stock
+		remove(String symbol) {
+			return manager.removeStock(symbol);
+		}
+
+		/**
+     * Method to update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param newSymbol The new symbol of the stock.
+     * @param price The new price of the stock.
+     * @param volume The new volume of the stock.
+     * @param marketCap The new market capitalization of the stock.
+     * @return The updated stock, or null if not found.
+     */
+		@Override
+		Stock
+		update(String symbol, String newSymbol, double price, long volume, long marketCap) {
+			return manager.updateStock(symbol, newSymbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to traverse the stocks of the manager in symbol order.
+     * @param action The action.
+     */
+		@Override
+		void
+		forEach(Consumer<Stock> action) {
+			manager.rangeStocks(null, null).forEach(action);
+		}
+	}
+
+	/**
+   * Engine class over a PersistentStockDataManager, which is traversed through a snapshot.
+   */
+	private static final class Persistent extends Engine {
+		private final PersistentStockDataManager manager = new PersistentStockDataManager();
+
+		/**
+     * Method to add or update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
+     * @return The result of the manager.
+     */
+		@Override
+		int
+		add(String symbol, double price, long volume, long marketCap) {
+			return manager.addOrUpdateStock(symbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to search the manager for a stock.
+     * @param symbol The symbol of the stock.
+     * @return The stock, or null if not found.
+     */
+		@Override
+		Stock
+		search(String symbol) {
+			return manager.searchStock(symbol);
+		}
+
+		/**
+     * Method to remove a stock from the manager.
+     * @param symbol The symbol of the stock.
+     * @return The removed stock, or null if not found.
+     */
+		@Override
+		Stock
+		remove(String symbol) {
+			return manager.removeStock(symbol);
+		}
+
+		/**
+     * Method to update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param newSymbol The new symbol of the stock.
+     * @param price The new price of the stock.
+     * @param volume The new volume of the stock.
+     * @param marketCap The new market capitalization of the stock.
+     * @return The updated stock, or null if not found.
+     */
+		@Override
+		Stock
+		update(String symbol, String newSymbol, double price, long volume, long marketCap) {
+			return manager.updateStock(symbol, newSymbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to traverse the stocks of the manager in symbol order.
+     * @param action The action.
+     */
+		@Override
+		void
+		forEach(Consumer<Stock> action) {
+			manager.snapshot().forEach(action);
+		}
+	}
+
+	/**
+   * Engine class over a ShardedStockDataManager of SHARDS shards, which is traversed by merging the shards.
+   */
+	private static final class Sharded extends Engine {
+		private final ShardedStockDataManager manager = new ShardedStockDataManager(SHARDS);
+
+		/**
+     * Method to add or update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
+     * @return The result of the manager.
+     */
+		@Override
+		int
+		add(String symbol, double price, long volume, long marketCap) {
+			return manager.addOrUpdateStock(symbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to search the manager for a stock.
+     * @param symbol The symbol of the stock.
+     * @return The stock, or null if not found.
+     */
+		@Override
+		Stock
+		search(String symbol) {
+			return manager.searchStock(symbol);
+		}
+
+		/**
+     * Method to remove a stock from the manager.
+     * @param symbol The symbol of the stock.
+     * @return The removed stock, or null if not found.
+     */
+		@Override
+		Stock
+		remove(String symbol) {
+			return manager.removeStock(symbol);
+		}
+
+		/**
+     * Method to update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param newSymbol The new symbol of the stock.
+     * @param price The new price of the stock.
+     * @param volume The new volume of the stock.
+     * @param marketCap The new market capitalization of the stock.
+     * @return The updated stock, or null if not found.
+     */
+		@Override
+		Stock
+		update(String symbol, String newSymbol, double price, long volume, long marketCap) {
+			return manager.updateStock(symbol, newSymbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to traverse the stocks of the manager in symbol order.
+     * @param action The action.
+     */
+		@Override
+		void
+		forEach(Consumer<Stock> action) {
+			manager.rangeStocks(null, null).forEach(action);
+		}
+	}
+
+	/**
+   * Engine class over a MappedStockDataManager on a file in a temporary directory, which close deletes.
+   */
+	private static final class Mapped extends Engine {
+		private final Path directory;
+		private final Path file;
+		private final MappedStockDataManager manager;
+
+		/**
+     * Constructor to create the manager on a new file.
+     * @throws IOException If the file cannot be created.
+     */
+		Mapped() throws IOException {
+			directory = Files.createTempDirectory("stocks");
+			file = directory.resolve("stocks.db");
+			manager = new MappedStockDataManager(file);
+		}
+
+		/**
+     * Method to add or update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
+     * @return The result of the manager.
+     */
+		@Override
+		int
+		add(String symbol, double price, long volume, long marketCap) {
+			return manager.addOrUpdateStock(symbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to search the manager for a stock.
+     * @param symbol The symbol of the stock.
+     * @return The stock, or null if not found.
+     */
+		@Override
+		Stock
+		search(String symbol) {
+			return manager.searchStock(symbol);
+		}
+
+		/**
+     * Method to remove a stock from the manager.
+     * @param symbol The symbol of the stock.
+     * @return The removed stock, or null if not found.
+     */
+		@Override
+		Stock
+		remove(String symbol) {
+			return manager.removeStock(symbol);
+		}
+
+		/**
+     * Method to update a stock in the manager.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param newSymbol The new symbol of the stock.
+     * @param price The new price of the stock.
+     * @param volume The new volume of the stock.
+     * @param marketCap The new market capitalization of the stock.
+     * @return The updated stock, or null if not found.
+     */
+		@Override
+		Stock
+		update(String symbol, String newSymbol, double price, long volume, long marketCap) {
+			return manager.updateStock(symbol, newSymbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to traverse the stocks of the manager in symbol order.
+     * @param action The action.
+     */
+		@Override
+		void
+		forEach(Consumer<Stock> action) {
+			manager.rangeStocks(null, null).forEach(action);
+		}
+
+		/**
+     * Method to close the manager and delete its file.
+     * @throws IOException If the manager cannot be closed or the file cannot be deleted.
+     */
+		@Override
+		void
+		close() throws IOException {
+			manager.close();
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(directory);
+		}
+	}
+}
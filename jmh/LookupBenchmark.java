@@ -0,0 +1,105 @@
+package stocks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LookupBenchmark.java
+ * This class compares point lookups in the AVL tree and in the hash index with JMH, for every tree size and
+ * key distribution. Both structures hold the same stocks and are queried in the same order. The queries are
+ * copies of the stored symbols, as they would be after parsing a command, so no comparison can stop at the
+ * identity of the strings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+	/**
+   * The length of the order of the lookups, a power of two of at least the largest size.
+   */
+	private static final int ORDER_LENGTH = 1 << 20;
+
+	@Param({"1000", "100000", "1000000"})
+	private int size;
+	@Param({"sequential", "random", "zipfian"})
+	private String distribution;
+
+	private AVLTree tree;
+	private SymbolIndex index;
+	/**
+   * The copies of the symbols in the tree, in symbol order.
+   */
+	private String[] queries;
+	/**
+   * The indices of the symbols the lookups touch, in the order of the distribution.
+   */
+	private int[] order;
+	private int cursor;
+
+	/**
+   * Method to fill the tree and the index with the same stocks in random order and to prepare the order.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() {
+		String[] symbols = Workload.symbols(size, 0, 1);
+		Random random = new Random(Workload.SEED);
+		tree = new AVLTree();
+		index = new SymbolIndex();
+		for (int i : Workload.permutation(size, random)) {
+			Stock stock = new Stock(symbols[i], 100, 1000, 1000000);
+			tree.insert(stock);
+			index.put(stock);
+		}
+		queries = new String[size];
+		for (int i = 0; i < size; i++)
+			queries[i] = new String(symbols[i].toCharArray());
+		order = Workload.order(distribution, size, ORDER_LENGTH, random);
+	}
+
+	/**
+   * Method to look up a stock in the AVL tree.
+   * @return The stock, which JMH consumes.
+   */
+	@Benchmark
+	public Stock
+	tree() {
+		return tree.search(queries[next()]);
+	}
+
+	/**
+   * Method to look up a stock in the hash index.
+   * @return The stock, which JMH consumes.
+   */
+	@Benchmark
+	public Stock
+	index() {
+		return index.get(queries[next()]);
+	}
+
+	/**
+   * Method to take the next index of the order.
+   * @return The index of the symbol.
+   */
+	private int
+	next() {
+		int next = order[cursor];
+		cursor = (cursor + 1) & (ORDER_LENGTH - 1);
+		return next;
+	}
+}
@@ -0,0 +1,109 @@
+package stocks;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OutputBenchmark.java
+ * This class measures printing one result line per stock to a file with JMH, for every tree size: through a
+ * PrintStream that flushes every line, as System.out does, through an OutputSink, and through printTree to an
+ * OutputSink. An invocation prints every stock once and rewrites the file from the start.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class OutputBenchmark {
+	@Param({"1000", "100000"})
+	private int size;
+
+	private StockDataManager manager;
+	private String[] symbols;
+	private Path file;
+
+	/**
+   * Method to fill the manager with the symbols in random order and to create the output file.
+   * @throws IOException If the file cannot be created.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() throws IOException {
+		symbols = Workload.symbols(size, 0, 1);
+		manager = new StockDataManager();
+		for (int index : Workload.permutation(size, new Random(Workload.SEED)))
+			manager.addOrUpdateStock(symbols[index], 100, 1000, 1000000);
+		file = Files.createTempFile("output", ".txt");
+	}
+
+	/**
+   * Method to delete the output file.
+   * @throws IOException If the file cannot be deleted.
+   */
+	@TearDown(Level.Trial)
+	public void
+	tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	/**
+   * Method to search every stock and print it through a PrintStream that flushes every line.
+   * @throws IOException If the file cannot be written.
+   */
+	@Benchmark
+	public void
+	printStream() throws IOException {
+		try (PrintStream out = new PrintStream(new FileOutputStream(file.toFile()), true)) {
+			for (String symbol : symbols)
+				out.println("Stock found:     " + manager.searchStock(symbol));
+		}
+	}
+
+	/**
+   * Method to search every stock and print it through an OutputSink.
+   * @throws IOException If the file cannot be written.
+   */
+	@Benchmark
+	public void
+	outputSink() throws IOException {
+		try (FileOutputStream stream = new FileOutputStream(file.toFile())) {
+			OutputSink out = new OutputSink(stream, OutputSink.DEFAULT_BUFFER_SIZE);
+			for (String symbol : symbols)
+				out.print("Stock found:     ").print(manager.searchStock(symbol)).println();
+			out.flush();
+		}
+	}
+
+	/**
+   * Method to print the whole tree through an OutputSink.
+   * @throws IOException If the file cannot be written.
+   */
+	@Benchmark
+	public void
+	printTree() throws IOException {
+		try (FileOutputStream stream = new FileOutputStream(file.toFile())) {
+			OutputSink out = new OutputSink(stream, OutputSink.DEFAULT_BUFFER_SIZE);
+			manager.printTree(out);
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package stocks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ParseBenchmark.java
+ * This class compares reading an input file with BufferedReader.readLine and String.split, as Main used to,
+ * with the CommandParser, with JMH. The file holds ADD, SEARCH and UPDATE commands on 10000 symbols, and an
+ * invocation reads all of it, so the time and the allocation reported by the gc profiler are per line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+	/**
+   * The number of lines of the file.
+   */
+	static final int LINES = 100_000;
+
+	private Path file;
+
+	/**
+   * Method to write the command file.
+   * @throws IOException If the file cannot be written.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() throws IOException {
+		file = Files.createTempFile("commands", ".txt");
+		Random random = new Random(Workload.SEED);
+		try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+			for (int i = 0; i < LINES; i++) {
+				String symbol = "SYM" + random.nextInt(10000);
+				switch (i % 3) {
+				case 0:
+					writer.write("ADD " + symbol + " " + random.nextInt(100000) / 100.0 + " " + i + " " + 1000L * i);
+					break;
+				case 1:
+					writer.write("SEARCH " + symbol);
+					break;
+				default:
+					writer.write("UPDATE " + symbol + " " + symbol + " 12.5 " + i + " " + 2000L * i);
+					break;
+				}
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+   * Method to delete the command file.
+   * @throws IOException If the file cannot be deleted.
+   */
+	@TearDown(Level.Trial)
+	public void
+	tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	/**
+   * Method to read the file line by line and split every line into its tokens.
+   * @return The checksum of the parsed values, which JMH consumes.
+   * @throws IOException If the file cannot be read.
+   */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long
+	split() throws IOException {
+		long checksum = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] tokens = line.split(" ");
+				if (tokens[0].equals("ADD"))
+					checksum += (long)Double.parseDouble(tokens[2]) + Long.parseLong(tokens[3]) + tokens[1].length();
+				else if (tokens[0].equals("UPDATE"))
+					checksum += (long)Double.parseDouble(tokens[3]) + Long.parseLong(tokens[4]) + tokens[2].length();
+				else
+					checksum += tokens[1].length();
+			}
+		}
+		return checksum;
+	}
+
+	/**
+   * Method to read the file with the CommandParser into a single reused command.
+   * @return The checksum of the parsed values, which JMH consumes.
+   * @throws IOException If the file cannot be read.
+   */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long
+	parser() throws IOException {
+		long checksum = 0;
+		try (CommandParser parser = new CommandParser(file)) {
+			Command command = new Command();
+			while (parser.next(command)) {
+				if (command.getType() == Command.Type.ADD)
+					checksum += (long)command.getPrice() + command.getVolume() + command.getSymbol().length();
+				else if (command.getType() == Command.Type.UPDATE)
+					checksum += (long)command.getPrice() + command.getVolume() + command.getNewSymbol().length();
+				else
+					checksum += command.getSymbol().length();
+			}
+		}
+		return checksum;
+	}
+}
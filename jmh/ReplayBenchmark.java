@@ -0,0 +1,152 @@
+package stocks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReplayBenchmark.java
+ * This class measures replaying a command file into a fresh manager with JMH, for every number of shards.
+ * With 0 shards the commands are applied to a single StockDataManager on the calling thread, as Main does;
+ * otherwise a ParallelReplay applies them to a ShardedStockDataManager. The file holds ADD, SEARCH, REMOVE
+ * and UPDATE commands on 100000 symbols, and one UPDATE in ten renames the stock, which mostly moves it to
+ * another shard. The skewed file renames one stock to another shard and then only searches for its new
+ * symbol, which fills the queue of the receiving shard while the sending shard is still filling its batch,
+ * so a replay that can stall never finishes. The time and the allocation are per line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+	/**
+   * The number of lines of the files.
+   */
+	static final int LINES = 1_000_000;
+
+	@Param({"0", "1", "2", "4", "8"})
+	private int shards;
+
+	private Path mixed;
+	private Path skewed;
+
+	/**
+   * Method to write the mixed and the skewed command files.
+   * @throws IOException If a file cannot be written.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() throws IOException {
+		mixed = Files.createTempFile("commands", ".txt");
+		Random random = new Random(Workload.SEED);
+		try (BufferedWriter writer = Files.newBufferedWriter(mixed)) {
+			for (int i = 0; i < LINES; i++) {
+				String symbol = "SYM" + random.nextInt(100000);
+				int kind = random.nextInt(100);
+				if (kind < 40)
+					writer.write("ADD " + symbol + " " + random.nextInt(100000) / 100.0 + " " + i + " " + 1000L * i);
+				else if (kind < 75)
+					writer.write("SEARCH " + symbol);
+				else if (kind < 80)
+					writer.write("REMOVE " + symbol);
+				else if (kind < 98)
+					writer.write("UPDATE " + symbol + " " + symbol + " 12.5 " + i + " " + 2000L * i);
+				else
+					writer.write("UPDATE " + symbol + " SYM" + random.nextInt(100000) + " 12.5 " + i + " " + 2000L * i);
+				writer.newLine();
+			}
+		}
+
+		// the shard is the low bits of a hash, so symbols on different shards of two are on different shards of any power of two
+		ShardedStockDataManager pair = new ShardedStockDataManager(2);
+		int other = 1;
+		while (pair.shardOf("SYM" + other) == pair.shardOf("SYM0"))
+			other++;
+		skewed = Files.createTempFile("skewed", ".txt");
+		try (BufferedWriter writer = Files.newBufferedWriter(skewed)) {
+			writer.write("ADD SYM" + other + " 10.0 1000 1000000");
+			writer.newLine();
+			writer.write("UPDATE SYM" + other + " SYM0 12.5 2000 2000000");
+			writer.newLine();
+			for (int i = 2; i < LINES; i++) {
+				writer.write("SEARCH SYM0");
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+   * Method to delete the command files.
+   * @throws IOException If a file cannot be deleted.
+   */
+	@TearDown(Level.Trial)
+	public void
+	tearDown() throws IOException {
+		Files.delete(mixed);
+		Files.delete(skewed);
+	}
+
+	/**
+   * Method to replay the mixed file.
+   * @return The number of commands per outcome, which JMH consumes.
+   * @throws IOException If the file cannot be read.
+   */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long[]
+	mixed() throws IOException {
+		return replay(mixed);
+	}
+
+	/**
+   * Method to replay the skewed file.
+   * @return The number of commands per outcome, which JMH consumes.
+   * @throws IOException If the file cannot be read.
+   */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long[]
+	skewed() throws IOException {
+		return replay(skewed);
+	}
+
+	/**
+   * Method to replay a file into a fresh manager with the number of shards of the trial.
+   * @param file The command file.
+   * @return The number of commands per outcome, indexed by the ordinal of Command.Outcome.
+   * @throws IOException If the file cannot be read.
+   */
+	private long[]
+	replay(Path file) throws IOException {
+		try (CommandParser parser = new CommandParser(file)) {
+			if (shards > 0)
+				return new ParallelReplay(new ShardedStockDataManager(shards)).replay(parser, null);
+
+			long[] outcomes = new long[Command.Outcome.values().length];
+			StockDataManager manager = new StockDataManager();
+			Command command = new Command();
+			while (parser.next(command))
+				outcomes[Main.processCommand(command, manager, null).ordinal()]++;
+			return outcomes;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package stocks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * StockBenchmark.java
+ * This class measures the point operations of the stock data managers with JMH, for every engine, tree size
+ * and key distribution. The tree holds the even-numbered symbols; the odd-numbered ones lie between them and
+ * are only in the tree while rename puts them there. All symbols and orders are prepared before the
+ * measurement, so the measured code only looks up the next symbol in an array.
+ * Rename renames a stock to its odd neighbour and back, so it counts as two operations and leaves the tree
+ * as it was. Insert and delete change the number of stocks, so BatchBenchmark measures them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StockBenchmark {
+	/**
+   * The length of the order of the point operations, a power of two of at least the largest size,
+   * so a sequential order visits every stock and a random order does not repeat within a tree.
+   */
+	private static final int ORDER_LENGTH = 1 << 20;
+
+	@Param({"avl", "concurrent", "compact", "persistent", "sharded", "mapped"})
+	private String engine;
+	@Param({"1000", "100000", "1000000"})
+	private int size;
+	@Param({"sequential", "random", "zipfian"})
+	private String distribution;
+
+	private Engine stocks;
+	/**
+   * The symbols in the tree, in symbol order.
+   */
+	private String[] present;
+	/**
+   * The symbols between those in the tree, which are not in the tree between invocations.
+   */
+	private String[] absent;
+	/**
+   * The indices of the symbols the point operations touch, in the order of the distribution.
+   */
+	private int[] order;
+	private int cursor;
+
+	/**
+   * Method to fill the tree with the even-numbered symbols in random order and to prepare the orders.
+   * @throws IOException If the engine cannot be created.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() throws IOException {
+		present = Workload.symbols(size, 0, 2);
+		absent = Workload.symbols(size, 1, 2);
+		Random random = new Random(Workload.SEED);
+		stocks = Engine.create(engine);
+		for (int index : Workload.permutation(size, random))
+			stocks.add(present[index], 100, 1000, 1000000);
+		order = Workload.order(distribution, size, ORDER_LENGTH, random);
+	}
+
+	/**
+   * Method to release the engine.
+   * @throws IOException If the engine cannot be closed.
+   */
+	@TearDown(Level.Trial)
+	public void
+	tearDown() throws IOException {
+		stocks.close();
+	}
+
+	/**
+   * Method to search for a stock in the tree.
+   * @return The stock, which JMH consumes.
+   */
+	@Benchmark
+	public Stock
+	search() {
+		return stocks.search(present[next()]);
+	}
+
+	/**
+   * Method to add a stock that is in the tree already, which only updates its values.
+   * @return The result of the engine, which JMH consumes.
+   */
+	@Benchmark
+	public int
+	upsert() {
+		int index = next();
+		return stocks.add(present[index], index, 2000, 2000000);
+	}
+
+	/**
+   * Method to rename a stock to the symbol after it and back, which moves it in the tree twice.
+   * @return The stock renamed back, which JMH consumes.
+   */
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public Stock
+	rename() {
+		int index = next();
+		stocks.update(present[index], absent[index], 100, 1000, 1000000);
+		return stocks.update(absent[index], present[index], 100, 1000, 1000000);
+	}
+
+	/**
+   * Method to take the next index of the order.
+   * @return The index of the symbol.
+   */
+	private int
+	next() {
+		int index = order[cursor];
+		cursor = (cursor + 1) & (ORDER_LENGTH - 1);
+		return index;
+	}
+}
@@ -0,0 +1,72 @@
+package stocks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * TraversalBenchmark.java
+ * This class measures an in-order traversal of all stocks of the stock data managers with JMH, for every
+ * engine and tree size. A traversal touches every stock, so it has no key distribution.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TraversalBenchmark {
+	@Param({"avl", "concurrent", "compact", "persistent", "sharded", "mapped"})
+	private String engine;
+	@Param({"1000", "100000", "1000000"})
+	private int size;
+
+	private Engine stocks;
+
+	/**
+   * Method to fill the tree with the symbols in random order.
+   * @throws IOException If the engine cannot be created.
+   */
+	@Setup(Level.Trial)
+	public void
+	setUp() throws IOException {
+		String[] symbols = Workload.symbols(size, 0, 1);
+		stocks = Engine.create(engine);
+		for (int index : Workload.permutation(size, new Random(Workload.SEED)))
+			stocks.add(symbols[index], 100, 1000, 1000000);
+	}
+
+	/**
+   * Method to release the engine.
+   * @throws IOException If the engine cannot be closed.
+   */
+	@TearDown(Level.Trial)
+	public void
+	tearDown() throws IOException {
+		stocks.close();
+	}
+
+	/**
+   * Method to visit every stock in symbol order.
+   * @param blackhole The sink of the stocks.
+   */
+	@Benchmark
+	public void
+	traverse(Blackhole blackhole) {
+		stocks.forEach(blackhole::consume);
+	}
+}
@@ -0,0 +1,140 @@
+package stocks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Workload.java
+ * This class prepares the symbols and the orders in which the JMH benchmarks touch them, before anything is measured.
+ * The symbols have a fixed width, so the order of their numbers is also their symbol order.
+ * An order is a distribution of indices into an array of symbols:
+ * sequential walks the symbols from the first to the last, random picks them uniformly, and zipfian picks
+ * them with a Zipf distribution of exponent 0.99, where the symbols are ranked in random order so the hot
+ * ones are spread over the tree instead of forming one subtree.
+ */
+final class Workload {
+	/**
+   * The seed of the random orders, so every fork and every engine sees the same workload.
+   */
+	static final long SEED = 42;
+
+	/**
+   * The exponent of the Zipf distribution.
+   */
+	private static final double ZIPF_EXPONENT = 0.99;
+
+	/**
+   * Private constructor to prevent instantiation of the class.
+   */
+	private Workload() {
+		// private constructor to hide the implicit public one
+	}
+
+	/**
+   * Method to create symbols with evenly spaced numbers.
+   * 
+   * @param count The number of symbols.
+   * @param first The number of the first symbol.
+   * @param step The difference between the numbers of neighbouring symbols.
+   * @return The symbols in symbol order.
+   */
+	static String[]
+	symbols(int count, int first, int step) {
+		String[] symbols = new String[count];
+		for (int i = 0; i < count; i++)
+			symbols[i] = String.format("SYM%09d", first + (long)i * step);
+		return symbols;
+	}
+
+	/**
+   * Method to shuffle the indices of an array.
+   * @param n The length of the array.
+   * @param random The source of randomness.
+   * @return The indices 0 to n - 1 in random order.
+   */
+	static int[]
+	permutation(int n, Random random) {
+		int[] indices = new int[n];
+		for (int i = 0; i < n; i++)
+			indices[i] = i;
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = indices[i];
+			indices[i] = indices[j];
+			indices[j] = swap;
+		}
+		return indices;
+	}
+
+	/**
+   * Method to draw an order of indices, which may repeat.
+   * 
+   * @param distribution The distribution: sequential, random or zipfian.
+   * @param n The number of symbols.
+   * @param length The length of the order.
+   * @param random The source of randomness.
+   * @return The order.
+   * @throws IllegalArgumentException If the distribution is unknown.
+   */
+	static int[]
+	order(String distribution, int n, int length, Random random) {
+		int[] order = new int[length];
+		switch (distribution) {
+		case "sequential":
+			for (int i = 0; i < length; i++)
+				order[i] = i % n;
+			return order;
+		case "random":
+			for (int i = 0; i < length; i++)
+				order[i] = random.nextInt(n);
+			return order;
+		case "zipfian":
+			int[] ranked = permutation(n, random);
+			double[] cumulative = new double[n];
+			double total = 0;
+			for (int i = 0; i < n; i++) {
+				total += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+				cumulative[i] = total;
+			}
+			for (int i = 0; i < length; i++) {
+				int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+				order[i] = ranked[(rank < 0) ? Math.min(-rank - 1, n - 1) : rank];
+			}
+			return order;
+		default:
+			throw new IllegalArgumentException("Unknown distribution: " + distribution);
+		}
+	}
+
+	/**
+   * Method to order all indices without repeats, for the benchmarks that must touch every symbol once.
+   * The zipfian order takes the indices in the order of their first draw, so the hot symbols come first,
+   * followed by the symbols not drawn in random order.
+   * 
+   * @param distribution The distribution: sequential, random or zipfian.
+   * @param n The number of symbols.
+   * @param random The source of randomness.
+   * @return The indices 0 to n - 1 in the order of the distribution.
+   * @throws IllegalArgumentException If the distribution is unknown.
+   */
+	static int[]
+	distinctOrder(String distribution, int n, Random random) {
+		if (!distribution.equals("zipfian"))
+			return distribution.equals("random") ? permutation(n, random) : order(distribution, n, n, random);
+
+		int[] order = new int[n];
+		boolean[] taken = new boolean[n];
+		int count = 0;
+		for (int index : order(distribution, n, 4 * n, random)) {
+			if (!taken[index]) {
+				taken[index] = true;
+				order[count++] = index;
+			}
+		}
+		for (int index : permutation(n, random)) {
+			if (!taken[index])
+				order[count++] = index;
+		}
+		return order;
+	}
+}
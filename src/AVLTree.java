@@ -1,78 +1,420 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * AVLTree.java
  * This class implements an AVL tree to store Stock objects.
  * The tree is balanced after every insertion and deletion.
- * The tree is traversed in-order to display the stocks.
+ * Insertion, deletion, search and traversal are iterative, so the tree size is not limited by the thread stack size.
+ * The tree is traversed in-order to display the stocks, and can be iterated lazily in symbol order,
+ * from any starting symbol, without building a list.
  */
-public class AVLTree {
+public class AVLTree implements Iterable<Stock> {
 	/**
    * Node class to store the stock object and the left and right child nodes.
-   * The height of the node is also stored.
+   * The packed key of the symbol is kept next to the stock, so that most comparisons do not touch the stock or its symbol.
+   * The child links and the height come from BalancedNode. The number of nodes in its subtree is also stored,
+   * together with the total volume, the total market capitalization and the lowest and highest price of its subtree.
    */
-	private class Node {
+	private static class Node extends BalancedNode<Node> {
 		Stock stock;
-		Node left, right;
-		int height;
+		long key;
+		int count;
+		long sumVolume;
+		long sumMarketCap;
+		double minPrice;
+		double maxPrice;
 
 		/**
-     * Constructor to initialize the stock object and set the height to 1.
+     * Constructor to initialize the stock object, set the height and the subtree size to 1 and the aggregates to the values of the stock.
      * @param stock The stock object to be stored in the node.
      */
 		Node(Stock stock) {
+			reset(stock);
+		}
+
+		/**
+     * Method to calculate the height, the subtree size and the subtree aggregates of the node
+     * based on its stock and the left and right child nodes.
+     */
+		@Override
+		void
+		update() {
+			super.update();
+			count = 1 + count(left) + count(right);
+			sumVolume = stock.getVolume();
+			sumMarketCap = stock.getMarketCap();
+			minPrice = stock.getPrice();
+			maxPrice = minPrice;
+			if (left != null) {
+				sumVolume += left.sumVolume;
+				sumMarketCap += left.sumMarketCap;
+				minPrice = Math.min(minPrice, left.minPrice);
+				maxPrice = Math.max(maxPrice, left.maxPrice);
+			}
+			if (right != null) {
+				sumVolume += right.sumVolume;
+				sumMarketCap += right.sumMarketCap;
+				minPrice = Math.min(minPrice, right.minPrice);
+				maxPrice = Math.max(maxPrice, right.maxPrice);
+			}
+		}
+
+		/**
+     * Method to reuse an unlinked node for another stock.
+     * @param stock The stock object to be stored in the node.
+     */
+		void
+		reset(Stock stock) {
 			this.stock = stock;
+			this.key = SymbolKey.pack(stock.getSymbol());
+			this.left = null;
+			this.right = null;
 			this.height = 1;
+			this.count = 1;
+			this.sumVolume = stock.getVolume();
+			this.sumMarketCap = stock.getMarketCap();
+			this.minPrice = stock.getPrice();
+			this.maxPrice = this.minPrice;
+		}
+	}
+
+	/**
+   * Aggregate class to hold the totals of a symbol range, as computed by {@link AVLTree#aggregate(String, String)}.
+   */
+	public static final class Aggregate {
+		private int count;
+		private long totalVolume;
+		private long totalMarketCap;
+		private double minPrice = Double.POSITIVE_INFINITY;
+		private double maxPrice = Double.NEGATIVE_INFINITY;
+
+		/**
+     * Constructor to initialize an empty aggregate, also for CompactAVLTree.
+     */
+		Aggregate() {
 		}
 
 		/**
-     * Method to calculate the height of the node based on the height of the left and right child nodes.
+     * Method to add a single stock to the aggregate.
+     * @param stock The stock object to be added.
+     */
+		private void
+		add(Stock stock) {
+			add(stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+		}
+
+		/**
+     * Method to add the values of a single stock to the aggregate, for trees that keep no stock objects.
+     * 
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
      */
 		void
-		calculateHeight() {
-			int leftHeight = (left != null) ? left.height : 0;
-			int rightHeight = (right != null) ? right.height : 0;
-			height = 1 + Math.max(leftHeight, rightHeight);
+		add(double price, long volume, long marketCap) {
+			count++;
+			totalVolume += volume;
+			totalMarketCap += marketCap;
+			minPrice = Math.min(minPrice, price);
+			maxPrice = Math.max(maxPrice, price);
+		}
+
+		/**
+     * Method to add a whole subtree to the aggregate using the totals stored in its root.
+     * @param node The root of the subtree, or null for an empty subtree.
+     */
+		private void
+		add(Node node) {
+			if (node == null)
+				return;
+			count += node.count;
+			totalVolume += node.sumVolume;
+			totalMarketCap += node.sumMarketCap;
+			minPrice = Math.min(minPrice, node.minPrice);
+			maxPrice = Math.max(maxPrice, node.maxPrice);
+		}
+
+		/**
+     * Get the number of stocks in the range.
+     * @return The number of stocks.
+     */
+		public int
+		getCount() {
+			return count;
+		}
+
+		/**
+     * Get the total volume of the stocks in the range.
+     * @return The sum of the volumes.
+     */
+		public long
+		getTotalVolume() {
+			return totalVolume;
+		}
+
+		/**
+     * Get the total market capitalization of the stocks in the range.
+     * @return The sum of the market capitalizations.
+     */
+		public long
+		getTotalMarketCap() {
+			return totalMarketCap;
+		}
+
+		/**
+     * Get the lowest price in the range.
+     * @return The lowest price, or NaN if the range is empty.
+     */
+		public double
+		getMinPrice() {
+			return (count > 0) ? minPrice : Double.NaN;
+		}
+
+		/**
+     * Get the highest price in the range.
+     * @return The highest price, or NaN if the range is empty.
+     */
+		public double
+		getMaxPrice() {
+			return (count > 0) ? maxPrice : Double.NaN;
+		}
+
+		/**
+     * Method to return a string representation of the aggregate.
+     * @return The string representation of the aggregate.
+     */
+		@Override
+		public String
+		toString() {
+			return "Count: " + count + ", Volume: " + totalVolume + ", Market Cap: " + totalMarketCap +
+				", Price: " + getMinPrice() + " - " + getMaxPrice();
 		}
 	}
 
+	/**
+   * The maximum height of the tree. An AVL tree holding Integer.MAX_VALUE nodes is at most 45 levels high.
+   */
+	private static final int MAX_HEIGHT = 64;
+	/**
+   * The number of nodes on each side above which the two halves of a set operation run in parallel.
+   */
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+	/**
+   * The order of nodes by the symbols of their stocks.
+   */
+	private static final Comparator<Node> BY_SYMBOL =
+		(a, b) -> SymbolKey.compare(a.key, a.stock.getSymbol(), b.key, b.stock.getSymbol());
+
 	private Node root;
+	private int size;
+	/**
+   * The ancestors of the node being inserted or deleted, reused by every update.
+   */
+	private final Node[] path = new Node[MAX_HEIGHT];
+	/**
+   * The number of nodes recorded in the path array and the last comparison made by the last descent.
+   */
+	private int pathDepth;
+	private int lastCmp;
+	/**
+   * The number of structural changes and symbol changes, used to make the iterators fail fast.
+   */
+	private int modCount;
 
 	/**
    * Constructor to initialize the root node to null.
    */
 	public AVLTree() {
 		root = null;
+		size = 0;
+	}
+
+	/**
+   * Constructor to wrap a subtree that was detached from another AVL tree.
+   * @param root The root of the subtree, or null if it is empty.
+   */
+	private AVLTree(Node root) {
+		this.root = root;
+		this.size = count(root);
 	}
 
 	/**
    * Insert a stock into the AVL tree. The tree is balanced after insertion.
+   * The stock is inserted based on the symbol in alphabetical order.
+   * The tree is descended iteratively and the visited nodes are recorded in the path array,
+   * which is then walked back up to rebalance every ancestor of the new node.
+   * 
    * @param stock The stock object to be inserted.
    */
 	public void
 	insert(Stock stock) {
-		root = insert(root, stock);
-		balanceTree();
+		String symbol = stock.getSymbol();
+		long key = SymbolKey.pack(symbol);
+		Node node = root;
+		int depth = 0;
+		int cmp = 0;
+
+		while (node != null) {
+			cmp = SymbolKey.compare(key, symbol, node.key, node.stock.getSymbol());
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = node.left;
+			} else {
+				path[depth++] = node;
+				node = node.right;
+			}
+		}
+
+		Node newNode = new Node(stock);
+		if (depth == 0)
+			root = newNode;
+		else if (cmp < 0)
+			path[depth - 1].left = newNode;
+		else
+			path[depth - 1].right = newNode;
+		size++;
+		modCount++;
+		rebalancePath(depth);
 	}
 
 	/**
-   * Method to insert a stock into the AVL tree.
-   * The stock is inserted based on the symbol in alphabetical order.
+   * Insert many stocks at once. The symbols of the batch must be distinct, and a stock already
+   * stored under one of them is replaced.
+   * Input sorted by symbol is detected and needs no sorting, other input is sorted with a parallel sort.
+   * An empty tree is then built perfectly balanced in O(k) time. Otherwise the sorted batch is merged
+   * into the tree by splitting the tree at the middle stock of the batch, merging both halves recursively
+   * and joining them again, which takes O(k log(n / k + 1)) time instead of one descent per stock.
    * 
-   * @param node The current node being considered for insertion.
-   * @param stock The stock object to be inserted.
-   * @return The updated node after insertion.
+   * @param stocks The stock objects to be inserted.
    */
-	private Node
-	insert(Node node, Stock stock) {
-		if (node == null)
-			return new Node(stock);
+	public void
+	insertAll(Collection<Stock> stocks) {
+		Node[] nodes = new Node[stocks.size()];
+		int count = 0;
+		boolean sorted = true;
+		for (Stock stock : stocks) {
+			nodes[count] = new Node(stock);
+			if (count > 0 && sorted && BY_SYMBOL.compare(nodes[count - 1], nodes[count]) > 0)
+				sorted = false;
+			count++;
+		}
+		if (count == 0)
+			return;
+		if (!sorted)
+			Arrays.parallelSort(nodes, BY_SYMBOL);
+		root = unionSorted(root, nodes, 0, count - 1);
+		size = count(root);
+		modCount++;
+	}
 
-		if (stock.getSymbol().compareTo(node.stock.getSymbol()) < 0)
-			node.left = insert(node.left, stock);
-		else
-			node.right = insert(node.right, stock);
+	/**
+   * Remove all stocks with symbols in [fromSymbol, toSymbol) at once. The tree is split at both bounds
+   * and the outer parts are joined again, so the tree is changed in O(log n) time however many stocks are removed.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The AVL tree holding the removed stocks.
+   */
+	public AVLTree
+	removeRange(String fromSymbol, String toSymbol) {
+		if (fromSymbol != null && toSymbol != null && fromSymbol.compareTo(toSymbol) >= 0)
+			return new AVLTree();
 
-		node.calculateHeight();
-		return node;
+		Node[] parts = new Node[2];
+		Node lower = null;
+		Node middle = root;
+		Node upper = null;
+		if (fromSymbol != null) {
+			Node equal = split(middle, fromSymbol, parts);
+			lower = parts[0];
+			middle = (equal != null) ? join(null, equal, parts[1]) : parts[1];
+		}
+		if (toSymbol != null) {
+			Node equal = split(middle, toSymbol, parts);
+			middle = parts[0];
+			upper = (equal != null) ? join(null, equal, parts[1]) : parts[1];
+		}
+		root = join(lower, upper);
+		size = count(root);
+		modCount++;
+		return new AVLTree(middle);
+	}
+
+	/**
+   * Move all stocks of another AVL tree into this one. A stock of the other tree replaces the stock
+   * stored under the same symbol here. The other tree is left empty.
+   * Time complexity is O(m log(n / m + 1)) for trees of m and n stocks, with m the smaller size.
+   * 
+   * @param other The AVL tree whose stocks are moved.
+   */
+	public void
+	union(AVLTree other) {
+		combineWith(Operation.UNION, other, null);
+	}
+
+	/**
+   * Keep only the stocks whose symbols are also in another AVL tree. The other tree is left empty.
+   * Time complexity is O(m log(n / m + 1) + k) for trees of m and n stocks, with m the smaller size,
+   * and k removed stocks.
+   * 
+   * @param other The AVL tree holding the symbols to be kept.
+   * @return The stocks removed from this tree, in no particular order.
+   */
+	public List<Stock>
+	intersect(AVLTree other) {
+		List<Stock> removed = new ArrayList<>();
+		combineWith(Operation.INTERSECTION, other, removed);
+		return removed;
+	}
+
+	/**
+   * Remove the stocks whose symbols are in another AVL tree. The other tree is left empty.
+   * Time complexity is O(m log(n / m + 1)) for trees of m and n stocks, with m the smaller size.
+   * 
+   * @param other The AVL tree holding the symbols to be removed.
+   */
+	public void
+	difference(AVLTree other) {
+		combineWith(Operation.DIFFERENCE, other, null);
+	}
+
+	/**
+   * Method to replace this tree by the result of a set operation with another tree, and empty the other tree.
+   * 
+   * @param operation The set operation.
+   * @param other The other AVL tree.
+   * @param removed The list the stocks dropped by an intersection are added to, or null.
+   */
+	private void
+	combineWith(Operation operation, AVLTree other, List<Stock> removed) {
+		if (other == this) {
+			if (operation == Operation.DIFFERENCE) {
+				root = null;
+				size = 0;
+				modCount++;
+			}
+			return;
+		}
+		root = combine(operation, root, other.root, removed);
+		size = count(root);
+		modCount++;
+		other.root = null;
+		other.size = 0;
+		other.modCount++;
 	}
 
 	/**
@@ -81,180 +423,1263 @@ public class AVLTree {
    */
 	public void
 	delete(String symbol) {
-		root = delete(root, symbol);
-		balanceTree();
+		remove(symbol);
+	}
+
+	/**
+   * Remove a stock from the AVL tree and return it. The tree is balanced after removal.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if there was no stock with the symbol.
+   */
+	public Stock
+	remove(String symbol) {
+		Node node = descend(symbol);
+		if (node == null) {
+			clearPath(pathDepth);
+			return null;
+		}
+		Stock removed = node.stock;
+		unlink(node);
+		return removed;
+	}
+
+	/**
+   * Insert the stock if there is no stock with the same symbol, in a single descent.
+   * @param stock The stock object to be inserted.
+   * @return The stock already stored under the symbol, or null if the stock was inserted.
+   */
+	public Stock
+	putIfAbsent(Stock stock) {
+		Node node = descend(stock.getSymbol());
+		if (node != null) {
+			clearPath(pathDepth);
+			return node.stock;
+		}
+		attach(new Node(stock));
+		return null;
 	}
 
 	/**
-   * Method to delete a stock from the AVL tree.
-   * The stock is deleted based on the symbol.
+   * Find or create the stock with the given symbol in a single descent.
+   * The remapping function receives the symbol and the stored stock, or null if there is none.
+   * If it returns null the stock is removed, otherwise the returned stock is stored under the symbol.
+   * The function must not modify this tree.
    * 
-   * @param node The current node being considered for deletion.
-   * @param symbol The symbol of the stock to be deleted.
-   * @return The updated node after deletion.
+   * @param symbol The symbol of the stock to be computed.
+   * @param remappingFunction The function computing the new stock from the stored one.
+   * @return The stock stored under the symbol afterwards, or null if there is none.
+   * @throws IllegalArgumentException If the returned stock has a different symbol.
+   */
+	public Stock
+	compute(String symbol, BiFunction<String, Stock, Stock> remappingFunction) {
+		Node node = descend(symbol);
+		Stock newStock = remappingFunction.apply(symbol, (node != null) ? node.stock : null);
+		store(symbol, node, newStock);
+		return newStock;
+	}
+
+	/**
+   * Insert the stock, or merge it with the stock stored under the same symbol, in a single descent.
+   * The remapping function receives the stored stock and the given one. If it returns null the
+   * stock is removed, otherwise the returned stock is stored under the symbol.
+   * The function must not modify this tree.
+   * 
+   * @param stock The stock object to be inserted or merged.
+   * @param remappingFunction The function merging the stored stock with the given one.
+   * @return The stock stored under the symbol afterwards, or null if there is none.
+   * @throws IllegalArgumentException If the returned stock has a different symbol.
+   */
+	public Stock
+	merge(Stock stock, BiFunction<Stock, Stock, Stock> remappingFunction) {
+		String symbol = stock.getSymbol();
+		Node node = descend(symbol);
+		Stock newStock = (node != null) ? remappingFunction.apply(node.stock, stock) : stock;
+		store(symbol, node, newStock);
+		return newStock;
+	}
+
+	/**
+   * Change the values of a stock in place. The subtree aggregates of the node and its ancestors
+   * are refreshed on the way back up, so values must only be changed through this method.
+   * 
+   * @param symbol The symbol of the stock to be changed.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   * @return The changed stock object, or null if there was no stock with the symbol.
+   */
+	public Stock
+	updateValues(String symbol, double price, long volume, long marketCap) {
+		Node node = descend(symbol);
+		if (node == null) {
+			clearPath(pathDepth);
+			return null;
+		}
+		Stock stock = node.stock;
+		stock.setPrice(price);
+		stock.setVolume(volume);
+		stock.setMarketCap(marketCap);
+		node.update();
+		rebalancePath(pathDepth);
+		return stock;
+	}
+
+	/**
+   * Change the symbol and the values of a stock in the AVL tree, finding the stock in a single descent.
+   * The tree is balanced after the change.
+   * If the new symbol still falls between the in-order predecessor and successor of the node,
+   * the symbol is changed in place without any structural change, and only the totals on the path
+   * are updated. Otherwise the node is unlinked and linked in again at its new position, reusing the
+   * unlinked node. A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The current symbol of the stock.
+   * @param newSymbol The new symbol of the stock.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   * @return The renamed stock object, or null if there was no stock with the symbol.
+   */
+	public Stock
+	rekey(String symbol, String newSymbol, double price, long volume, long marketCap) {
+		Node node = descend(symbol);
+		if (node == null) {
+			clearPath(pathDepth);
+			return null;
+		}
+		Stock stock = node.stock;
+		stock.setPrice(price);
+		stock.setVolume(volume);
+		stock.setMarketCap(marketCap);
+		modCount++;
+		if (symbol.equals(newSymbol) || fitsBetweenNeighbours(node, newSymbol)) {
+			stock.setSymbol(newSymbol);
+			node.key = SymbolKey.pack(newSymbol);
+			node.update();
+			rebalancePath(pathDepth);
+			return stock;
+		}
+
+		Node freeNode = unlink(node);
+		stock.setSymbol(newSymbol);
+		Node target = descend(newSymbol);
+		if (target != null) {
+			target.stock = stock;
+			target.update();
+			rebalancePath(pathDepth);
+		} else {
+			freeNode.reset(stock);
+			attach(freeNode);
+		}
+		return stock;
+	}
+
+	/**
+   * Change the symbols of many stocks at once. All renames are applied simultaneously,
+   * so chains and swaps such as A to B and B to A behave as expected. A stock stored under a
+   * new symbol that is not renamed itself is replaced. If several stocks are renamed to the
+   * same symbol, only one of them is kept.
+   * When the batch is large compared to the tree, every node is visited once in order, the renamed
+   * nodes are sorted and merged back with the others, and the tree is rebuilt perfectly balanced
+   * in O(n + k log k) time.
+   * Otherwise the stocks are removed and stored again one by one.
+   * 
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	public int
+	rekeyAll(Map<String, String> renames) {
+		if (renames.isEmpty() || size == 0)
+			return 0;
+		int log = 32 - Integer.numberOfLeadingZeros(size);
+		if ((long)renames.size() * log * 4 < size)
+			return rekeyEach(renames);
+
+		Node[] nodes = toArray();
+		Node[] renamed = new Node[Math.min(renames.size(), size)];
+		int kept = 0;
+		int count = 0;
+		for (Node node : nodes) {
+			String newSymbol = renames.get(node.stock.getSymbol());
+			if (newSymbol != null) {
+				node.stock.setSymbol(newSymbol);
+				node.key = SymbolKey.pack(newSymbol);
+				renamed[count++] = node;
+			} else {
+				nodes[kept++] = node;
+			}
+		}
+		if (count == 0)
+			return 0;
+		Arrays.sort(renamed, 0, count, BY_SYMBOL);
+
+		Node[] merged = new Node[kept + count];
+		int total = 0;
+		int i = 0;
+		int j = 0;
+		while (i < kept || j < count) {
+			if (j < count && total > 0 && merged[total - 1].stock.getSymbol().equals(renamed[j].stock.getSymbol())) {
+				merged[total - 1] = renamed[j++];
+			} else if (j == count || (i < kept && nodes[i].stock.getSymbol().compareTo(renamed[j].stock.getSymbol()) < 0)) {
+				merged[total++] = nodes[i++];
+			} else {
+				if (i < kept && nodes[i].stock.getSymbol().equals(renamed[j].stock.getSymbol()))
+					i++;
+				merged[total++] = renamed[j++];
+			}
+		}
+		root = build(merged, 0, total - 1);
+		size = total;
+		modCount++;
+		return count;
+	}
+
+	/**
+   * Method to apply a batch of renames one by one. All renamed stocks are removed first,
+   * so that the renames are applied simultaneously.
+   * 
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	private int
+	rekeyEach(Map<String, String> renames) {
+		Stock[] removed = new Stock[renames.size()];
+		String[] newSymbols = new String[renames.size()];
+		int count = 0;
+		for (Map.Entry<String, String> entry : renames.entrySet()) {
+			Stock stock = remove(entry.getKey());
+			if (stock != null) {
+				removed[count] = stock;
+				newSymbols[count++] = entry.getValue();
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			Stock stock = removed[i];
+			stock.setSymbol(newSymbols[i]);
+			compute(newSymbols[i], (key, existingStock) -> stock);
+		}
+		return count;
+	}
+
+	/**
+   * Method to check whether a new symbol keeps the node between its in-order neighbours.
+   * The predecessor is the rightmost node of the left subtree, or else the nearest ancestor the node
+   * is in the right subtree of. The successor is found symmetrically. The path of the last descent is used.
+   * 
+   * @param node The node found by the last descent.
+   * @param newSymbol The new symbol of the node.
+   * @return True if the new symbol is strictly between the neighbouring symbols, false otherwise.
+   */
+	private boolean
+	fitsBetweenNeighbours(Node node, String newSymbol) {
+		Node predecessor = null;
+		Node successor = null;
+		if (node.left != null) {
+			predecessor = node.left;
+			while (predecessor.right != null)
+				predecessor = predecessor.right;
+		}
+		if (node.right != null) {
+			successor = node.right;
+			while (successor.left != null)
+				successor = successor.left;
+		}
+
+		Node child = node;
+		for (int i = pathDepth - 1; i >= 0 && (predecessor == null || successor == null); i--) {
+			Node parent = path[i];
+			if (parent.right == child) {
+				if (predecessor == null)
+					predecessor = parent;
+			} else if (successor == null) {
+				successor = parent;
+			}
+			child = parent;
+		}
+		return (predecessor == null || predecessor.stock.getSymbol().compareTo(newSymbol) < 0) &&
+			(successor == null || newSymbol.compareTo(successor.stock.getSymbol()) < 0);
+	}
+
+	/**
+   * Method to collect the nodes of the AVL tree in in-order.
+   * @return The array of all nodes sorted by symbol.
+   */
+	private Node[]
+	toArray() {
+		Node[] nodes = new Node[size];
+		if (root == null)
+			return nodes;
+
+		Node[] stack = new Node[root.height];
+		int top = 0;
+		int count = 0;
+		Node node = root;
+		while (node != null || top > 0) {
+			while (node != null) {
+				stack[top++] = node;
+				node = node.left;
+			}
+			node = stack[--top];
+			nodes[count++] = node;
+			node = node.right;
+		}
+		return nodes;
+	}
+
+	/**
+   * Method to build a perfectly balanced subtree from nodes sorted by symbol.
+   * The middle node becomes the root, so the recursion is only O(log n) deep.
+   * 
+   * @param nodes The array of nodes sorted by symbol.
+   * @param low The index of the first node of the subtree.
+   * @param high The index of the last node of the subtree.
+   * @return The root of the subtree, or null if it is empty.
+   */
+	private static Node
+	build(Node[] nodes, int low, int high) {
+		if (low > high)
+			return null;
+		int mid = (low + high) >>> 1;
+		Node node = nodes[mid];
+		node.left = build(nodes, low, mid - 1);
+		node.right = build(nodes, mid + 1, high);
+		node.update();
+		return node;
+	}
+
+	/**
+   * Method to merge nodes sorted by symbol into a subtree, dropping the nodes of the subtree they replace.
+   * The subtree is split at the middle node, both halves are merged with the nodes on their side and
+   * joined again by the middle node. The recursion is O(log k) deep, and every split and join is O(log n).
+   * 
+   * @param node The root of the subtree, or null if it is empty.
+   * @param nodes The array of unlinked nodes sorted by symbol.
+   * @param low The index of the first node to be merged.
+   * @param high The index of the last node to be merged.
+   * @return The root of the merged subtree.
+   */
+	private Node
+	unionSorted(Node node, Node[] nodes, int low, int high) {
+		if (low > high)
+			return node;
+		if (node == null)
+			return build(nodes, low, high);
+		int mid = (low + high) >>> 1;
+		Node[] parts = new Node[2];
+		split(node, nodes[mid].stock.getSymbol(), parts);
+		Node left = unionSorted(parts[0], nodes, low, mid - 1);
+		Node right = unionSorted(parts[1], nodes, mid + 1, high);
+		return join(left, nodes[mid], right);
+	}
+
+	/**
+   * Method to split a subtree into the nodes with symbols less than a symbol, the node holding the symbol
+   * and the nodes with greater symbols. Every node on the search path is joined onto the side it belongs to,
+   * so the split is O(log n).
+   * 
+   * @param node The root of the subtree, or null if it is empty.
+   * @param symbol The symbol to split at.
+   * @param parts The array receiving the root of the lesser part at index 0 and of the greater part at index 1.
+   * @return The node holding the symbol, with stale children, or null if there is none.
+   */
+	private Node
+	split(Node node, String symbol, Node[] parts) {
+		if (node == null) {
+			parts[0] = null;
+			parts[1] = null;
+			return null;
+		}
+		Node left = node.left;
+		Node right = node.right;
+		int cmp = symbol.compareTo(node.stock.getSymbol());
+		if (cmp < 0) {
+			Node equal = split(left, symbol, parts);
+			parts[1] = join(parts[1], node, right);
+			return equal;
+		} else if (cmp > 0) {
+			Node equal = split(right, symbol, parts);
+			parts[0] = join(left, node, parts[0]);
+			return equal;
+		}
+		parts[0] = left;
+		parts[1] = right;
+		return node;
+	}
+
+	/**
+   * Method to join two subtrees, where every symbol in the left subtree is less than every symbol in
+   * the right one. The last node of the left subtree is taken out and becomes the middle node.
+   * 
+   * @param left The root of the left subtree, or null if it is empty.
+   * @param right The root of the right subtree, or null if it is empty.
+   * @return The root of the joined subtree.
+   */
+	private Node
+	join(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		Node[] last = new Node[1];
+		Node rest = removeLast(left, last);
+		return join(rest, last[0], right);
+	}
+
+	/**
+   * Method to take the node with the greatest symbol out of a subtree.
+   * @param node The root of the subtree, which must not be empty.
+   * @param last The array receiving the removed node at index 0.
+   * @return The root of the remaining subtree.
+   */
+	private Node
+	removeLast(Node node, Node[] last) {
+		if (node.right == null) {
+			last[0] = node;
+			return node.left;
+		}
+		node.right = removeLast(node.right, last);
+		return BalancedNode.balance(node);
+	}
+
+	/**
+   * Method to combine two subtrees by a set operation on their symbols. The first subtree is split at the
+   * symbol of the root of the second one, the halves are combined recursively and joined again, which takes
+   * O(m log(n / m + 1)) time for subtrees of m and n nodes. Both subtrees are taken apart.
+   * When both halves are large, the left one is combined by a fork-join task while this thread combines the right one.
+   * 
+   * @param operation The set operation.
+   * @param node The root of the first subtree, or null if it is empty.
+   * @param other The root of the second subtree, or null if it is empty.
+   * @param removed The list the stocks of the first subtree dropped by an intersection are added to, or null.
+   * @return The root of the combined subtree.
    */
 	private Node
-	delete(Node node, String symbol) {
+	combine(Operation operation, Node node, Node other, List<Stock> removed) {
 		if (node == null)
+			return (operation == Operation.UNION) ? other : null;
+		if (other == null) {
+			if (operation != Operation.INTERSECTION)
+				return node;
+			if (removed != null)
+				collect(node, removed);
 			return null;
+		}
+
+		Node otherLeft = other.left;
+		Node otherRight = other.right;
+		Node[] parts = new Node[2];
+		Node equal = split(node, other.stock.getSymbol(), parts);
+		Node left;
+		Node right;
+		if (count(parts[0]) + count(otherLeft) >= PARALLEL_THRESHOLD &&
+		    count(parts[1]) + count(otherRight) >= PARALLEL_THRESHOLD) {
+			SetOperation task = new SetOperation(operation, parts[0], otherLeft, (removed != null) ? new ArrayList<>() : null);
+			task.fork();
+			right = combine(operation, parts[1], otherRight, removed);
+			left = task.join();
+			if (removed != null)
+				removed.addAll(task.removed);
+		} else {
+			left = combine(operation, parts[0], otherLeft, removed);
+			right = combine(operation, parts[1], otherRight, removed);
+		}
+
+		switch (operation) {
+		case UNION:
+			return join(left, other, right);
+		case INTERSECTION:
+			return (equal != null) ? join(left, equal, right) : join(left, right);
+		default:
+			return join(left, right);
+		}
+	}
 
-		if (node.stock.getSymbol().equals(symbol)) {
-			if (node.left == null)
-				return node.right;
-			if (node.right == null)
-				return node.left;
+	/**
+   * Method to add the stocks of a subtree to a list.
+   * @param node The root of the subtree, or null if it is empty.
+   * @param stocks The list.
+   */
+	private static void
+	collect(Node node, List<Stock> stocks) {
+		for (; node != null; node = node.right) {
+			collect(node.left, stocks);
+			stocks.add(node.stock);
+		}
+	}
 
+	/**
+   * Method to join two subtrees and a middle node, where every symbol in the left subtree is less than
+   * the symbol of the middle node and every symbol in the right subtree is greater.
+   * The middle node is hung into the taller subtree at the height of the shorter one, and the nodes
+   * above it are rebalanced on the way back up. Time complexity is O(|height difference| + 1).
+   * 
+   * @param left The root of the left subtree, or null if it is empty.
+   * @param node The middle node, whose children are replaced.
+   * @param right The root of the right subtree, or null if it is empty.
+   * @return The root of the joined subtree.
+   */
+	private Node
+	join(Node left, Node node, Node right) {
+		int leftHeight = (left != null) ? left.height : 0;
+		int rightHeight = (right != null) ? right.height : 0;
+		if (leftHeight > rightHeight + 1) {
+			left.right = join(left.right, node, right);
+			return BalancedNode.balance(left);
+		}
+		if (rightHeight > leftHeight + 1) {
+			right.left = join(left, node, right.left);
+			return BalancedNode.balance(right);
+		}
+		node.left = left;
+		node.right = right;
+		node.update();
+		return node;
+	}
+
+	/**
+   * Method to apply the result of compute or merge to the node found by the last descent.
+   * 
+   * @param symbol The symbol that was descended to.
+   * @param node The node holding the symbol, or null if there is none.
+   * @param newStock The stock to be stored, or null to remove the node.
+   * @throws IllegalArgumentException If the new stock has a different symbol.
+   */
+	private void
+	store(String symbol, Node node, Stock newStock) {
+		if (newStock == null) {
+			if (node != null)
+				unlink(node);
+			else
+				clearPath(pathDepth);
+			return;
+		}
+		if (!symbol.equals(newStock.getSymbol())) {
+			clearPath(pathDepth);
+			throw new IllegalArgumentException("Stock symbol " + newStock.getSymbol() + " does not match " + symbol);
+		}
+		if (node != null) {
+			node.stock = newStock;
+			node.update();
+			rebalancePath(pathDepth);
+		} else {
+			attach(new Node(newStock));
+		}
+	}
+
+	/**
+   * Method to descend from the root to the node holding the symbol.
+   * The visited nodes are recorded in the path array, their number in pathDepth and
+   * the result of the last comparison in lastCmp, so the node or its missing slot can be updated afterwards.
+   * 
+   * @param symbol The symbol to be descended to.
+   * @return The node holding the symbol, or null if there is none.
+   */
+	private Node
+	descend(String symbol) {
+		long key = SymbolKey.pack(symbol);
+		Node node = root;
+		int depth = 0;
+		int cmp = 0;
+
+		while (node != null) {
+			cmp = SymbolKey.compare(key, symbol, node.key, node.stock.getSymbol());
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = node.left;
+			} else if (cmp > 0) {
+				path[depth++] = node;
+				node = node.right;
+			} else {
+				break;
+			}
+		}
+		pathDepth = depth;
+		lastCmp = cmp;
+		return node;
+	}
+
+	/**
+   * Method to link a new node into the empty slot found by the last descent and rebalance its ancestors.
+   * @param newNode The node to be linked, without children.
+   */
+	private void
+	attach(Node newNode) {
+		if (pathDepth == 0)
+			root = newNode;
+		else if (lastCmp < 0)
+			path[pathDepth - 1].left = newNode;
+		else
+			path[pathDepth - 1].right = newNode;
+		size++;
+		modCount++;
+		rebalancePath(pathDepth);
+	}
+
+	/**
+   * Method to unlink the node found by the last descent and rebalance its ancestors.
+   * A node with two children takes the stock of its in-order successor, and the successor node is unlinked instead.
+   * @param node The node to be unlinked.
+   * @return The node that was taken out of the tree and may be reused.
+   */
+	private Node
+	unlink(Node node) {
+		int depth = pathDepth;
+		if (node.left != null && node.right != null) {
+			path[depth++] = node;
 			Node minNode = node.right;
 			while (minNode.left != null) {
+				path[depth++] = minNode;
 				minNode = minNode.left;
 			}
 			node.stock = minNode.stock;
-			node.right = delete(node.right, minNode.stock.getSymbol());
-		} else if (symbol.compareTo(node.stock.getSymbol()) < 0) {
-			node.left = delete(node.left, symbol);
-		} else {
-			node.right = delete(node.right, symbol);
+			node.key = minNode.key;
+			node = minNode;
 		}
-		node.calculateHeight();
+
+		Node child = (node.left != null) ? node.left : node.right;
+		if (depth == 0)
+			root = child;
+		else
+			BalancedNode.replaceChild(path[depth - 1], node, child);
+		size--;
+		modCount++;
+		rebalancePath(depth);
 		return node;
 	}
 
 	/**
    * Search for a stock in the AVL tree based on the symbol.
+   * The search is a single loop from the root with one comparison per level. Time complexity is O(log n).
+   * The packed keys are compared first, so the strings are only compared where the keys are equal.
+   * The child is chosen with a branch rather than a conditional expression, which lets the processor
+   * start loading the next node before the comparison completes.
    * 
    * @param symbol The symbol of the stock to be searched.
    * @return The stock object if found, null otherwise.
    */
 	public Stock
 	search(String symbol) {
-		Node result = search(root, symbol);
+		long key = SymbolKey.pack(symbol);
+		Node node = root;
+		while (node != null) {
+			int cmp = SymbolKey.compare(key, symbol, node.key, node.stock.getSymbol());
+			if (cmp < 0)
+				node = node.left;
+			else if (cmp > 0)
+				node = node.right;
+			else
+				return node.stock;
+		}
+		return null;
+	}
+
+	/**
+   * Get the stock with the greatest symbol less than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	floor(String symbol) {
+		Node node = root;
+		Node result = null;
+		while (node != null) {
+			int cmp = symbol.compareTo(node.stock.getSymbol());
+			if (cmp < 0) {
+				node = node.left;
+			} else if (cmp > 0) {
+				result = node;
+				node = node.right;
+			} else {
+				return node.stock;
+			}
+		}
+		return (result != null) ? result.stock : null;
+	}
+
+	/**
+   * Get the stock with the least symbol greater than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	ceiling(String symbol) {
+		Node node = root;
+		Node result = null;
+		while (node != null) {
+			int cmp = symbol.compareTo(node.stock.getSymbol());
+			if (cmp < 0) {
+				result = node;
+				node = node.left;
+			} else if (cmp > 0) {
+				node = node.right;
+			} else {
+				return node.stock;
+			}
+		}
+		return (result != null) ? result.stock : null;
+	}
+
+	/**
+   * Get the stock with the least symbol strictly greater than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	higher(String symbol) {
+		Node node = root;
+		Node result = null;
+		while (node != null) {
+			if (symbol.compareTo(node.stock.getSymbol()) < 0) {
+				result = node;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		return (result != null) ? result.stock : null;
+	}
+
+	/**
+   * Get the stock with the greatest symbol strictly less than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	lower(String symbol) {
+		Node node = root;
+		Node result = null;
+		while (node != null) {
+			if (symbol.compareTo(node.stock.getSymbol()) > 0) {
+				result = node;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
 		return (result != null) ? result.stock : null;
 	}
 
 	/**
-   * Method to search for a stock in the AVL tree based on the symbol.
-   * The search is performed recursively. Time complexity is O(log n).
+   * Get the number of stocks with a symbol less than the given symbol, which is the index of the
+   * symbol in symbol order if it is present. Time complexity is O(log n).
    * 
-   * @param node The current node being considered for search.
-   * @param symbol The symbol of the stock to be searched.
-   * @return The node containing the stock object if found, null otherwise.
+   * @param symbol The symbol to be ranked, or null for the end of the tree.
+   * @return The number of stocks with a smaller symbol.
    */
-	private Node
-	search(Node node, String symbol) {
-		if (node == null)
+	public int
+	rank(String symbol) {
+		if (symbol == null)
+			return size;
+		Node node = root;
+		int rank = 0;
+		while (node != null) {
+			int cmp = symbol.compareTo(node.stock.getSymbol());
+			if (cmp < 0) {
+				node = node.left;
+			} else if (cmp > 0) {
+				rank += count(node.left) + 1;
+				node = node.right;
+			} else {
+				return rank + count(node.left);
+			}
+		}
+		return rank;
+	}
+
+	/**
+   * Get the stock at the given index in symbol order. Time complexity is O(log n).
+   * @param index The index of the stock, starting from 0.
+   * @return The stock object at the index.
+   * @throws IndexOutOfBoundsException If the index is negative or not less than the size.
+   */
+	public Stock
+	select(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		Node node = root;
+		while (true) {
+			int leftCount = count(node.left);
+			if (index < leftCount) {
+				node = node.left;
+			} else if (index > leftCount) {
+				index -= leftCount + 1;
+				node = node.right;
+			} else {
+				return node.stock;
+			}
+		}
+	}
+
+	/**
+   * Get the number of stocks with symbols in [fromSymbol, toSymbol). Time complexity is O(log n).
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks in the range.
+   */
+	public int
+	countInRange(String fromSymbol, String toSymbol) {
+		int from = (fromSymbol != null) ? rank(fromSymbol) : 0;
+		return Math.max(0, rank(toSymbol) - from);
+	}
+
+	/**
+   * Get the totals of the stocks with symbols in [fromSymbol, toSymbol). Time complexity is O(log n).
+   * The tree is descended to the first node inside the range. From there the lower bound is followed
+   * to the left and the upper bound to the right, and every subtree hanging inside the range is added
+   * using the totals stored in its root instead of visiting its stocks.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The totals of the stocks in the range.
+   */
+	public Aggregate
+	aggregate(String fromSymbol, String toSymbol) {
+		Aggregate aggregate = new Aggregate();
+		Node split = root;
+		while (split != null) {
+			String symbol = split.stock.getSymbol();
+			if (fromSymbol != null && symbol.compareTo(fromSymbol) < 0)
+				split = split.right;
+			else if (toSymbol != null && symbol.compareTo(toSymbol) >= 0)
+				split = split.left;
+			else
+				break;
+		}
+		if (split == null)
+			return aggregate;
+
+		aggregate.add(split.stock);
+		Node node = split.left;
+		while (node != null) {
+			if (fromSymbol == null || node.stock.getSymbol().compareTo(fromSymbol) >= 0) {
+				aggregate.add(node.stock);
+				aggregate.add(node.right);
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		node = split.right;
+		while (node != null) {
+			if (toSymbol == null || node.stock.getSymbol().compareTo(toSymbol) < 0) {
+				aggregate.add(node.stock);
+				aggregate.add(node.left);
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return aggregate;
+	}
+
+	/**
+   * Get a sequential stream of the stocks at the indices [fromIndex, toIndex) in symbol order,
+   * for example one page of rows. The first stock is found in O(log n) by its index.
+   * 
+   * @param fromIndex The inclusive index of the first stock.
+   * @param toIndex The exclusive index of the last stock.
+   * @return The stream of stocks at the indices.
+   * @throws IndexOutOfBoundsException If the indices are not within [0, size] or fromIndex is greater than toIndex.
+   */
+	public Stream<Stock>
+	slice(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+		StockIterator iterator = new StockIterator(fromIndex, toIndex - fromIndex);
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		return StreamSupport.stream(Spliterators.spliterator(iterator, toIndex - fromIndex, characteristics), false);
+	}
+
+	/**
+   * Get an iterator over all stocks in symbol order.
+   * @return The lazy in-order iterator.
+   */
+	@Override
+	public Iterator<Stock>
+	iterator() {
+		return new StockIterator(null, null);
+	}
+
+	/**
+   * Get an iterator over the stocks with symbols in [fromSymbol, toSymbol), in symbol order.
+   * The iterator seeks to the first stock in O(log n) and then yields one stock per call without
+   * building a list. It fails with a ConcurrentModificationException if the tree changes structurally meanwhile.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The lazy in-order iterator.
+   */
+	public Iterator<Stock>
+	iterator(String fromSymbol, String toSymbol) {
+		return new StockIterator(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Get a sequential stream of the stocks with symbols in [fromSymbol, toSymbol), in symbol order.
+   * The stream is backed by the lazy iterator, so only the stocks actually consumed are visited.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of stocks in the range.
+   */
+	public Stream<Stock>
+	range(String fromSymbol, String toSymbol) {
+		return StreamSupport.stream(spliterator(fromSymbol, toSymbol), false);
+	}
+
+	/**
+   * Get a sequential stream of the stocks whose symbols start with the given prefix, in symbol order.
+   * @param prefix The prefix of the symbols.
+   * @return The stream of stocks with the prefix.
+   */
+	public Stream<Stock>
+	prefix(String prefix) {
+		return range(prefix, prefixEnd(prefix));
+	}
+
+	/**
+   * Get a spliterator over all stocks in symbol order.
+   * @return The lazy in-order spliterator.
+   */
+	@Override
+	public Spliterator<Stock>
+	spliterator() {
+		return spliterator(null, null);
+	}
+
+	/**
+   * Method to create a spliterator over the stocks with symbols in [fromSymbol, toSymbol).
+   * The whole tree reports its exact size, a range does not.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The lazy in-order spliterator.
+   */
+	private Spliterator<Stock>
+	spliterator(String fromSymbol, String toSymbol) {
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		if (fromSymbol == null && toSymbol == null)
+			return Spliterators.spliterator(iterator(), size, characteristics);
+		return Spliterators.spliteratorUnknownSize(iterator(fromSymbol, toSymbol), characteristics);
+	}
+
+	/**
+   * Method to find the least string greater than every string starting with the prefix.
+   * The last character that can be incremented is incremented and the rest is dropped.
+   * 
+   * @param prefix The prefix of the symbols.
+   * @return The exclusive upper bound of the symbols with the prefix, or null if there is none.
+   */
+	private static String
+	prefixEnd(String prefix) {
+		int end = prefix.length();
+		while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE)
+			end--;
+		if (end == 0)
 			return null;
+		return prefix.substring(0, end - 1) + (char)(prefix.charAt(end - 1) + 1);
+	}
 
-		if (node.stock.getSymbol().equals(symbol))
-			return node;
-		if (symbol.compareTo(node.stock.getSymbol()) < 0)
-			return search(node.left, symbol);
-		else
-			return search(node.right, symbol);
+	/**
+   * Operation enum to select the set operation combining two trees.
+   */
+	private enum Operation {
+		UNION, INTERSECTION, DIFFERENCE
+	}
+
+	/**
+   * SetOperation class to combine one half of two subtrees in a fork-join task.
+   * The task is never serialized, so it declares no serialVersionUID.
+   */
+	@SuppressWarnings("serial")
+	private class SetOperation extends RecursiveTask<Node> {
+		private final Operation operation;
+		private final Node node;
+		private final Node other;
+		/**
+     * The stocks dropped by an intersection of this half, or null if they are not collected.
+     */
+		private final List<Stock> removed;
+
+		/**
+     * Constructor to initialize the set operation and the subtrees.
+     * 
+     * @param operation The set operation.
+     * @param node The root of the first subtree, or null if it is empty.
+     * @param other The root of the second subtree, or null if it is empty.
+     * @param removed The list the dropped stocks are added to, or null.
+     */
+		SetOperation(Operation operation, Node node, Node other, List<Stock> removed) {
+			this.operation = operation;
+			this.node = node;
+			this.other = other;
+			this.removed = removed;
+		}
+
+		/**
+     * Method to combine the subtrees.
+     * @return The root of the combined subtree.
+     */
+		@Override
+		protected Node
+		compute() {
+			return combine(operation, node, other, removed);
+		}
+	}
+
+	/**
+   * Iterator class that walks the tree in-order with an explicit stack of the pending ancestors.
+   */
+	private class StockIterator implements Iterator<Stock> {
+		private final Node[] stack;
+		private final String toSymbol;
+		private final int expectedModCount;
+		private int top;
+		private int remaining;
+
+		/**
+     * Constructor to seek to the first stock with a symbol greater than or equal to the lower bound.
+     * Every node on the way down whose symbol is in range and that still has to be visited is pushed.
+     * 
+     * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+     * @param toSymbol The exclusive upper bound, or null for no upper bound.
+     */
+		StockIterator(String fromSymbol, String toSymbol) {
+			this.stack = new Node[(root != null) ? root.height : 0];
+			this.toSymbol = toSymbol;
+			this.expectedModCount = modCount;
+			this.remaining = Integer.MAX_VALUE;
+			Node node = root;
+			while (node != null) {
+				if (fromSymbol == null || fromSymbol.compareTo(node.stock.getSymbol()) <= 0) {
+					stack[top++] = node;
+					node = node.left;
+				} else {
+					node = node.right;
+				}
+			}
+		}
+
+		/**
+     * Constructor to seek to the stock at the given index using the subtree sizes.
+     * 
+     * @param fromIndex The index of the first stock, at most the size of the tree.
+     * @param count The maximum number of stocks to be returned.
+     */
+		StockIterator(int fromIndex, int count) {
+			this.stack = new Node[(root != null) ? root.height : 0];
+			this.toSymbol = null;
+			this.expectedModCount = modCount;
+			this.remaining = count;
+			Node node = root;
+			while (node != null) {
+				int leftCount = count(node.left);
+				if (fromIndex <= leftCount) {
+					stack[top++] = node;
+					node = node.left;
+				} else {
+					fromIndex -= leftCount + 1;
+					node = node.right;
+				}
+			}
+		}
+
+		/**
+     * Method to check whether there is another stock in range.
+     * @return True if there is another stock, false otherwise.
+     */
+		@Override
+		public boolean
+		hasNext() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			return top > 0 && remaining > 0 &&
+				(toSymbol == null || stack[top - 1].stock.getSymbol().compareTo(toSymbol) < 0);
+		}
+
+		/**
+     * Method to get the next stock in range and push the left spine of its right subtree.
+     * @return The next stock.
+     */
+		@Override
+		public Stock
+		next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Node node = stack[--top];
+			for (Node child = node.right; child != null; child = child.left)
+				stack[top++] = child;
+			remaining--;
+			return node.stock;
+		}
 	}
 
 	/**
    * Method to display the stocks in the AVL tree in in-order traversal.
+   * The level of the node is used to indent the output for better visualization.
+   * The traversal uses an explicit stack as deep as the tree instead of recursion.
    */
 	public void
 	inOrderTraversal() {
-		inOrderTraversal(root, 0);
+		OutputSink out = new OutputSink();
+		inOrderTraversal(out);
+		out.flush();
 	}
 
 	/**
-   * Method to display the stocks in the AVL tree in in-order traversal.
-   * The level of the node is used to indent the output for better visualization.
-   * 
-   * @param node The current node being considered for traversal.
-   * @param level The level of the node in the tree.
+   * Method to write the stocks in the AVL tree in in-order traversal to an output sink,
+   * indented by their level like inOrderTraversal(). No strings are created per node.
+   * @param out The sink to write to, which is not flushed.
    */
-	private void
-	inOrderTraversal(Node node, int level) {
-		if (node != null) {
-			inOrderTraversal(node.left, level + 1);
-			System.out.println(" ".repeat(level * 4) + node.height + " " + node.stock);
-			inOrderTraversal(node.right, level + 1);
+	public void
+	inOrderTraversal(OutputSink out) {
+		if (root == null)
+			return;
+
+		Node[] stack = new Node[root.height];
+		int[] levels = new int[root.height];
+		int top = 0;
+		Node node = root;
+		int level = 0;
+
+		while (node != null || top > 0) {
+			while (node != null) {
+				stack[top] = node;
+				levels[top++] = level++;
+				node = node.left;
+			}
+			node = stack[--top];
+			level = levels[top];
+			out.indent(level * 4).print(node.height).print(' ').print(node.stock).println();
+			node = node.right;
+			level++;
 		}
 	}
 
 	/**
-   * Method to balance the AVL tree after insertion or deletion.
-   * The balance factor of the root node is checked and rotations are performed if necessary.
-   * There are four cases to consider:
-   * 1. Left-Left (LL) case: Right rotation
-   * 2. Left-Right (LR) case: Left rotation on left child followed by right rotation on root
-   * 3. Right-Right (RR) case: Left rotation
-   * 4. Right-Left (RL) case: Right rotation on right child followed by left rotation on root
+   * Method to rebalance the nodes recorded in the path array, from the deepest one up to the root.
+   * Each rebalanced subtree is linked back into its parent. The walk always reaches the root,
+   * since the subtree size of every ancestor changes.
+   * The path array is cleared on the way so it does not keep removed nodes alive.
+   * 
+   * @param depth The number of nodes recorded in the path array.
    */
 	private void
-	balanceTree() {
-		if (root == null) {
-			return;
+	rebalancePath(int depth) {
+		for (int i = depth - 1; i >= 0; i--) {
+			Node node = path[i];
+			Node newNode = BalancedNode.balance(node);
+			path[i] = null;
+
+			if (i == 0)
+				root = newNode;
+			else if (newNode != node)
+				BalancedNode.replaceChild(path[i - 1], node, newNode);
 		}
+	}
 
-		int balance = getBalance(root);
+	/**
+   * Method to clear the first entries of the path array.
+   * @param depth The number of entries to be cleared.
+   */
+	private void
+	clearPath(int depth) {
+		for (int i = 0; i < depth; i++)
+			path[i] = null;
+	}
 
-		if (balance > 1) {
-			if (getBalance(root.left) < 0)
-				root.left = rotateLeft(root.left);
-			root = rotateRight(root);
-		} else if (balance < -1) {
-			if (getBalance(root.right) > 0)
-				root.right = rotateRight(root.right);
-			root = rotateLeft(root);
-		}
+	/**
+   * Get the number of stocks stored in the AVL tree.
+   * @return The number of stocks in the tree.
+   */
+	public int
+	size() {
+		return size;
 	}
 
 	/**
-   * Method to perform a right rotation on the given node.
-   * @param node The node to perform the right rotation on.
-   * @return The new root node after the rotation.
+   * Get the height of the AVL tree. An empty tree has height 0.
+   * @return The height of the root node.
    */
-	private Node
-	rotateRight(Node node) {
-		if (node == null)
-			return null;
-		Node newRoot = node.left;
-		node.left = newRoot.right;
-		newRoot.right = node;
+	public int
+	getHeight() {
+		return (root != null) ? root.height : 0;
+	}
 
-		newRoot.right.calculateHeight();
-		newRoot.calculateHeight();
+	/**
+   * Get the worst-case height an AVL tree with the current number of stocks may have.
+   * The bound is 1.4405 * log2(n + 2) - 0.3277, taken from the minimal (Fibonacci) AVL trees.
+   * @return The maximum height allowed for the current size.
+   */
+	public double
+	getHeightBound() {
+		return 1.4405 * (Math.log(size + 2) / Math.log(2)) - 0.3277;
+	}
 
-		return newRoot;
+	/**
+   * Verify the AVL tree invariants by visiting every node.
+   * The symbols must be in strictly increasing order, the stored keys, heights, subtree sizes and aggregates must be correct,
+   * every balance factor must be in [-1, 1], the size must match the number of nodes
+   * and the height must not exceed {@link #getHeightBound()}.
+   * Time complexity is O(n).
+   * 
+   * @return True if all invariants hold, false otherwise.
+   */
+	public boolean
+	isBalanced() {
+		int[] count = new int[1];
+		if (verify(root, null, null, count) < 0)
+			return false;
+		return count[0] == size && getHeight() <= getHeightBound();
 	}
 
 	/**
-   * Method to perform a left rotation on the given node.
-   * @param node The node to perform the left rotation on.
-   * @return The new root node after the rotation.
+   * Method to verify the invariants of a subtree.
+   * 
+   * @param node The root of the subtree to be verified.
+   * @param low The symbol every node in the subtree must be greater than, or null.
+   * @param high The symbol every node in the subtree must be less than, or null.
+   * @param count Single element array the number of visited nodes is added to.
+   * @return The height of the subtree, or -1 if an invariant is violated.
    */
-	private Node
-	rotateLeft(Node node) {
+	private int
+	verify(Node node, String low, String high, int[] count) {
 		if (node == null)
-			return null;
-		Node newRoot = node.right;
-		node.right = newRoot.left;
-		newRoot.left = node;
+			return 0;
 
-		newRoot.left.calculateHeight();
-		newRoot.calculateHeight();
+		String symbol = node.stock.getSymbol();
+		if ((low != null && symbol.compareTo(low) <= 0) || (high != null && symbol.compareTo(high) >= 0))
+			return -1;
 
-		return newRoot;
+		int leftHeight = verify(node.left, low, symbol, count);
+		if (leftHeight < 0)
+			return -1;
+		int rightHeight = verify(node.right, symbol, high, count);
+		if (rightHeight < 0)
+			return -1;
+
+		int height = 1 + Math.max(leftHeight, rightHeight);
+		if (height != node.height || Math.abs(leftHeight - rightHeight) > 1)
+			return -1;
+		if (node.count != 1 + count(node.left) + count(node.right) || node.key != SymbolKey.pack(symbol))
+			return -1;
+		Node copy = new Node(node.stock);
+		copy.left = node.left;
+		copy.right = node.right;
+		copy.update();
+		if (copy.sumVolume != node.sumVolume || copy.sumMarketCap != node.sumMarketCap ||
+			Double.compare(copy.minPrice, node.minPrice) != 0 || Double.compare(copy.maxPrice, node.maxPrice) != 0)
+			return -1;
+		count[0]++;
+		return height;
 	}
 
 	/**
-   * Method to calculate the balance factor of a node.
-   * The balance factor is the difference in height of the left and right child nodes.
-   * @param node The node to calculate the balance factor for.
-   * @return The balance factor of the node.
+   * Method to get the number of nodes in the subtree of a node. A missing node has no nodes.
+   * @param node The root of the subtree.
+   * @return The number of nodes in the subtree.
    */
-	private int
-	getBalance(Node node) {
-		if (node == null) {
-			return 0;
-		}
-		int leftHeight = (node.left != null) ? node.left.height : 0;
-		int rightHeight = (node.right != null) ? node.right.height : 0;
-		return leftHeight - rightHeight;
+	private static int
+	count(Node node) {
+		return (node != null) ? node.count : 0;
 	}
-}
\ No newline at end of file
+}
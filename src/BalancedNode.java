@@ -0,0 +1,130 @@
+/**
+ * BalancedNode.java
+ * This class holds the child links and the height of a node of an AVL tree, and implements the rotations
+ * and the rebalancing of a single node, so that AVLTree and SecondaryIndex share one copy of them.
+ * A subclass adds its entry and whatever it keeps about its subtree, and extends update to maintain it;
+ * the rotations call update on the nodes whose children change.
+ * @param <N> The type of the nodes of the tree.
+ */
+abstract class BalancedNode<N extends BalancedNode<N>> {
+	N left, right;
+	int height;
+
+	/**
+   * Constructor to initialize a node without children and with height 1.
+   */
+	BalancedNode() {
+		this.height = 1;
+	}
+
+	/**
+   * Method to calculate the height of the node based on the left and right child nodes.
+   */
+	void
+	update() {
+		height = 1 + Math.max(height(left), height(right));
+	}
+
+	/**
+   * Method to get the height of a node. A missing node has height 0.
+   * @param node The node, or null.
+   * @return The height of the node.
+   */
+	static int
+	height(BalancedNode<?> node) {
+		return (node != null) ? node.height : 0;
+	}
+
+	/**
+   * Method to calculate the balance factor of a node.
+   * The balance factor is the difference in height of the left and right child nodes.
+   * @param node The node to calculate the balance factor for, or null.
+   * @return The balance factor of the node, or 0 for a missing node.
+   */
+	static int
+	getBalance(BalancedNode<?> node) {
+		return (node != null) ? height(node.left) - height(node.right) : 0;
+	}
+
+	/**
+   * Method to rebalance a single node after insertion or deletion below it.
+   * The node is updated and rotations are performed if necessary.
+   * There are four cases to consider:
+   * 1. Left-Left (LL) case: Right rotation
+   * 2. Left-Right (LR) case: Left rotation on left child followed by right rotation on node
+   * 3. Right-Right (RR) case: Left rotation
+   * 4. Right-Left (RL) case: Right rotation on right child followed by left rotation on node
+   * 
+   * @param <N> The type of the nodes.
+   * @param node The node to be rebalanced, whose children are balanced.
+   * @return The new root of the subtree after rebalancing.
+   */
+	static <N extends BalancedNode<N>> N
+	balance(N node) {
+		node.update();
+		int balance = getBalance(node);
+
+		if (balance > 1) {
+			if (getBalance(node.left) < 0)
+				node.left = rotateLeft(node.left);
+			return rotateRight(node);
+		} else if (balance < -1) {
+			if (getBalance(node.right) > 0)
+				node.right = rotateRight(node.right);
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	/**
+   * Method to perform a right rotation on the given node.
+   * @param <N> The type of the nodes.
+   * @param node The node to perform the right rotation on, which has a left child.
+   * @return The new root node after the rotation.
+   */
+	static <N extends BalancedNode<N>> N
+	rotateRight(N node) {
+		N newRoot = node.left;
+		node.left = newRoot.right;
+		newRoot.right = node;
+
+		node.update();
+		newRoot.update();
+
+		return newRoot;
+	}
+
+	/**
+   * Method to perform a left rotation on the given node.
+   * @param <N> The type of the nodes.
+   * @param node The node to perform the left rotation on, which has a right child.
+   * @return The new root node after the rotation.
+   */
+	static <N extends BalancedNode<N>> N
+	rotateLeft(N node) {
+		N newRoot = node.right;
+		node.right = newRoot.left;
+		newRoot.left = node;
+
+		node.update();
+		newRoot.update();
+
+		return newRoot;
+	}
+
+	/**
+   * Method to replace a child pointer of a node.
+   * 
+   * @param <N> The type of the nodes.
+   * @param parent The node whose child is replaced.
+   * @param oldChild The current child of the parent.
+   * @param newChild The node that takes the place of the old child.
+   */
+	static <N extends BalancedNode<N>> void
+	replaceChild(N parent, N oldChild, N newChild) {
+		if (parent.left == oldChild)
+			parent.left = newChild;
+		else
+			parent.right = newChild;
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * Command.java
+ * This class holds one command of an input file as parsed by the CommandParser.
+ * The parser fills the same object for every line, so reading a file creates no objects per command.
+ * Only the fields used by the type of the command are set.
+ */
+public class Command {
+	/**
+   * The types of the commands.
+   */
+	public enum Type {
+		/**
+     * ADD symbol price volume marketCap
+     */
+		ADD,
+		/**
+     * REMOVE symbol
+     */
+		REMOVE,
+		/**
+     * SEARCH symbol
+     */
+		SEARCH,
+		/**
+     * UPDATE symbol newSymbol price volume marketCap
+     */
+		UPDATE,
+		/**
+     * PRINT
+     */
+		PRINT,
+		/**
+     * A command with an unknown name, which is kept as the text.
+     */
+		UNKNOWN,
+		/**
+     * A known command with missing or malformed arguments, whose whole line is kept as the text.
+     */
+		INVALID
+	}
+
+	/**
+   * The outcomes of the commands, by which replays count them.
+   */
+	public enum Outcome {
+		ADDED, UPDATED, REMOVED, FOUND, NOT_FOUND, PRINTED, INVALID, UNKNOWN
+	}
+
+	Type type;
+	String symbol;
+	String newSymbol;
+	double price;
+	long volume;
+	long marketCap;
+	String text;
+
+	/**
+   * Get the type of the command.
+   * @return The type of the command.
+   */
+	public Type
+	getType() {
+		return type;
+	}
+
+	/**
+   * Get the symbol of the stock the command works on.
+   * @return The symbol.
+   */
+	public String
+	getSymbol() {
+		return symbol;
+	}
+
+	/**
+   * Get the new symbol of an UPDATE command.
+   * @return The new symbol.
+   */
+	public String
+	getNewSymbol() {
+		return newSymbol;
+	}
+
+	/**
+   * Get the price of an ADD or UPDATE command.
+   * @return The price.
+   */
+	public double
+	getPrice() {
+		return price;
+	}
+
+	/**
+   * Get the volume of an ADD or UPDATE command.
+   * @return The volume.
+   */
+	public long
+	getVolume() {
+		return volume;
+	}
+
+	/**
+   * Get the market capitalization of an ADD or UPDATE command.
+   * @return The market capitalization.
+   */
+	public long
+	getMarketCap() {
+		return marketCap;
+	}
+
+	/**
+   * Get the name of an UNKNOWN command or the line of an INVALID command.
+   * @return The text of the command.
+   */
+	public String
+	getText() {
+		return text;
+	}
+}
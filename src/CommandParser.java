@@ -0,0 +1,449 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * CommandParser.java
+ * This class reads the commands of an input file straight from its bytes, without creating
+ * a String per line or per token. The file is read in large blocks into a direct buffer,
+ * the lines are split at '\n', '\r' or "\r\n" like BufferedReader.readLine, and the tokens at
+ * single spaces like String.split(" "). Symbols are interned in a SymbolTable and the numbers
+ * are parsed in place; only malformed lines and unusual number formats allocate.
+ */
+public class CommandParser implements Closeable {
+	/**
+   * The default size of the read buffer, which is also the maximum length of a line.
+   */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 22;
+	/**
+   * The powers of ten that are exact doubles, for the fast path of nextDouble.
+   */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+   * The words with a '\n' or a '\r' in every byte, for the line break search.
+   */
+	private static final long LINE_FEEDS = 0x0A0A0A0A0A0A0A0AL;
+	private static final long CARRIAGE_RETURNS = 0x0D0D0D0D0D0D0D0DL;
+
+	private final ReadableByteChannel channel;
+	private final SymbolTable symbols;
+	private final ByteBuffer buffer;
+	private boolean endOfInput;
+	/**
+   * Whether the last line ended with '\r', so that a following '\n' belongs to the same line break.
+   */
+	private boolean skipLineFeed;
+	private long lineCount;
+	/**
+   * The read position within the current line.
+   */
+	private int cursor;
+	private int lineEnd;
+
+	/**
+   * Constructor to read the commands of a file.
+   * @param file The input file.
+   * @throws IOException If the file cannot be opened.
+   */
+	public CommandParser(Path file) throws IOException {
+		this(FileChannel.open(file, StandardOpenOption.READ), new SymbolTable());
+	}
+
+	/**
+   * Constructor to read the commands from a channel, interning the symbols in the given table.
+   * @param channel The channel to read from, which is closed with the parser.
+   * @param symbols The table of the symbols.
+   */
+	public CommandParser(ReadableByteChannel channel, SymbolTable symbols) {
+		this(channel, symbols, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+   * Constructor to read the commands from a channel with a read buffer of the given size.
+   * The channel may be non-blocking, in which case next returns false when no whole line has arrived yet.
+   * 
+   * @param channel The channel to read from, which is closed with the parser.
+   * @param symbols The table of the symbols.
+   * @param bufferSize The size of the read buffer, which is also the maximum length of a line.
+   */
+	public CommandParser(ReadableByteChannel channel, SymbolTable symbols, int bufferSize) {
+		this.channel = channel;
+		this.symbols = symbols;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.buffer.limit(0);
+	}
+
+	/**
+   * Method to parse the next line into a command.
+   * On a non-blocking channel, false is also returned when no whole line has arrived yet,
+   * which isEndOfInput tells apart from the end of the input.
+   * 
+   * @param command The command to be filled.
+   * @return True if a line was parsed, false at the end of the input or if no line is available.
+   * @throws IOException If the input cannot be read or a line is longer than the buffer.
+   */
+	public boolean
+	next(Command command) throws IOException {
+		int start = buffer.position();
+		int end = start;
+		while (true) {
+			if (skipLineFeed && start < buffer.limit()) {
+				skipLineFeed = false;
+				if (buffer.get(start) == '\n') {
+					start++;
+					end = start;
+				}
+			}
+			end = lineBreak(end, buffer.limit());
+			if (end < buffer.limit())
+				break;
+			if (endOfInput) {
+				if (start == end)
+					return false;
+				break;
+			}
+			buffer.position(start);
+			end -= start;
+			start = 0;
+			if (fill() == 0)
+				return false;
+		}
+
+		parse(command, start, end);
+		lineCount++;
+		if (end < buffer.limit()) {
+			skipLineFeed = buffer.get(end) == '\r';
+			end++;
+		}
+		buffer.position(end);
+		return true;
+	}
+
+	/**
+   * Get the number of lines parsed so far.
+   * @return The number of lines.
+   */
+	public long
+	getLineCount() {
+		return lineCount;
+	}
+
+	/**
+   * Get the number of bytes read from the channel that are not parsed yet.
+   * @return The number of buffered bytes.
+   */
+	public int
+	getBufferedBytes() {
+		return buffer.remaining();
+	}
+
+	/**
+   * Method to check whether the end of the input has been read.
+   * @return True if the channel has no more input, false otherwise.
+   */
+	public boolean
+	isEndOfInput() {
+		return endOfInput;
+	}
+
+	/**
+   * Get the table the symbols are interned in.
+   * @return The table of the symbols.
+   */
+	public SymbolTable
+	getSymbols() {
+		return symbols;
+	}
+
+	/**
+   * Method to close the channel.
+   * @throws IOException If the channel cannot be closed.
+   */
+	@Override
+	public void
+	close() throws IOException {
+		channel.close();
+	}
+
+	/**
+   * Method to find the first line break in [from, to) of the buffer.
+   * Eight bytes are tested at a time for a '\n' or '\r' byte before the bytes are looked at one by one.
+   *
+   * @param from The inclusive start index.
+   * @param to The exclusive end index.
+   * @return The index of the first '\n' or '\r', or to if there is none.
+   */
+	private int
+	lineBreak(int from, int to) {
+		int i = from;
+		for (; i + Long.BYTES <= to; i += Long.BYTES) {
+			long word = buffer.getLong(i);
+			if (hasZeroByte(word ^ LINE_FEEDS) || hasZeroByte(word ^ CARRIAGE_RETURNS))
+				break;
+		}
+		for (; i < to; i++) {
+			byte b = buffer.get(i);
+			if (b == '\n' || b == '\r')
+				return i;
+		}
+		return to;
+	}
+
+	/**
+   * Method to check whether any of the eight bytes of a word is zero.
+   * @param word The word to be checked.
+   * @return True if a byte is zero, false otherwise.
+   */
+	private static boolean
+	hasZeroByte(long word) {
+		return ((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) != 0;
+	}
+
+	/**
+   * Method to move the unread bytes to the start of the buffer and read more bytes behind them.
+   * @return The number of bytes read, which is 0 only if a non-blocking channel has no input ready, or -1 at the end of the input.
+   * @throws IOException If the input cannot be read or the buffer is full without a line break.
+   */
+	private int
+	fill() throws IOException {
+		buffer.compact();
+		if (!buffer.hasRemaining())
+			throw new IOException("Line longer than " + buffer.capacity() + " bytes");
+		int read = channel.read(buffer);
+		if (read < 0)
+			endOfInput = true;
+		buffer.flip();
+		return read;
+	}
+
+	/**
+   * Method to parse the line in [start, end) of the buffer into a command.
+   * 
+   * @param command The command to be filled.
+   * @param start The inclusive start index of the line.
+   * @param end The exclusive end index of the line.
+   */
+	private void
+	parse(Command command, int start, int end) {
+		cursor = start;
+		lineEnd = end;
+		int nameStart = cursor;
+		int nameEnd = skipToken();
+		try {
+			if (start < end)
+				requireToken(start);
+			if (matches(nameStart, nameEnd, "ADD")) {
+				command.type = Command.Type.ADD;
+				command.symbol = nextSymbol();
+				command.price = nextDouble();
+				command.volume = nextLong();
+				command.marketCap = nextLong();
+			} else if (matches(nameStart, nameEnd, "REMOVE")) {
+				command.type = Command.Type.REMOVE;
+				command.symbol = nextSymbol();
+			} else if (matches(nameStart, nameEnd, "SEARCH")) {
+				command.type = Command.Type.SEARCH;
+				command.symbol = nextSymbol();
+			} else if (matches(nameStart, nameEnd, "UPDATE")) {
+				command.type = Command.Type.UPDATE;
+				command.symbol = nextSymbol();
+				command.newSymbol = nextSymbol();
+				command.price = nextDouble();
+				command.volume = nextLong();
+				command.marketCap = nextLong();
+			} else if (matches(nameStart, nameEnd, "PRINT")) {
+				command.type = Command.Type.PRINT;
+			} else {
+				command.type = Command.Type.UNKNOWN;
+				command.text = decode(nameStart, nameEnd);
+			}
+		} catch (NumberFormatException e) {
+			command.type = Command.Type.INVALID;
+			command.text = decode(start, end);
+		}
+	}
+
+	/**
+   * Method to skip the next token and the space after it.
+   * @return The exclusive end index of the token.
+   */
+	private int
+	skipToken() {
+		while (cursor < lineEnd && buffer.get(cursor) != ' ')
+			cursor++;
+		int end = cursor;
+		if (cursor < lineEnd)
+			cursor++;
+		return end;
+	}
+
+	/**
+   * Method to check that there is another token. Empty tokens only count if a non-empty one follows,
+   * as String.split drops trailing empty strings. A missing token is reported like a malformed number,
+   * so both make the line INVALID.
+   * @throws NumberFormatException If there are no more tokens.
+   */
+	private void
+	requireToken() {
+		requireToken(cursor);
+	}
+
+	/**
+   * Method to check that there is a token at or after an index, which is not only made of spaces.
+   * @param from The index to look from.
+   * @throws NumberFormatException If there are no more tokens.
+   */
+	private void
+	requireToken(int from) {
+		int i = from;
+		while (i < lineEnd && buffer.get(i) == ' ')
+			i++;
+		if (i >= lineEnd)
+			throw new NumberFormatException("Missing argument");
+	}
+
+	/**
+   * Method to read the next token as an interned symbol, hashing it while looking for its end.
+   * @return The symbol.
+   * @throws NumberFormatException If there are no more tokens.
+   */
+	private String
+	nextSymbol() {
+		requireToken();
+		int start = cursor;
+		int hash = SymbolTable.EMPTY_HASH;
+		for (; cursor < lineEnd && buffer.get(cursor) != ' '; cursor++)
+			hash = SymbolTable.hash(hash, buffer.get(cursor));
+		int end = cursor;
+		if (cursor < lineEnd)
+			cursor++;
+		return symbols.intern(buffer, start, end, hash);
+	}
+
+	/**
+   * Method to read the next token as a long, with the same rules as Long.parseLong.
+   * @return The value of the token.
+   * @throws NumberFormatException If there are no more tokens or the token is not a long.
+   */
+	private long
+	nextLong() {
+		requireToken();
+		int i = cursor;
+		boolean negative = false;
+		long limit = -Long.MAX_VALUE;
+		if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+			negative = buffer.get(i) == '-';
+			if (negative)
+				limit = Long.MIN_VALUE;
+			i++;
+		}
+		int digitsStart = i;
+
+		long multiplyLimit = limit / 10;
+		long result = 0;
+		for (; i < lineEnd; i++) {
+			byte b = buffer.get(i);
+			if (b == ' ')
+				break;
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || result < multiplyLimit)
+				throw new NumberFormatException("Malformed number");
+			result *= 10;
+			if (result < limit + digit)
+				throw new NumberFormatException("Malformed number");
+			result -= digit;
+		}
+		if (i == digitsStart)
+			throw new NumberFormatException("Malformed number");
+		cursor = (i < lineEnd) ? i + 1 : i;
+		return negative ? result : -result;
+	}
+
+	/**
+   * Method to read the next token as a double, with the same result as Double.parseDouble.
+   * Plain decimals with at most 15 significant digits and 22 fraction digits are divided exactly
+   * by a power of ten, which rounds correctly; other formats are passed to Double.parseDouble.
+   * 
+   * @return The value of the token.
+   * @throws NumberFormatException If there are no more tokens or the token is not a double.
+   */
+	private double
+	nextDouble() {
+		requireToken();
+		int start = cursor;
+		int i = start;
+		boolean negative = false;
+		if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		boolean anyDigit = false;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < lineEnd; i++) {
+			byte b = buffer.get(i);
+			if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else if (b >= '0' && b <= '9') {
+				anyDigit = true;
+				mantissa = mantissa * 10 + (b - '0');
+				if (mantissa != 0)
+					digits++;
+				if (fractionDigits >= 0)
+					fractionDigits++;
+			} else {
+				break;
+			}
+		}
+		if ((i < lineEnd && buffer.get(i) != ' ') || !anyDigit || digits > 15 || fractionDigits > 22)
+			return Double.parseDouble(decode(start, skipToken()));
+		cursor = (i < lineEnd) ? i + 1 : i;
+
+		double value = (fractionDigits > 0) ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+   * Method to check whether the bytes in [start, end) of the buffer spell an ASCII word.
+   * 
+   * @param start The inclusive start index of the bytes.
+   * @param end The exclusive end index of the bytes.
+   * @param word The word.
+   * @return True if the bytes spell the word, false otherwise.
+   */
+	private boolean
+	matches(int start, int end, String word) {
+		if (end - start != word.length())
+			return false;
+		for (int i = 0; i < word.length(); i++) {
+			if (buffer.get(start + i) != word.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+   * Method to decode the bytes in [start, end) of the buffer as UTF-8.
+   * 
+   * @param start The inclusive start index of the bytes.
+   * @param end The exclusive end index of the bytes.
+   * @return The decoded string.
+   */
+	private String
+	decode(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,836 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * CompactAVLTree.java
+ * This class implements an AVL tree of stocks stored in parallel arrays instead of node and stock objects.
+ * A node is an index into the arrays: the child links are int indices, the heights are bytes and the
+ * price, volume and market capitalization are primitive columns. Only the symbol remains an object.
+ * Slot 0 stands for the missing node and has height 0 and count 0. Removed slots are kept in a free list
+ * linked through the left column and reused by later insertions. Every node keeps the number of nodes in
+ * its subtree, so ranks, indices and counts of ranges take O(log n) like in AVLTree. Unlike AVLTree it keeps
+ * no totals of the values, so aggregates visit the stocks in the range.
+ * Stocks handed out are copies made from the columns, so their values never change under the caller.
+ */
+public class CompactAVLTree {
+	/**
+   * The maximum height of the tree, as in AVLTree.
+   */
+	private static final int MAX_HEIGHT = 64;
+	/**
+   * The index standing for a missing node.
+   */
+	private static final int NIL = 0;
+	/**
+   * The initial number of slots, including the slot of the missing node.
+   */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] left;
+	private int[] right;
+	private byte[] height;
+	/**
+   * The number of nodes in the subtree of each slot.
+   */
+	private int[] counts;
+	private String[] symbols;
+	private double[] prices;
+	private long[] volumes;
+	private long[] marketCaps;
+
+	private int root;
+	private int size;
+	/**
+   * The number of slots handed out so far, including the slot of the missing node.
+   */
+	private int used;
+	/**
+   * The first slot of the free list, or NIL if the free list is empty.
+   */
+	private int free;
+	/**
+   * The ancestors of the node being inserted or deleted, reused by every update.
+   */
+	private final int[] path = new int[MAX_HEIGHT];
+	private int modCount;
+
+	/**
+   * Constructor to initialize an empty tree.
+   */
+	public CompactAVLTree() {
+		left = new int[INITIAL_CAPACITY];
+		right = new int[INITIAL_CAPACITY];
+		height = new byte[INITIAL_CAPACITY];
+		counts = new int[INITIAL_CAPACITY];
+		symbols = new String[INITIAL_CAPACITY];
+		prices = new double[INITIAL_CAPACITY];
+		volumes = new long[INITIAL_CAPACITY];
+		marketCaps = new long[INITIAL_CAPACITY];
+		root = NIL;
+		used = 1;
+		free = NIL;
+	}
+
+	/**
+   * Insert a stock, or overwrite the values of the stock stored under the same symbol.
+   * The tree is descended once and balanced after an insertion.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return True if an existing stock was updated, false if the stock was inserted.
+   */
+	public boolean
+	put(String symbol, double price, long volume, long marketCap) {
+		int node = root;
+		int depth = 0;
+		int cmp = 0;
+		while (node != NIL) {
+			cmp = symbol.compareTo(symbols[node]);
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = left[node];
+			} else if (cmp > 0) {
+				path[depth++] = node;
+				node = right[node];
+			} else {
+				prices[node] = price;
+				volumes[node] = volume;
+				marketCaps[node] = marketCap;
+				return true;
+			}
+		}
+
+		int newNode = allocate();
+		symbols[newNode] = symbol;
+		prices[newNode] = price;
+		volumes[newNode] = volume;
+		marketCaps[newNode] = marketCap;
+		if (depth == 0)
+			root = newNode;
+		else if (cmp < 0)
+			left[path[depth - 1]] = newNode;
+		else
+			right[path[depth - 1]] = newNode;
+		size++;
+		modCount++;
+		rebalancePath(depth);
+		return false;
+	}
+
+	/**
+   * Remove a stock from the tree. The tree is balanced after removal.
+   * A node with two children takes the values of its in-order successor, and the successor slot is freed instead.
+   * 
+   * @param symbol The symbol of the stock to be removed.
+   * @return A copy of the removed stock, or null if there was no stock with the symbol.
+   */
+	public Stock
+	remove(String symbol) {
+		int node = root;
+		int depth = 0;
+		while (node != NIL) {
+			int cmp = symbol.compareTo(symbols[node]);
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = left[node];
+			} else if (cmp > 0) {
+				path[depth++] = node;
+				node = right[node];
+			} else {
+				break;
+			}
+		}
+		if (node == NIL)
+			return null;
+
+		Stock removed = toStock(node);
+		if (left[node] != NIL && right[node] != NIL) {
+			path[depth++] = node;
+			int minNode = right[node];
+			while (left[minNode] != NIL) {
+				path[depth++] = minNode;
+				minNode = left[minNode];
+			}
+			symbols[node] = symbols[minNode];
+			prices[node] = prices[minNode];
+			volumes[node] = volumes[minNode];
+			marketCaps[node] = marketCaps[minNode];
+			node = minNode;
+		}
+
+		int child = (left[node] != NIL) ? left[node] : right[node];
+		if (depth == 0)
+			root = child;
+		else
+			replaceChild(path[depth - 1], node, child);
+		release(node);
+		size--;
+		modCount++;
+		rebalancePath(depth);
+		return removed;
+	}
+
+	/**
+   * Search for a stock in the tree based on the symbol. Time complexity is O(log n).
+   * @param symbol The symbol of the stock to be searched.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	public Stock
+	search(String symbol) {
+		int node = find(symbol);
+		return (node != NIL) ? toStock(node) : null;
+	}
+
+	/**
+   * Get a copy of the stock with the greatest symbol less than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	public Stock
+	floor(String symbol) {
+		int node = root;
+		int result = NIL;
+		while (node != NIL) {
+			int cmp = symbol.compareTo(symbols[node]);
+			if (cmp < 0) {
+				node = left[node];
+			} else if (cmp > 0) {
+				result = node;
+				node = right[node];
+			} else {
+				return toStock(node);
+			}
+		}
+		return (result != NIL) ? toStock(result) : null;
+	}
+
+	/**
+   * Get a copy of the stock with the least symbol greater than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	public Stock
+	ceiling(String symbol) {
+		int node = root;
+		int result = NIL;
+		while (node != NIL) {
+			int cmp = symbol.compareTo(symbols[node]);
+			if (cmp < 0) {
+				result = node;
+				node = left[node];
+			} else if (cmp > 0) {
+				node = right[node];
+			} else {
+				return toStock(node);
+			}
+		}
+		return (result != NIL) ? toStock(result) : null;
+	}
+
+	/**
+   * Get a copy of the stock with the least symbol strictly greater than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	public Stock
+	higher(String symbol) {
+		int node = root;
+		int result = NIL;
+		while (node != NIL) {
+			if (symbol.compareTo(symbols[node]) < 0) {
+				result = node;
+				node = left[node];
+			} else {
+				node = right[node];
+			}
+		}
+		return (result != NIL) ? toStock(result) : null;
+	}
+
+	/**
+   * Get a copy of the stock with the greatest symbol strictly less than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	public Stock
+	lower(String symbol) {
+		int node = root;
+		int result = NIL;
+		while (node != NIL) {
+			if (symbol.compareTo(symbols[node]) > 0) {
+				result = node;
+				node = right[node];
+			} else {
+				node = left[node];
+			}
+		}
+		return (result != NIL) ? toStock(result) : null;
+	}
+
+	/**
+   * Change the symbol and the values of a stock. A change of symbol removes the stock and inserts it again,
+   * so the freed slot is reused at once. A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   * @return A copy of the updated stock, or null if there was no stock with the symbol.
+   */
+	public Stock
+	update(String symbol, String newSymbol, double price, long volume, long marketCap) {
+		int node = find(symbol);
+		if (node == NIL)
+			return null;
+		if (symbol.equals(newSymbol)) {
+			prices[node] = price;
+			volumes[node] = volume;
+			marketCaps[node] = marketCap;
+		} else {
+			remove(symbol);
+			put(newSymbol, price, volume, marketCap);
+		}
+		return new Stock(newSymbol, price, volume, marketCap);
+	}
+
+	/**
+   * Change the symbols of many stocks at once, like AVLTree.rekeyAll. All renamed stocks are removed
+   * before any is stored again, so chains and swaps such as A to B and B to A behave as expected.
+   * A stock stored under a new symbol that is not renamed itself is replaced. If several stocks are
+   * renamed to the same symbol, only one of them is kept. The freed slots are reused by the new symbols.
+   * 
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	public int
+	rekeyAll(Map<String, String> renames) {
+		Stock[] removed = new Stock[Math.min(renames.size(), size)];
+		String[] newSymbols = new String[removed.length];
+		int count = 0;
+		for (Map.Entry<String, String> entry : renames.entrySet()) {
+			if (count == removed.length)
+				break;
+			Stock stock = remove(entry.getKey());
+			if (stock != null) {
+				removed[count] = stock;
+				newSymbols[count++] = entry.getValue();
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			Stock stock = removed[i];
+			put(newSymbols[i], stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+		}
+		return count;
+	}
+
+	/**
+   * Get a sequential stream of copies of the stocks with symbols in [fromSymbol, toSymbol), in symbol order.
+   * The stocks are copied lazily while the stream is consumed.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of copies of the stocks in the range.
+   */
+	public Stream<Stock>
+	range(String fromSymbol, String toSymbol) {
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		Iterator<Stock> iterator = new StockIterator(fromSymbol, toSymbol);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+	}
+
+	/**
+   * Get the number of stocks with a symbol less than the given symbol, which is the index of the
+   * symbol in symbol order if it is present. Time complexity is O(log n).
+   * 
+   * @param symbol The symbol to be ranked, or null for the end of the tree.
+   * @return The number of stocks with a smaller symbol.
+   */
+	public int
+	rank(String symbol) {
+		if (symbol == null)
+			return size;
+		int node = root;
+		int rank = 0;
+		while (node != NIL) {
+			int cmp = symbol.compareTo(symbols[node]);
+			if (cmp < 0) {
+				node = left[node];
+			} else if (cmp > 0) {
+				rank += counts[left[node]] + 1;
+				node = right[node];
+			} else {
+				return rank + counts[left[node]];
+			}
+		}
+		return rank;
+	}
+
+	/**
+   * Get a copy of the stock at the given index in symbol order. Time complexity is O(log n).
+   * @param index The index of the stock, starting from 0.
+   * @return A copy of the stock at the index.
+   * @throws IndexOutOfBoundsException If the index is negative or not less than the size.
+   */
+	public Stock
+	select(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		int node = root;
+		while (true) {
+			int leftCount = counts[left[node]];
+			if (index < leftCount) {
+				node = left[node];
+			} else if (index > leftCount) {
+				index -= leftCount + 1;
+				node = right[node];
+			} else {
+				return toStock(node);
+			}
+		}
+	}
+
+	/**
+   * Get the number of stocks with symbols in [fromSymbol, toSymbol). Time complexity is O(log n).
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks in the range.
+   */
+	public int
+	countInRange(String fromSymbol, String toSymbol) {
+		int from = (fromSymbol != null) ? rank(fromSymbol) : 0;
+		return Math.max(0, rank(toSymbol) - from);
+	}
+
+	/**
+   * Get the totals of the stocks with symbols in [fromSymbol, toSymbol).
+   * The tree keeps no totals of the values, so the stocks in the range are visited in O(log n + k)
+   * by reading the columns, without copying them.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The totals of the stocks in the range.
+   */
+	public AVLTree.Aggregate
+	aggregate(String fromSymbol, String toSymbol) {
+		AVLTree.Aggregate aggregate = new AVLTree.Aggregate();
+		if (root == NIL)
+			return aggregate;
+
+		int[] stack = new int[height[root]];
+		int top = 0;
+		int node = root;
+		while (node != NIL) {
+			if (fromSymbol == null || fromSymbol.compareTo(symbols[node]) <= 0) {
+				stack[top++] = node;
+				node = left[node];
+			} else {
+				node = right[node];
+			}
+		}
+		while (top > 0) {
+			node = stack[--top];
+			if (toSymbol != null && symbols[node].compareTo(toSymbol) >= 0)
+				break;
+			aggregate.add(prices[node], volumes[node], marketCaps[node]);
+			for (int child = right[node]; child != NIL; child = left[child])
+				stack[top++] = child;
+		}
+		return aggregate;
+	}
+
+	/**
+   * Get a sequential stream of copies of the stocks at the indices [fromIndex, toIndex) in symbol order,
+   * for example one page of rows. The first stock is found in O(log n) by its index.
+   * 
+   * @param fromIndex The inclusive index of the first stock.
+   * @param toIndex The exclusive index of the last stock.
+   * @return The stream of copies of the stocks at the indices.
+   * @throws IndexOutOfBoundsException If the indices are not within [0, size] or fromIndex is greater than toIndex.
+   */
+	public Stream<Stock>
+	slice(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+		Iterator<Stock> iterator = new StockIterator(fromIndex, toIndex - fromIndex);
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		return StreamSupport.stream(Spliterators.spliterator(iterator, toIndex - fromIndex, characteristics), false);
+	}
+
+	/**
+   * Get the number of stocks in the tree.
+   * @return The number of stocks.
+   */
+	public int
+	size() {
+		return size;
+	}
+
+	/**
+   * Get the height of the tree.
+   * @return The height of the root, or 0 if the tree is empty.
+   */
+	public int
+	getHeight() {
+		return height[root];
+	}
+
+	/**
+   * Verify the AVL tree invariants by visiting every node.
+   * The symbols must be in strictly increasing order, the stored heights must be correct,
+   * every balance factor must be in [-1, 1], the stored counts must be correct and the size must match
+   * the number of nodes.
+   * 
+   * @return True if all invariants hold, false otherwise.
+   */
+	public boolean
+	isBalanced() {
+		int[] count = new int[1];
+		return verify(root, null, null, count) >= 0 && count[0] == size;
+	}
+
+	/**
+   * Print the stocks in symbol order, indented by their depth, like AVLTree.inOrderTraversal.
+   */
+	public void
+	inOrderTraversal() {
+		OutputSink out = new OutputSink();
+		inOrderTraversal(out);
+		out.flush();
+	}
+
+	/**
+   * Method to write the stocks in symbol order to an output sink, indented by their depth like
+   * inOrderTraversal(). The values are printed straight from the columns, without copies.
+   * @param out The sink to write to, which is not flushed.
+   */
+	public void
+	inOrderTraversal(OutputSink out) {
+		if (root == NIL)
+			return;
+
+		int[] stack = new int[height[root]];
+		int[] levels = new int[height[root]];
+		int top = 0;
+		int node = root;
+		int level = 0;
+
+		while (node != NIL || top > 0) {
+			while (node != NIL) {
+				stack[top] = node;
+				levels[top++] = level++;
+				node = left[node];
+			}
+			node = stack[--top];
+			level = levels[top];
+			out.indent(level * 4).print(height[node]).print(' ')
+				.print(symbols[node], prices[node], volumes[node], marketCaps[node]).println();
+			node = right[node];
+			level++;
+		}
+	}
+
+	/**
+   * Method to find the slot holding a symbol.
+   * @param symbol The symbol to be found.
+   * @return The slot of the symbol, or NIL if there is none.
+   */
+	private int
+	find(String symbol) {
+		int node = root;
+		while (node != NIL) {
+			int cmp = symbol.compareTo(symbols[node]);
+			if (cmp < 0)
+				node = left[node];
+			else if (cmp > 0)
+				node = right[node];
+			else
+				return node;
+		}
+		return NIL;
+	}
+
+	/**
+   * Method to copy the values of a slot into a new stock object.
+   * @param node The slot.
+   * @return The stock object with the values of the slot.
+   */
+	private Stock
+	toStock(int node) {
+		return new Stock(symbols[node], prices[node], volumes[node], marketCaps[node]);
+	}
+
+	/**
+   * Method to take a slot from the free list, or the next unused slot, growing the columns if needed.
+   * @return The slot, without children and with height 1.
+   */
+	private int
+	allocate() {
+		int node = free;
+		if (node != NIL) {
+			free = left[node];
+		} else {
+			if (used == left.length)
+				grow(left.length * 2);
+			node = used++;
+		}
+		left[node] = NIL;
+		right[node] = NIL;
+		height[node] = 1;
+		counts[node] = 1;
+		return node;
+	}
+
+	/**
+   * Method to put a slot on the free list. The symbol is dropped so that it can be collected.
+   * @param node The slot to be freed.
+   */
+	private void
+	release(int node) {
+		symbols[node] = null;
+		left[node] = free;
+		free = node;
+	}
+
+	/**
+   * Method to copy all columns into arrays with more slots.
+   * @param capacity The new number of slots.
+   */
+	private void
+	grow(int capacity) {
+		left = Arrays.copyOf(left, capacity);
+		right = Arrays.copyOf(right, capacity);
+		height = Arrays.copyOf(height, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		symbols = Arrays.copyOf(symbols, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		volumes = Arrays.copyOf(volumes, capacity);
+		marketCaps = Arrays.copyOf(marketCaps, capacity);
+	}
+
+	/**
+   * Method to rebalance the nodes recorded in the path array from the deepest one up to the root.
+   * @param depth The number of nodes recorded in the path array.
+   */
+	private void
+	rebalancePath(int depth) {
+		for (int i = depth - 1; i >= 0; i--) {
+			int node = path[i];
+			int newNode = balance(node);
+			if (i == 0)
+				root = newNode;
+			else if (newNode != node)
+				replaceChild(path[i - 1], node, newNode);
+		}
+	}
+
+	/**
+   * Method to replace a child of a node.
+   * @param parent The parent node.
+   * @param oldChild The child to be replaced.
+   * @param newChild The new child.
+   */
+	private void
+	replaceChild(int parent, int oldChild, int newChild) {
+		if (left[parent] == oldChild)
+			left[parent] = newChild;
+		else
+			right[parent] = newChild;
+	}
+
+	/**
+   * Method to calculate the height and the count of a node based on its children.
+   * @param node The node.
+   */
+	private void
+	update(int node) {
+		height[node] = (byte)(1 + Math.max(height[left[node]], height[right[node]]));
+		counts[node] = 1 + counts[left[node]] + counts[right[node]];
+	}
+
+	/**
+   * Method to balance a node whose children are balanced.
+   * @param node The node to be balanced.
+   * @return The new root of the subtree.
+   */
+	private int
+	balance(int node) {
+		update(node);
+		int balance = height[left[node]] - height[right[node]];
+		if (balance > 1) {
+			int child = left[node];
+			if (height[left[child]] < height[right[child]])
+				left[node] = rotateLeft(child);
+			return rotateRight(node);
+		} else if (balance < -1) {
+			int child = right[node];
+			if (height[right[child]] < height[left[child]])
+				right[node] = rotateRight(child);
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	/**
+   * Method to rotate a subtree to the right.
+   * @param node The root of the subtree.
+   * @return The new root of the subtree.
+   */
+	private int
+	rotateRight(int node) {
+		int newRoot = left[node];
+		left[node] = right[newRoot];
+		right[newRoot] = node;
+		update(node);
+		update(newRoot);
+		return newRoot;
+	}
+
+	/**
+   * Method to rotate a subtree to the left.
+   * @param node The root of the subtree.
+   * @return The new root of the subtree.
+   */
+	private int
+	rotateLeft(int node) {
+		int newRoot = right[node];
+		right[node] = left[newRoot];
+		left[newRoot] = node;
+		update(node);
+		update(newRoot);
+		return newRoot;
+	}
+
+	/**
+   * Method to verify a subtree recursively.
+   * 
+   * @param node The root of the subtree.
+   * @param low The exclusive lower bound of the symbols, or null for no bound.
+   * @param high The exclusive upper bound of the symbols, or null for no bound.
+   * @param count The array counting the visited nodes at index 0.
+   * @return The height of the subtree, or -1 if an invariant does not hold.
+   */
+	private int
+	verify(int node, String low, String high, int[] count) {
+		if (node == NIL)
+			return 0;
+
+		String symbol = symbols[node];
+		if ((low != null && symbol.compareTo(low) <= 0) || (high != null && symbol.compareTo(high) >= 0))
+			return -1;
+
+		int leftHeight = verify(left[node], low, symbol, count);
+		if (leftHeight < 0)
+			return -1;
+		int rightHeight = verify(right[node], symbol, high, count);
+		if (rightHeight < 0)
+			return -1;
+
+		int nodeHeight = 1 + Math.max(leftHeight, rightHeight);
+		if (nodeHeight != height[node] || Math.abs(leftHeight - rightHeight) > 1)
+			return -1;
+		if (counts[node] != 1 + counts[left[node]] + counts[right[node]])
+			return -1;
+		count[0]++;
+		return nodeHeight;
+	}
+
+	/**
+   * Iterator class that walks the slots in-order with an explicit stack of the pending ancestors.
+   */
+	private class StockIterator implements Iterator<Stock> {
+		private final int[] stack;
+		private final String toSymbol;
+		private final int expectedModCount;
+		private int top;
+		private int remaining;
+
+		/**
+     * Constructor to seek to the first stock with a symbol greater than or equal to the start symbol.
+     * 
+     * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+     * @param toSymbol The exclusive upper bound, or null for no upper bound.
+     */
+		StockIterator(String fromSymbol, String toSymbol) {
+			this.stack = new int[height[root]];
+			this.toSymbol = toSymbol;
+			this.expectedModCount = modCount;
+			this.remaining = Integer.MAX_VALUE;
+			int node = root;
+			while (node != NIL) {
+				if (fromSymbol == null || fromSymbol.compareTo(symbols[node]) <= 0) {
+					stack[top++] = node;
+					node = left[node];
+				} else {
+					node = right[node];
+				}
+			}
+		}
+
+		/**
+     * Constructor to seek to the stock at the given index using the subtree counts.
+     * 
+     * @param fromIndex The index of the first stock, at most the size of the tree.
+     * @param count The maximum number of stocks to be returned.
+     */
+		StockIterator(int fromIndex, int count) {
+			this.stack = new int[height[root]];
+			this.toSymbol = null;
+			this.expectedModCount = modCount;
+			this.remaining = count;
+			int node = root;
+			while (node != NIL) {
+				int leftCount = counts[left[node]];
+				if (fromIndex <= leftCount) {
+					stack[top++] = node;
+					node = left[node];
+				} else {
+					fromIndex -= leftCount + 1;
+					node = right[node];
+				}
+			}
+		}
+
+		/**
+     * Method to check whether there is another stock before the upper bound.
+     * The modification count is checked first, as the slots on the stack may have been freed.
+     * 
+     * @return True if there is another stock, false otherwise.
+     * @throws ConcurrentModificationException If the tree was changed structurally during the iteration.
+     */
+		@Override
+		public boolean
+		hasNext() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			return top > 0 && remaining > 0 && (toSymbol == null || symbols[stack[top - 1]].compareTo(toSymbol) < 0);
+		}
+
+		/**
+     * Method to return a copy of the next stock and advance to the following one.
+     * @return A copy of the next stock.
+     * @throws NoSuchElementException If there are no more stocks.
+     * @throws ConcurrentModificationException If the tree was changed structurally during the iteration.
+     */
+		@Override
+		public Stock
+		next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			int node = stack[--top];
+			for (int child = right[node]; child != NIL; child = left[child])
+				stack[top++] = child;
+			remaining--;
+			return toStock(node);
+		}
+	}
+}
@@ -0,0 +1,318 @@
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * CompactStockDataManager.java
+ * This class manages the stock data using a CompactAVLTree, which keeps the stocks in primitive columns
+ * instead of one node and one stock object per symbol. It implements StockStore like StockDataManager
+ * at a fraction of the memory. Lookups walk the tree, as there is no hash index next to it, and aggregates
+ * visit the stocks in the range, as the tree keeps no totals of the values.
+ * Stocks handed out are copies; updates always go through this class.
+ */
+public class CompactStockDataManager implements StockStore {
+	private CompactAVLTree tree;
+	/**
+   * The optional cache in front of searchStock, or null if not kept.
+   */
+	private StockCache cache;
+
+	/**
+   * Constructor to initialize the compact AVL tree.
+   */
+	public CompactStockDataManager() {
+		tree = new CompactAVLTree();
+	}
+
+	/**
+   * Method to start keeping a bounded cache of the stocks searched for, which spares hot symbols the walk
+   * down the tree. The cache is kept current by every later change. A cache already kept is replaced.
+   * @param capacity The maximum number of stocks in the cache.
+   */
+	public void
+	enableSearchCache(int capacity) {
+		cache = new StockCache(capacity);
+	}
+
+	/**
+   * Method to stop keeping the search cache.
+   */
+	public void
+	disableSearchCache() {
+		cache = null;
+	}
+
+	/**
+   * Get the search cache, for example to read its counters.
+   * @return The search cache, or null if not kept.
+   */
+	public StockCache
+	getSearchCache() {
+		return cache;
+	}
+
+	/**
+   * Method to add or update a stock in the compact AVL tree.
+   * If the stock already exists, it is updated with the new values.
+   * If the stock does not exist, it is added to the tree.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return 0 if the stock is added, 1 if the stock is updated.
+   */
+	@Override
+	public int
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		boolean updated = tree.put(symbol, price, volume, marketCap);
+		if (cache != null)
+			cache.update(symbol, price, volume, marketCap);
+		return updated ? 1 : 0;
+	}
+
+	/**
+   * Method to remove a stock from the compact AVL tree.
+   * @param symbol The symbol of the stock to be removed.
+   * @return A copy of the removed stock, or null if the stock was not found.
+   */
+	@Override
+	public Stock
+	removeStock(String symbol) {
+		if (cache != null)
+			cache.invalidate(symbol);
+		return tree.remove(symbol);
+	}
+
+	/**
+   * Method to search for a stock in the compact AVL tree, or in the search cache if one is kept.
+   * @param symbol The symbol of the stock to be searched.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	@Override
+	public Stock
+	searchStock(String symbol) {
+		if (cache == null)
+			return tree.search(symbol);
+		Stock stock = cache.get(symbol);
+		if (stock == null) {
+			stock = tree.search(symbol);
+			if (stock != null)
+				cache.put(stock);
+		}
+		return stock;
+	}
+
+	/**
+   * Method to get a copy of the stock with the greatest symbol less than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	@Override
+	public Stock
+	floorStock(String symbol) {
+		return tree.floor(symbol);
+	}
+
+	/**
+   * Method to get a copy of the stock with the least symbol greater than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	@Override
+	public Stock
+	ceilingStock(String symbol) {
+		return tree.ceiling(symbol);
+	}
+
+	/**
+   * Method to get a copy of the stock with the least symbol strictly greater than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	@Override
+	public Stock
+	higherStock(String symbol) {
+		return tree.higher(symbol);
+	}
+
+	/**
+   * Method to get a copy of the stock with the greatest symbol strictly less than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	@Override
+	public Stock
+	lowerStock(String symbol) {
+		return tree.lower(symbol);
+	}
+
+	/**
+   * Method to update the details of a stock in the compact AVL tree.
+   * A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return A copy of the updated stock, or null if the stock was not found.
+   */
+	@Override
+	public Stock
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		Stock updated = tree.update(symbol, newSymbol, newPrice, newVolume, newMarketCap);
+		if (cache != null && updated != null) {
+			if (symbol.equals(newSymbol)) {
+				cache.update(symbol, newPrice, newVolume, newMarketCap);
+			} else {
+				cache.invalidate(symbol);
+				cache.invalidate(newSymbol);
+			}
+		}
+		return updated;
+	}
+
+	/**
+   * Method to rename many stocks at once, for example during corporate actions.
+   * All renames are applied simultaneously, and a stock already stored under a new symbol is replaced.
+   * The old and the new symbols are dropped from the search cache.
+   * 
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	@Override
+	public int
+	renameStocks(Map<String, String> renames) {
+		if (cache != null) {
+			for (Map.Entry<String, String> entry : renames.entrySet()) {
+				cache.invalidate(entry.getKey());
+				cache.invalidate(entry.getValue());
+			}
+		}
+		return tree.rekeyAll(renames);
+	}
+
+	/**
+   * Method to stream copies of the stocks with symbols in [fromSymbol, toSymbol) in symbol order.
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of copies of the stocks in the range.
+   */
+	@Override
+	public Stream<Stock>
+	rangeStocks(String fromSymbol, String toSymbol) {
+		return tree.range(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Get the index of a symbol in symbol order, which is the number of stocks with a smaller symbol.
+   * @param symbol The symbol to be ranked.
+   * @return The number of stocks with a smaller symbol.
+   */
+	@Override
+	public int
+	rankOf(String symbol) {
+		return tree.rank(symbol);
+	}
+
+	/**
+   * Get a copy of the stock at an index in symbol order.
+   * @param index The index of the stock, starting from 0.
+   * @return A copy of the stock at the index.
+   * @throws IndexOutOfBoundsException If there is no stock at the index.
+   */
+	@Override
+	public Stock
+	stockAt(int index) {
+		return tree.select(index);
+	}
+
+	/**
+   * Get the number of stocks with symbols in [fromSymbol, toSymbol).
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks in the range.
+   */
+	@Override
+	public int
+	countStocks(String fromSymbol, String toSymbol) {
+		return tree.countInRange(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Get the number of stocks, the total volume, the total market capitalization and the price range
+   * of the stocks with symbols in [fromSymbol, toSymbol). Time complexity is O(log n + k).
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The totals of the stocks in the range.
+   */
+	@Override
+	public AVLTree.Aggregate
+	aggregateStocks(String fromSymbol, String toSymbol) {
+		return tree.aggregate(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Method to stream copies of one page of stocks in symbol order, the rows [fromIndex, toIndex).
+   * @param fromIndex The inclusive index of the first row.
+   * @param toIndex The exclusive index of the last row.
+   * @return The stream of copies of the stocks on the page.
+   * @throws IndexOutOfBoundsException If the rows are not within the stocks.
+   */
+	@Override
+	public Stream<Stock>
+	pageStocks(int fromIndex, int toIndex) {
+		return tree.slice(fromIndex, toIndex);
+	}
+
+	/**
+   * Get the number of stocks managed.
+   * @return The number of stocks in the compact AVL tree.
+   */
+	@Override
+	public int
+	size() {
+		return tree.size();
+	}
+
+	/**
+   * Get the height of the compact AVL tree.
+   * @return The height of the compact AVL tree.
+   */
+	@Override
+	public int
+	getHeight() {
+		return tree.getHeight();
+	}
+
+	/**
+   * Method to verify the compact AVL tree.
+   * @return True if the AVL tree invariants hold, false otherwise.
+   */
+	@Override
+	public boolean
+	isBalanced() {
+		return tree.isBalanced();
+	}
+
+	/**
+   * Method to print the stocks in the compact AVL tree.
+   */
+	public void
+	printTree() {
+		OutputSink out = new OutputSink();
+		printTree(out);
+		out.flush();
+	}
+
+	/**
+   * Method to write the stocks in the compact AVL tree to an output sink.
+   * @param out The sink to write to, which is not flushed.
+   */
+	public void
+	printTree(OutputSink out) {
+		out.println("Stocks:");
+		tree.inOrderTraversal(out);
+	}
+}
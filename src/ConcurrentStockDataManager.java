@@ -0,0 +1,542 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * ConcurrentStockDataManager.java
+ * This class is a StockDataManager that can be shared between threads.
+ * Writers are serialized by a StampedLock. Searches run as optimistic reads that never block
+ * behind writers, and only fall back to a read lock if a write happened during the search.
+ * Stocks handed out are copies, so their values never change under the caller.
+ */
+public class ConcurrentStockDataManager extends StockDataManager {
+	private final StampedLock lock;
+
+	/**
+   * Constructor to initialize the AVL tree and the lock.
+   */
+	public ConcurrentStockDataManager() {
+		super();
+		lock = new StampedLock();
+	}
+
+	/**
+   * Method to add or update a stock under the write lock.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return 0 if the stock is added, 1 if the stock is updated.
+   */
+	@Override
+	public int
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		long stamp = lock.writeLock();
+		try {
+			return super.addOrUpdateStock(symbol, price, volume, marketCap);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to add or update many stocks at once under the write lock.
+   * @param stocks The stock objects to be added or updated.
+   * @return The number of stocks added.
+   */
+	@Override
+	public int
+	addAll(Collection<Stock> stocks) {
+		long stamp = lock.writeLock();
+		try {
+			return super.addAll(stocks);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to remove a stock under the write lock.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if the stock was not found.
+   */
+	@Override
+	public Stock
+	removeStock(String symbol) {
+		long stamp = lock.writeLock();
+		try {
+			return super.removeStock(symbol);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to remove all stocks with symbols in [fromSymbol, toSymbol) under the write lock.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks removed.
+   */
+	@Override
+	public int
+	removeRange(String fromSymbol, String toSymbol) {
+		long stamp = lock.writeLock();
+		try {
+			return super.removeRange(fromSymbol, toSymbol);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to merge stocks sorted by symbol under the write lock.
+   * The stocks of the other manager are read before, so two managers merging each other cannot deadlock.
+   * 
+   * @param stocks The stock objects sorted by symbol, which are stored as given.
+   * @return The number of stocks added, not counting the replaced ones.
+   */
+	@Override
+	protected int
+	unionAll(List<Stock> stocks) {
+		long stamp = lock.writeLock();
+		try {
+			return super.unionAll(stocks);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to keep only the stocks whose symbols occur in a list sorted by symbol under the write lock.
+   * @param stocks The stock objects sorted by symbol, which are only used for their symbols.
+   * @return The removed stock objects.
+   */
+	@Override
+	protected List<Stock>
+	intersectAll(List<Stock> stocks) {
+		long stamp = lock.writeLock();
+		try {
+			return super.intersectAll(stocks);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to remove the stocks whose symbols occur in a list sorted by symbol under the write lock.
+   * @param stocks The stock objects sorted by symbol, which are only used for their symbols.
+   * @return The removed stock objects, in symbol order.
+   */
+	@Override
+	protected List<Stock>
+	differenceAll(List<Stock> stocks) {
+		long stamp = lock.writeLock();
+		try {
+			return super.differenceAll(stocks);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to search for a stock without blocking behind writers.
+   * The search and the copy of the stock values run as an optimistic read. Only if a writer
+   * got in between is the search repeated under the read lock.
+   * 
+   * @param symbol The symbol of the stock to be searched.
+   * @return A copy of the stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	searchStock(String symbol) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			Stock stock = searchStockConcurrent(symbol);
+			if (stock == null) {
+				if (lock.validate(stamp))
+					return null;
+			} else {
+				String stockSymbol = stock.getSymbol();
+				double price = stock.getPrice();
+				long volume = stock.getVolume();
+				long marketCap = stock.getMarketCap();
+				if (lock.validate(stamp))
+					return new Stock(stockSymbol, price, volume, marketCap);
+			}
+		}
+
+		stamp = lock.readLock();
+		try {
+			Stock stock = super.searchStock(symbol);
+			return (stock != null) ? new Stock(stock) : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to get a copy of the stock with the greatest symbol less than or equal to the given symbol under the read lock.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	floorStock(String symbol) {
+		long stamp = lock.readLock();
+		try {
+			Stock stock = super.floorStock(symbol);
+			return (stock != null) ? new Stock(stock) : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to get a copy of the stock with the least symbol greater than or equal to the given symbol under the read lock.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	ceilingStock(String symbol) {
+		long stamp = lock.readLock();
+		try {
+			Stock stock = super.ceilingStock(symbol);
+			return (stock != null) ? new Stock(stock) : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to get a copy of the stock with the least symbol strictly greater than the given symbol under the read lock.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	higherStock(String symbol) {
+		long stamp = lock.readLock();
+		try {
+			Stock stock = super.higherStock(symbol);
+			return (stock != null) ? new Stock(stock) : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to get a copy of the stock with the greatest symbol strictly less than the given symbol under the read lock.
+   * @param symbol The symbol to be compared with.
+   * @return A copy of the stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	lowerStock(String symbol) {
+		long stamp = lock.readLock();
+		try {
+			Stock stock = super.lowerStock(symbol);
+			return (stock != null) ? new Stock(stock) : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to stream copies of the stocks with symbols in [fromSymbol, toSymbol).
+   * A lazy stream could not hold the read lock while it is consumed, so the range is copied under the read lock first.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of copies of the stocks in the range.
+   */
+	@Override
+	public Stream<Stock>
+	rangeStocks(String fromSymbol, String toSymbol) {
+		long stamp = lock.readLock();
+		try {
+			return super.rangeStocks(fromSymbol, toSymbol).map(Stock::new).collect(Collectors.toList()).stream();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to stream copies of the stocks whose symbols start with the given prefix.
+   * The stocks are copied under the read lock first, like in rangeStocks.
+   * 
+   * @param prefix The prefix of the symbols.
+   * @return The stream of copies of the stocks with the prefix.
+   */
+	@Override
+	public Stream<Stock>
+	prefixStocks(String prefix) {
+		long stamp = lock.readLock();
+		try {
+			return super.prefixStocks(prefix).map(Stock::new).collect(Collectors.toList()).stream();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to update the details of a stock under the write lock.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return A copy of the updated stock object, or null if the stock was not found.
+   */
+	@Override
+	public Stock
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		long stamp = lock.writeLock();
+		try {
+			Stock stock = super.updateStock(symbol, newSymbol, newPrice, newVolume, newMarketCap);
+			return (stock != null) ? new Stock(stock) : null;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to rename many stocks at once under the write lock.
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	@Override
+	public int
+	renameStocks(Map<String, String> renames) {
+		long stamp = lock.writeLock();
+		try {
+			return super.renameStocks(renames);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to start keeping a secondary index under the write lock.
+   * @param field The stock value the index is ordered by.
+   */
+	@Override
+	public void
+	addSecondaryIndex(SecondaryIndex.Field field) {
+		long stamp = lock.writeLock();
+		try {
+			super.addSecondaryIndex(field);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to stop keeping a secondary index under the write lock.
+   * @param field The stock value the index is ordered by.
+   */
+	@Override
+	public void
+	removeSecondaryIndex(SecondaryIndex.Field field) {
+		long stamp = lock.writeLock();
+		try {
+			super.removeSecondaryIndex(field);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+   * Method to stream copies of the k stocks with the highest value of a field.
+   * The stocks are copied under the read lock first, like in rangeStocks.
+   * 
+   * @param field The stock value to be ranked by.
+   * @param k The maximum number of stocks to be returned.
+   * @return The stream of copies of the top stocks.
+   * @throws IllegalStateException If no secondary index is kept for the field.
+   */
+	@Override
+	public Stream<Stock>
+	topStocks(SecondaryIndex.Field field, int k) {
+		long stamp = lock.readLock();
+		try {
+			return super.topStocks(field, k).map(Stock::new).collect(Collectors.toList()).stream();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to stream copies of the stocks with a value of a field in [low, high].
+   * The stocks are copied under the read lock first, like in rangeStocks.
+   * 
+   * @param field The stock value to be compared.
+   * @param low The inclusive lower bound of the value.
+   * @param high The inclusive upper bound of the value.
+   * @return The stream of copies of the stocks in the range.
+   * @throws IllegalStateException If no secondary index is kept for the field.
+   */
+	@Override
+	public Stream<Stock>
+	stocksBetween(SecondaryIndex.Field field, double low, double high) {
+		long stamp = lock.readLock();
+		try {
+			return super.stocksBetween(field, low, high).map(Stock::new).collect(Collectors.toList()).stream();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Get the index of a symbol in symbol order under the read lock.
+   * @param symbol The symbol to be ranked.
+   * @return The number of stocks with a smaller symbol.
+   */
+	@Override
+	public int
+	rankOf(String symbol) {
+		long stamp = lock.readLock();
+		try {
+			return super.rankOf(symbol);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Get a copy of the stock at an index in symbol order under the read lock.
+   * @param index The index of the stock, starting from 0.
+   * @return A copy of the stock object at the index.
+   * @throws IndexOutOfBoundsException If there is no stock at the index.
+   */
+	@Override
+	public Stock
+	stockAt(int index) {
+		long stamp = lock.readLock();
+		try {
+			return new Stock(super.stockAt(index));
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Get the number of stocks with symbols in [fromSymbol, toSymbol) under the read lock.
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks in the range.
+   */
+	@Override
+	public int
+	countStocks(String fromSymbol, String toSymbol) {
+		long stamp = lock.readLock();
+		try {
+			return super.countStocks(fromSymbol, toSymbol);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Get the totals of the stocks with symbols in [fromSymbol, toSymbol) under the read lock.
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The totals of the stocks in the range.
+   */
+	@Override
+	public AVLTree.Aggregate
+	aggregateStocks(String fromSymbol, String toSymbol) {
+		long stamp = lock.readLock();
+		try {
+			return super.aggregateStocks(fromSymbol, toSymbol);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to stream copies of one page of stocks in symbol order.
+   * The page is copied under the read lock first, like in rangeStocks.
+   * 
+   * @param fromIndex The inclusive index of the first row.
+   * @param toIndex The exclusive index of the last row.
+   * @return The stream of copies of the stocks on the page.
+   * @throws IndexOutOfBoundsException If the rows are not within the stocks.
+   */
+	@Override
+	public Stream<Stock>
+	pageStocks(int fromIndex, int toIndex) {
+		long stamp = lock.readLock();
+		try {
+			return super.pageStocks(fromIndex, toIndex).map(Stock::new).collect(Collectors.toList()).stream();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Get the number of stocks managed under the read lock.
+   * @return The number of stocks in the AVL tree.
+   */
+	@Override
+	public int
+	size() {
+		long stamp = lock.readLock();
+		try {
+			return super.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Get the height of the AVL tree under the read lock.
+   * @return The height of the AVL tree.
+   */
+	@Override
+	public int
+	getHeight() {
+		long stamp = lock.readLock();
+		try {
+			return super.getHeight();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to verify the AVL tree under the read lock.
+   * @return True if the AVL tree invariants hold, false otherwise.
+   */
+	@Override
+	public boolean
+	isBalanced() {
+		long stamp = lock.readLock();
+		try {
+			return super.isBalanced();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+   * Method to write the stocks to an output sink under the read lock. Writers wait until printing is finished.
+   * @param out The sink to write to, which is not flushed.
+   */
+	@Override
+	public void
+	printTree(OutputSink out) {
+		long stamp = lock.readLock();
+		try {
+			super.printTree(out);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+}
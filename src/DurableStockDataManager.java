@@ -0,0 +1,414 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * DurableStockDataManager.java
+ * This class is a StockDataManager whose stocks survive a restart or a crash. Every change is appended
+ * to a WriteAheadLog before the method returns, and the sync policy of the log decides when it reaches the disk.
+ * Every so many changes, the manager writes a snapshot of all stocks and empties the log.
+ * On start, the latest snapshot is bulk loaded and only the log records after it are replayed.
+ * Intersections and differences are logged as one removal per stock they removed. Secondary indexes
+ * are not persisted.
+ * The class is not thread-safe.
+ */
+public class DurableStockDataManager extends StockDataManager implements Closeable {
+	/**
+   * The default interval of the background flusher for the GROUP sync policy in milliseconds.
+   */
+	public static final long DEFAULT_GROUP_MILLIS = 10;
+	/**
+   * The default number of logged changes after which a snapshot is written.
+   */
+	public static final long DEFAULT_SNAPSHOT_INTERVAL = 1_000_000;
+
+	private static final int SNAPSHOT_MAGIC = 0x534E4150;
+	private static final String SNAPSHOT_FILE = "snapshot.dat";
+	private static final String LOG_FILE = "wal.log";
+
+	private final Path directory;
+	private final long snapshotInterval;
+	private final WriteAheadLog log;
+	/**
+   * The number of changes logged since the last snapshot.
+   */
+	private long changes;
+
+	/**
+   * Constructor to recover the stocks stored in a directory with the default group commit and snapshot interval.
+   * @param directory The directory holding the snapshot and the log, which is created if needed.
+   * @param policy The policy for forcing the log to the disk.
+   * @throws IOException If the snapshot or the log cannot be read.
+   */
+	public DurableStockDataManager(Path directory, WriteAheadLog.SyncPolicy policy) throws IOException {
+		this(directory, policy, DEFAULT_GROUP_MILLIS, DEFAULT_SNAPSHOT_INTERVAL);
+	}
+
+	/**
+   * Constructor to recover the stocks stored in a directory.
+   * The latest snapshot is bulk loaded, then the log records after it are replayed.
+   * 
+   * @param directory The directory holding the snapshot and the log, which is created if needed.
+   * @param policy The policy for forcing the log to the disk.
+   * @param groupMillis The interval of the background flusher for the GROUP policy in milliseconds.
+   * @param snapshotInterval The number of logged changes after which a snapshot is written.
+   * @throws IOException If the snapshot or the log cannot be read.
+   */
+	public DurableStockDataManager(Path directory, WriteAheadLog.SyncPolicy policy, long groupMillis, long snapshotInterval)
+		throws IOException {
+		super();
+		this.directory = directory;
+		this.snapshotInterval = snapshotInterval;
+		Files.createDirectories(directory);
+		long snapshotLsn = loadSnapshot();
+		log = new WriteAheadLog(directory.resolve(LOG_FILE), policy, groupMillis, snapshotLsn, new Replayer());
+		changes = log.getLastLsn() - snapshotLsn;
+	}
+
+	/**
+   * Method to add or update a stock and log the change.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return 0 if the stock is added, 1 if the stock is updated.
+   */
+	@Override
+	public int
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		int result = super.addOrUpdateStock(symbol, price, volume, marketCap);
+		log.appendAdd(symbol, price, volume, marketCap);
+		logged(1);
+		return result;
+	}
+
+	/**
+   * Method to add or update many stocks at once and log each of them.
+   * @param stocks The stock objects to be added or updated.
+   * @return The number of stocks added.
+   */
+	@Override
+	public int
+	addAll(Collection<Stock> stocks) {
+		int result = super.addAll(stocks);
+		for (Stock stock : stocks)
+			log.appendAdd(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+		logged(stocks.size());
+		return result;
+	}
+
+	/**
+   * Method to remove a stock and log the change if the stock was found.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if the stock was not found.
+   */
+	@Override
+	public Stock
+	removeStock(String symbol) {
+		Stock removed = super.removeStock(symbol);
+		if (removed != null) {
+			log.appendRemove(symbol);
+			logged(1);
+		}
+		return removed;
+	}
+
+	/**
+   * Method to remove all stocks with symbols in [fromSymbol, toSymbol) and log the range.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks removed.
+   */
+	@Override
+	public int
+	removeRange(String fromSymbol, String toSymbol) {
+		int removed = super.removeRange(fromSymbol, toSymbol);
+		if (removed > 0) {
+			log.appendRemoveRange(fromSymbol, toSymbol);
+			logged(1);
+		}
+		return removed;
+	}
+
+	/**
+   * Method to merge stocks sorted by symbol and log each of them as an addition.
+   * @param stocks The stock objects sorted by symbol, which are stored as given.
+   * @return The number of stocks added, not counting the replaced ones.
+   */
+	@Override
+	protected int
+	unionAll(List<Stock> stocks) {
+		int result = super.unionAll(stocks);
+		for (Stock stock : stocks)
+			log.appendAdd(stock.getSymbol(), stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+		logged(stocks.size());
+		return result;
+	}
+
+	/**
+   * Method to keep only the stocks whose symbols occur in a list sorted by symbol and log the removal
+   * of each stock the intersection dropped.
+   * 
+   * @param stocks The stock objects sorted by symbol, which are only used for their symbols.
+   * @return The removed stock objects.
+   */
+	@Override
+	protected List<Stock>
+	intersectAll(List<Stock> stocks) {
+		List<Stock> removed = super.intersectAll(stocks);
+		logRemovals(removed);
+		return removed;
+	}
+
+	/**
+   * Method to remove the stocks whose symbols occur in a list sorted by symbol and log the removal
+   * of each stock that was present.
+   * 
+   * @param stocks The stock objects sorted by symbol, which are only used for their symbols.
+   * @return The removed stock objects, in symbol order.
+   */
+	@Override
+	protected List<Stock>
+	differenceAll(List<Stock> stocks) {
+		List<Stock> removed = super.differenceAll(stocks);
+		logRemovals(removed);
+		return removed;
+	}
+
+	/**
+   * Method to log the removal of stocks.
+   * @param removed The removed stock objects.
+   */
+	private void
+	logRemovals(List<Stock> removed) {
+		for (Stock stock : removed)
+			log.appendRemove(stock.getSymbol());
+		if (!removed.isEmpty())
+			logged(removed.size());
+	}
+
+	/**
+   * Method to update the details of a stock and log the change if the stock was found.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return The updated stock object, or null if the stock was not found.
+   */
+	@Override
+	public Stock
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		Stock stock = super.updateStock(symbol, newSymbol, newPrice, newVolume, newMarketCap);
+		if (stock != null) {
+			log.appendUpdate(symbol, newSymbol, newPrice, newVolume, newMarketCap);
+			logged(1);
+		}
+		return stock;
+	}
+
+	/**
+   * Method to rename many stocks at once and log the renames in their iteration order,
+   * which the replay keeps so that colliding renames resolve the same way.
+   * 
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	@Override
+	public int
+	renameStocks(Map<String, String> renames) {
+		int count = super.renameStocks(renames);
+		if (count > 0) {
+			log.appendRename(renames);
+			logged(1);
+		}
+		return count;
+	}
+
+	/**
+   * Method to write a snapshot of all stocks and empty the log.
+   * The snapshot is written to a temporary file, forced to the disk and renamed over the previous one,
+   * so a crash leaves either the old or the new snapshot. Log records the snapshot already holds are
+   * skipped by their LSN if the crash comes before the log is emptied.
+   * 
+   * @throws UncheckedIOException If the snapshot cannot be written.
+   */
+	public void
+	snapshot() {
+		Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+		long lsn = log.getLastLsn();
+		try {
+			try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+				CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32C());
+				DataOutputStream out = new DataOutputStream(checked);
+				out.writeInt(SNAPSHOT_MAGIC);
+				out.writeLong(lsn);
+				out.writeInt(size());
+				Iterator<Stock> stocks = rangeStocks(null, null).iterator();
+				while (stocks.hasNext()) {
+					Stock stock = stocks.next();
+					out.writeUTF(stock.getSymbol());
+					out.writeDouble(stock.getPrice());
+					out.writeLong(stock.getVolume());
+					out.writeLong(stock.getMarketCap());
+				}
+				out.writeLong(checked.getChecksum().getValue());
+				out.flush();
+				file.getFD().sync();
+			}
+			Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+				   StandardCopyOption.ATOMIC_MOVE);
+			try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+				dir.force(true);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		log.reset();
+		changes = 0;
+	}
+
+	/**
+   * Method to force the logged changes to the disk, whatever the sync policy.
+   */
+	public void
+	flush() {
+		log.flush();
+	}
+
+	/**
+   * Method to force the logged changes to the disk and close the log. The manager must not be changed afterwards.
+   * @throws IOException If the log cannot be written or closed.
+   */
+	@Override
+	public void
+	close() throws IOException {
+		log.close();
+	}
+
+	/**
+   * Method to count logged changes and write a snapshot when the snapshot interval is reached.
+   * @param count The number of changes logged.
+   */
+	private void
+	logged(long count) {
+		changes += count;
+		if (changes >= snapshotInterval)
+			snapshot();
+	}
+
+	/**
+   * Method to bulk load the stocks of the snapshot, if there is one.
+   * @return The LSN of the last change held by the snapshot, or 0 if there is no snapshot.
+   * @throws IOException If the snapshot cannot be read or is corrupt.
+   */
+	private long
+	loadSnapshot() throws IOException {
+		Path file = directory.resolve(SNAPSHOT_FILE);
+		try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16),
+									 new CRC32C())) {
+			DataInputStream in = new DataInputStream(checked);
+			if (in.readInt() != SNAPSHOT_MAGIC)
+				throw new IOException("Not a stock snapshot: " + file);
+			long lsn = in.readLong();
+			int count = in.readInt();
+			List<Stock> stocks = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+				stocks.add(new Stock(in.readUTF(), in.readDouble(), in.readLong(), in.readLong()));
+			long checksum = checked.getChecksum().getValue();
+			if (in.readLong() != checksum)
+				throw new IOException("Corrupt stock snapshot: " + file);
+			super.addAll(stocks);
+			return lsn;
+		} catch (NoSuchFileException e) {
+			return 0;
+		}
+	}
+
+	/**
+   * Handler class that applies the replayed log records to the manager without logging them again.
+   */
+	private class Replayer implements WriteAheadLog.Handler {
+		/**
+     * Method to replay the addition or update of a stock.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
+     */
+		@Override
+		public void
+		add(String symbol, double price, long volume, long marketCap) {
+			DurableStockDataManager.super.addOrUpdateStock(symbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to replay the removal of a stock.
+     * @param symbol The symbol of the stock.
+     */
+		@Override
+		public void
+		remove(String symbol) {
+			DurableStockDataManager.super.removeStock(symbol);
+		}
+
+		/**
+     * Method to replay the update of a stock.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param newSymbol The new symbol of the stock.
+     * @param price The new price of the stock.
+     * @param volume The new volume of the stock.
+     * @param marketCap The new market capitalization of the stock.
+     */
+		@Override
+		public void
+		update(String symbol, String newSymbol, double price, long volume, long marketCap) {
+			DurableStockDataManager.super.updateStock(symbol, newSymbol, price, volume, marketCap);
+		}
+
+		/**
+     * Method to replay the removal of the stocks with symbols in [fromSymbol, toSymbol).
+     * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+     * @param toSymbol The exclusive upper bound, or null for no upper bound.
+     */
+		@Override
+		public void
+		removeRange(String fromSymbol, String toSymbol) {
+			DurableStockDataManager.super.removeRange(fromSymbol, toSymbol);
+		}
+
+		/**
+     * Method to replay the simultaneous renaming of stocks.
+     * @param renames The map from the current symbols to the new symbols, in the logged order.
+     */
+		@Override
+		public void
+		rename(Map<String, String> renames) {
+			DurableStockDataManager.super.renameStocks(renames);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * FileFollower.java
+ * This class parses the commands of a file that another process keeps appending to, like tail -F.
+ * When it has caught up with the writer, next returns false, and the caller waits with await before
+ * trying again, so small appends pile up and are read with one read call instead of one per line.
+ * Only a small read buffer is used, however far behind the follower is, and the table the symbols are
+ * interned in is emptied whenever it holds MAX_SYMBOLS symbols, so a follower running for a long time
+ * does not grow with every new symbol of the file.
+ * The file may be rotated: once the open file is read to its end and the path names another file,
+ * the new file is read from its start. A file truncated below the read position is read again from its start.
+ * A last line without a line break in a rotated or truncated file still ends the line.
+ * Rotation is detected by the file key, so it is not detected on platforms without file keys.
+ * As with tail -F, a file rotated away before the follower has reached it is skipped, and a truncation
+ * is missed if the file grows past the read position again before the follower looks.
+ */
+public class FileFollower implements Closeable {
+	/**
+   * The size of the read buffer, which is also the maximum length of a line.
+   */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+   * The number of interned symbols at which the symbol table is emptied.
+   */
+	private static final int MAX_SYMBOLS = 1 << 16;
+
+	private final Path path;
+	private final long pollMillis;
+	private final CommandParser parser;
+	/**
+   * The file being read, or null while the path names no file.
+   */
+	private FileChannel channel;
+	/**
+   * The key of the file being read, to tell whether the path names another file.
+   */
+	private Object fileKey;
+	/**
+   * The last byte handed to the parser, to tell whether the last line has ended.
+   */
+	private byte lastByte = '\n';
+	/**
+   * The number of bytes handed to the parser, to estimate the length of a line.
+   */
+	private long bytesRead;
+	private long rotations;
+	private boolean closed;
+
+	/**
+   * Constructor to follow a file, which does not need to exist yet.
+   * @param path The path of the file.
+   * @param pollMillis The time await waits for new input in milliseconds.
+   */
+	public FileFollower(Path path, long pollMillis) {
+		this.path = path;
+		this.pollMillis = pollMillis;
+		this.parser = new CommandParser(new Source(), new SymbolTable(), BUFFER_SIZE);
+	}
+
+	/**
+   * Method to parse the next line that has been written into a command.
+   * @param command The command to be filled.
+   * @return True if a line was parsed, false if the follower has caught up with the writer.
+   * @throws IOException If the file cannot be read or a line is longer than the buffer.
+   */
+	public boolean
+	next(Command command) throws IOException {
+		if (parser.getSymbols().size() >= MAX_SYMBOLS)
+			parser.getSymbols().clear();
+		return parser.next(command);
+	}
+
+	/**
+   * Method to wait for the writer to append more lines.
+   * @throws InterruptedIOException If the thread is interrupted while waiting.
+   */
+	public void
+	await() throws InterruptedIOException {
+		try {
+			Thread.sleep(pollMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Follower interrupted");
+		}
+	}
+
+	/**
+   * Get the number of lines parsed so far.
+   * @return The number of lines.
+   */
+	public long
+	getLineCount() {
+		return parser.getLineCount();
+	}
+
+	/**
+   * Get the number of times the follower moved to a new file.
+   * @return The number of rotations.
+   */
+	public long
+	getRotationCount() {
+		return rotations;
+	}
+
+	/**
+   * Method to find how many bytes the writer has written that are not parsed yet.
+   * Bytes in a file that replaced the one being read are included.
+   * @return The number of bytes behind the writer.
+   * @throws IOException If the files cannot be inspected.
+   */
+	public long
+	getLagBytes() throws IOException {
+		long lag = parser.getBufferedBytes();
+		if (channel != null)
+			lag += Math.max(channel.size() - channel.position(), 0);
+		if (isRotated())
+			lag += Files.size(path);
+		return lag;
+	}
+
+	/**
+   * Method to estimate how many lines the writer has written that are not parsed yet, from the lag in bytes
+   * and the average length of the lines parsed so far. Nothing is read, so this is cheap enough to call
+   * while the follower is far behind.
+   * @return The estimated number of lines behind the writer, or 0 before the first line is parsed.
+   * @throws IOException If the files cannot be inspected.
+   */
+	public long
+	getLagLines() throws IOException {
+		long lines = parser.getLineCount();
+		long parsed = bytesRead - parser.getBufferedBytes();
+		if (lines == 0 || parsed <= 0)
+			return 0;
+		return (long)Math.ceil(getLagBytes() * (double)lines / parsed);
+	}
+
+	/**
+   * Method to close the file being read.
+   * @throws IOException If the file cannot be closed.
+   */
+	@Override
+	public void
+	close() throws IOException {
+		closed = true;
+		parser.close();
+	}
+
+	/**
+   * Method to check whether the path names a file other than the one being read.
+   * @return True if another file has taken the place of the file being read, false otherwise.
+   * @throws IOException If the attributes of the file cannot be read.
+   */
+	private boolean
+	isRotated() throws IOException {
+		Object key;
+		try {
+			key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		return channel != null && key != null && !Objects.equals(key, fileKey);
+	}
+
+	/**
+   * Method to open the file the path names, if there is one. The key is read before and after opening,
+   * and the file is opened again if it was rotated in between, so the key always belongs to the open file.
+   * @return True if a file was opened, false otherwise.
+   * @throws IOException If the file cannot be opened.
+   */
+	private boolean
+	open() throws IOException {
+		while (true) {
+			Object key;
+			FileChannel file;
+			try {
+				key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+				file = FileChannel.open(path, StandardOpenOption.READ);
+			} catch (NoSuchFileException e) {
+				return false;
+			}
+			boolean same = false;
+			try {
+				same = Objects.equals(key, Files.readAttributes(path, BasicFileAttributes.class).fileKey());
+			} catch (NoSuchFileException e) {
+				// moved away after opening, so look again
+			} finally {
+				if (!same)
+					file.close();
+			}
+			if (same) {
+				channel = file;
+				fileKey = key;
+				return true;
+			}
+		}
+	}
+
+	/**
+   * Channel class handing the bytes of the followed files to the parser. It returns 0 instead of the end of
+   * the input when the follower has caught up, and moves on to a new or truncated file once the old one is read.
+   */
+	private class Source implements ReadableByteChannel {
+		/**
+     * Method to read the bytes written since the last read.
+     * @param destination The buffer to read into.
+     * @return The number of bytes read, which is 0 if no new bytes have been written.
+     * @throws IOException If the file cannot be read.
+     */
+		@Override
+		public int
+		read(ByteBuffer destination) throws IOException {
+			if (closed)
+				throw new ClosedChannelException();
+			if (channel == null && !open())
+				return 0;
+			int read = channel.read(destination);
+			if (read > 0) {
+				lastByte = destination.get(destination.position() - 1);
+				bytesRead += read;
+				return read;
+			}
+
+			boolean rotated = isRotated();
+			boolean truncated = !rotated && channel.size() < channel.position();
+			if (!rotated && !truncated)
+				return 0;
+			if (lastByte != '\n' && lastByte != '\r') {
+				destination.put((byte)'\n');
+				lastByte = '\n';
+				bytesRead++;
+				return 1;
+			}
+			if (rotated) {
+				channel.close();
+				channel = null;
+				rotations++;
+			} else {
+				channel.position(0);
+			}
+			return read(destination);
+		}
+
+		/**
+     * Method to check whether the follower is open.
+     * @return True if the follower is not closed, false otherwise.
+     */
+		@Override
+		public boolean
+		isOpen() {
+			return !closed;
+		}
+
+		/**
+     * Method to close the file being read.
+     * @throws IOException If the file cannot be closed.
+     */
+		@Override
+		public void
+		close() throws IOException {
+			if (channel != null)
+				channel.close();
+		}
+	}
+}
@@ -36,10 +36,17 @@ public class GUIVisualization extends JFrame {
 		dataPointsY.add(new ArrayList<>());
 		dataPointsY.add(new ArrayList<>());
 
+		// the symbols are built before the measurement so the measured loops only run the operations
+		String[] symbols = new String[sampleSize + division + 1];
+		String[] renamed = new String[symbols.length];
+		for (int j = 0; j < symbols.length; j++) {
+			symbols[j] = "Sym" + j;
+			renamed[j] = "Aym" + j;
+		}
 		StockDataManager manager = new StockDataManager();
 		int i = 0;
 		for (; i < 10_000; i++) {
-			manager.addOrUpdateStock("Sym" + i, 1000, 1000, 1000);
+			manager.addOrUpdateStock(symbols[i], 1000, 1000, 1000);
 		}
 		long startTime;
 		long endTime;
@@ -48,34 +55,34 @@ public class GUIVisualization extends JFrame {
 
 			startTime = System.nanoTime();
 			for (int j = 0; j < division; j++) {
-				manager.addOrUpdateStock("Sym" + (i + j), 1000, 1000, 1000);
+				manager.addOrUpdateStock(symbols[i + j], 1000, 1000, 1000);
 			}
 			endTime = System.nanoTime();
 			dataPointsY.get(0).add(endTime - startTime);
 
 			startTime = System.nanoTime();
 			for (int j = 0; j < division; j++) {
-				manager.searchStock("Sym" + (i + j));
+				manager.searchStock(symbols[i + j]);
 			}
 			endTime = System.nanoTime();
 			dataPointsY.get(1).add(endTime - startTime);
 
 			startTime = System.nanoTime();
 			for (int j = 0; j < division; j++) {
-				manager.updateStock("Sym" + (i + j), "Aym" + (i + j), 1000, 1000, 1000);
+				manager.updateStock(symbols[i + j], renamed[i + j], 1000, 1000, 1000);
 			}
 			endTime = System.nanoTime();
 			dataPointsY.get(2).add(endTime - startTime);
 
 			startTime = System.nanoTime();
 			for (int j = 0; j < division; j++) {
-				manager.removeStock("Aym" + (i + j));
+				manager.removeStock(renamed[i + j]);
 			}
 			endTime = System.nanoTime();
 			dataPointsY.get(3).add(endTime - startTime);
 
 			for (int j = 0; j < division; j++) {
-				manager.addOrUpdateStock("Sym" + (i + j), 1000, 1000, 1000);
+				manager.addOrUpdateStock(symbols[i + j], 1000, 1000, 1000);
 			}
 			i += division;
 		}
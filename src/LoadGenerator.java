@@ -0,0 +1,209 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * LoadGenerator.java
+ * This class sends commands to a StockServer over a number of connections and measures the throughput
+ * and the latency of the answers. Every connection runs on its own thread and sends its commands in
+ * pipelined batches: a whole batch is written at once, and the latency of each command is the time from
+ * writing the batch to reading the line that answers it.
+ * The commands are 70% SEARCH, 20% ADD and 10% UPDATE on 10000 symbols, each answered by one line.
+ */
+public class LoadGenerator {
+	/**
+   * The number of symbols the commands pick from.
+   */
+	private static final int SYMBOLS = 10000;
+
+	/**
+   * Private constructor to prevent instantiation of the class.
+   */
+	private LoadGenerator() {
+		// private constructor to hide the implicit public one
+	}
+
+	/**
+   * Main method to put load on a running StockServer and report the result.
+   * @param args The command line arguments.
+   * @throws IOException If a connection fails.
+   */
+	public static void
+	main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 5) {
+			System.out.println("Usage: java LoadGenerator <host> <port> [connections] [requests] [pipeline]");
+			return;
+		}
+		InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+		int connections = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+		int requests = (args.length > 3) ? Integer.parseInt(args[3]) : 1_000_000;
+		int pipeline = (args.length > 4) ? Integer.parseInt(args[4]) : 32;
+		System.out.println(run(address, connections, requests, pipeline));
+	}
+
+	/**
+   * Method to send commands over a number of connections and wait until all are answered.
+   * 
+   * @param address The address of the server.
+   * @param connections The number of connections.
+   * @param requests The total number of commands, divided evenly over the connections.
+   * @param pipeline The number of commands written at once on a connection before its answers are read.
+   * @return The result of the run.
+   * @throws IOException If a connection fails.
+   */
+	public static Result
+	run(InetSocketAddress address, int connections, int requests, int pipeline) throws IOException {
+		int perConnection = Math.max(requests / connections, 1);
+		long[] latencies = new long[perConnection * connections];
+		IOException[] failure = new IOException[1];
+		Thread[] threads = new Thread[connections];
+		long startTime = System.nanoTime();
+		for (int c = 0; c < connections; c++) {
+			final int id = c;
+			threads[c] = new Thread(() -> {
+				try {
+					load(address, id, perConnection, pipeline, latencies);
+				} catch (IOException e) {
+					synchronized (failure) {
+						failure[0] = e;
+					}
+				}
+			});
+			threads[c].start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Load generator interrupted", e);
+			}
+		}
+		long elapsed = System.nanoTime() - startTime;
+		synchronized (failure) {
+			if (failure[0] != null)
+				throw failure[0];
+		}
+		Arrays.sort(latencies);
+		return new Result(connections, pipeline, latencies, elapsed);
+	}
+
+	/**
+   * Method to send the commands of one connection and record the latency of each answer.
+   * 
+   * @param address The address of the server.
+   * @param id The number of the connection, which selects its slice of the latencies.
+   * @param requests The number of commands of the connection.
+   * @param pipeline The number of commands written at once.
+   * @param latencies The latencies of all connections in nanoseconds.
+   * @throws IOException If the connection fails or the server closes it early.
+   */
+	private static void
+	load(InetSocketAddress address, int id, int requests, int pipeline, long[] latencies) throws IOException {
+		Random random = new Random(id);
+		ByteBuffer request = ByteBuffer.allocate(pipeline * 64);
+		ByteBuffer response = ByteBuffer.allocate(1 << 16);
+		StringBuilder line = new StringBuilder(64);
+		int base = id * requests;
+		try (SocketChannel channel = SocketChannel.open(address)) {
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			for (int sent = 0; sent < requests; ) {
+				int batch = Math.min(pipeline, requests - sent);
+				request.clear();
+				for (int i = 0; i < batch; i++) {
+					String symbol = "SYM" + random.nextInt(SYMBOLS);
+					int kind = random.nextInt(10);
+					line.setLength(0);
+					if (kind < 7)
+						line.append("SEARCH ").append(symbol);
+					else if (kind < 9)
+						line.append("ADD ").append(symbol).append(' ').append(random.nextInt(100000) / 100.0).append(" 1000 1000000");
+					else
+						line.append("UPDATE ").append(symbol).append(' ').append(symbol).append(" 12.5 2000 2000000");
+					request.put(line.append('\n').toString().getBytes(StandardCharsets.US_ASCII));
+				}
+				request.flip();
+				long sendTime = System.nanoTime();
+				while (request.hasRemaining())
+					channel.write(request);
+
+				int answered = 0;
+				while (answered < batch) {
+					response.clear();
+					if (channel.read(response) < 0)
+						throw new EOFException("Server closed the connection");
+					long now = System.nanoTime();
+					response.flip();
+					while (response.hasRemaining()) {
+						if (response.get() == '\n')
+							latencies[base + sent + answered++] = now - sendTime;
+					}
+				}
+				sent += batch;
+			}
+		}
+	}
+
+	/**
+   * Class holding the throughput and the latencies of a run.
+   */
+	public static class Result {
+		private final int connections;
+		private final int pipeline;
+		private final long[] latencies;
+		private final long elapsed;
+
+		/**
+     * Constructor to hold the measurements of a run.
+     * 
+     * @param connections The number of connections.
+     * @param pipeline The number of commands written at once.
+     * @param latencies The latencies of all commands in ascending order in nanoseconds.
+     * @param elapsed The duration of the run in nanoseconds.
+     */
+		Result(int connections, int pipeline, long[] latencies, long elapsed) {
+			this.connections = connections;
+			this.pipeline = pipeline;
+			this.latencies = latencies;
+			this.elapsed = elapsed;
+		}
+
+		/**
+     * Get the number of commands answered per second.
+     * @return The throughput.
+     */
+		public long
+		getThroughput() {
+			return (long)(latencies.length / (elapsed / 1e9));
+		}
+
+		/**
+     * Get a percentile of the latencies.
+     * @param fraction The percentile as a fraction between 0 and 1.
+     * @return The latency below which the fraction of the commands lies, in nanoseconds.
+     */
+		public long
+		getLatency(double fraction) {
+			return latencies[Math.min((int)(latencies.length * fraction), latencies.length - 1)];
+		}
+
+		/**
+     * Method to describe the result on one line.
+     * @return The description of the result.
+     */
+		@Override
+		public String
+		toString() {
+			return "Connections: " + connections + ", pipeline: " + pipeline + ", " + getThroughput() +
+				" requests/s, latency p50: " + getLatency(0.5) / 1000 + " us, p99: " + getLatency(0.99) / 1000 +
+				" us, max: " + latencies[latencies.length - 1] / 1000 + " us";
+		}
+	}
+}
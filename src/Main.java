@@ -1,13 +1,26 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Main.java
  * This class reads the input file and processes the commands to add, remove, search, update, and print stocks.
- * It also performs performance analysis on the StockDataManager class.
+ * The performance of the operations is measured by the JMH benchmarks in the jmh directory (make jmh).
  */
 public class Main {
+	/**
+   * The time the follow mode waits for the input file to grow once it has caught up, in milliseconds.
+   */
+	private static final long FOLLOW_POLL_MILLIS = 50;
+	/**
+   * The interval at which the follow mode reports how far it is behind, in milliseconds.
+   */
+	private static final long FOLLOW_REPORT_MILLIS = 5000;
+
 	/**
    * Private constructor to prevent instantiation of the class.
    */
@@ -17,124 +30,218 @@ public class Main {
 
 	/**
    * Main method to read the input file and process the commands.
+   * With --quiet, the result of each command is not printed, only the number of commands per outcome.
+   * With --shards N, the commands are replayed into a ShardedStockDataManager of N shards by a ParallelReplay,
+   * which only reports the number of commands per outcome and the output of PRINT commands.
+   * With --follow, the input file is followed as it grows and rotates, until the program is stopped.
    * @param args The command line arguments.
    */
 	public static void
 	main(String[] args) {
-		if (args.length != 1) {
-			System.out.println("Usage: java Main <input_file>");
+		boolean quiet = false;
+		boolean follow = false;
+		int shards = 0;
+		boolean valid = args.length >= 1;
+		for (int i = 1; i < args.length && valid; i++) {
+			if (args[i].equals("--quiet")) {
+				quiet = true;
+			} else if (args[i].equals("--follow")) {
+				follow = true;
+			} else if (args[i].equals("--shards") && i + 1 < args.length) {
+				try {
+					shards = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					valid = false;
+				}
+				valid &= shards >= 1;
+			} else {
+				valid = false;
+			}
+		}
+		if (!valid || (follow && shards > 0)) {
+			System.out.println("Usage: java Main <input_file> [--quiet] [--shards N | --follow]");
 			return;
 		}
 
 		String inputFile = args[0];
 		StockDataManager manager = new StockDataManager();
+		OutputSink out = new OutputSink();
+		OutputSink echo = quiet ? null : out;
+		long[] outcomes = new long[Command.Outcome.values().length];
+		if (follow) {
+			try {
+				follow(Paths.get(inputFile), manager, echo, outcomes);
+			} catch (IOException e) {
+				out.flush();
+				e.printStackTrace();
+			}
+			return;
+		}
 
-		try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				try {
-					processCommand(line, manager);
-				} catch (Exception e) {
-					System.out.println("Invalid command: " + line);
-				}
+		long startTime = System.nanoTime();
+		long lines = 0;
+		try (CommandParser parser = new CommandParser(Paths.get(inputFile))) {
+			if (shards > 0) {
+				outcomes = new ParallelReplay(new ShardedStockDataManager(shards)).replay(parser, echo);
+			} else {
+				Command command = new Command();
+				boolean more = loadStocks(parser, command, manager, echo, outcomes);
+				for (; more; more = parser.next(command))
+					outcomes[processCommand(command, manager, echo).ordinal()]++;
 			}
+			lines = parser.getLineCount();
 		} catch (IOException e) {
+			out.flush();
 			e.printStackTrace();
 		}
-		performPerformanceAnalysis(manager, 1_000_000);
+		long elapsed = System.nanoTime() - startTime;
+		if (quiet || shards > 0) {
+			for (Command.Outcome outcome : Command.Outcome.values())
+				out.print(outcome.name()).print(": ").print(outcomes[outcome.ordinal()]).println();
+		}
+		out.print("Processed ").print(lines).print(" lines at ")
+			.print((long)(lines / Math.max(elapsed / 1e9, 1e-9))).println(" lines/s");
+		out.flush();
 	}
 
 	/**
-   * Method to process the command read from the input file.
-   * @param line The command to be processed.
+   * Method to follow an input file that another process appends to and apply its commands as they arrive.
+   * The results are flushed whenever the input is caught up with, and the number of lines and the lag
+   * behind the writer are reported on the standard error every FOLLOW_REPORT_MILLIS.
+   * The method only returns by an exception, for example when the thread is interrupted.
+   * 
+   * @param file The input file, which does not need to exist yet.
    * @param manager The StockDataManager object to perform the operations.
-   * @throws NullPointerException If the command is invalid.
-   * @throws NumberFormatException If the command contains invalid numbers.
+   * @param out The sink the results are printed to, or null to print nothing.
+   * @param outcomes The number of commands per outcome.
+   * @throws IOException If the input file cannot be read.
    */
 	private static void
-	processCommand(String line, StockDataManager manager) throws NullPointerException, NumberFormatException {
-		String[] tokens = line.split(" ");
-		String command = tokens[0];
-
-		switch (command) {
-		case "ADD":
-			if (manager.searchStock(tokens[1]) != null) {
-				System.out.println("Stock updated:   " + tokens[1]);
-			} else {
-				System.out.println("Stock added:     " + tokens[1]);
-			}
-			manager.addOrUpdateStock(tokens[1],
-						 Double.parseDouble(tokens[2]),
-						 Long.parseLong(tokens[3]),
-						 Long.parseLong(tokens[4]));
-			break;
-		case "REMOVE":
-			if (manager.searchStock(tokens[1]) == null) {
-				System.out.println("Stock not found: " + tokens[1]);
-				break;
-			}
-			manager.removeStock(tokens[1]);
-			System.out.println("Stock removed:   " + tokens[1]);
-			break;
-		case "SEARCH":
-			Stock stock = manager.searchStock(tokens[1]);
-			if (stock != null)
-				System.out.println("Stock found:     " + stock);
-			else
-				System.out.println("Stock not found: " + tokens[1]);
-			break;
-		case "UPDATE":
-			if (manager.searchStock(tokens[1]) == null) {
-				System.out.println("Stock not found: " + tokens[1]);
-				break;
+	follow(Path file, StockDataManager manager, OutputSink out, long[] outcomes) throws IOException {
+		try (FileFollower follower = new FileFollower(file, FOLLOW_POLL_MILLIS)) {
+			Command command = new Command();
+			long nextReport = System.nanoTime() + FOLLOW_REPORT_MILLIS * 1_000_000;
+			while (true) {
+				if (follower.next(command)) {
+					outcomes[processCommand(command, manager, out).ordinal()]++;
+					if ((follower.getLineCount() & 0xFFF) != 0)
+						continue;
+				} else {
+					if (out != null)
+						out.flush();
+					follower.await();
+				}
+				if (System.nanoTime() - nextReport >= 0) {
+					System.err.println("Lines: " + follower.getLineCount() + ", lag: " + follower.getLagBytes() + " bytes, " +
+							   "about " + follower.getLagLines() + " lines, rotations: " + follower.getRotationCount());
+					nextReport = System.nanoTime() + FOLLOW_REPORT_MILLIS * 1_000_000;
+				}
 			}
-			manager.updateStock(tokens[1],
-					    tokens[2],
-					    Double.parseDouble(tokens[3]),
-					    Long.parseLong(tokens[4]),
-					    Long.parseLong(tokens[5]));
-			System.out.println("Stock updated:   " + manager.searchStock(tokens[2]));
-			break;
-		case "PRINT":
-			manager.printTree();
-			break;
-		default:
-			System.out.println("Unknown command:  " + command);
-			break;
 		}
 	}
 
 	/**
-   * Method to perform performance analysis on the StockDataManager class.
+   * Method to add the block of ADD commands at the start of the input file as one batch.
+   * The commands are reported in order, and the stocks are added with a single
+   * call to addAll once the first other command or the end of the file is reached.
+   * 
+   * @param parser The parser of the input file.
+   * @param command The command to be filled with the first command after the block.
    * @param manager The StockDataManager object to perform the operations.
-   * @param size The number of operations to be performed.
+   * @param out The sink the results are printed to, or null to print nothing.
+   * @param outcomes The number of commands per outcome, which is increased for the added and updated stocks.
+   * @return True if the command holds the first command after the block, false at the end of the file.
+   * @throws IOException If the input file cannot be read.
    */
-	private static void
-	performPerformanceAnalysis(StockDataManager manager, int size) {
-		long startTime, endTime;
-
-		startTime = System.nanoTime();
-		for (int i = 0; i < size; i++) {
-			manager.addOrUpdateStock("SYM" + i,
-						 Math.random() * 100,
-						 (long)(Math.random() * 1000000),
-						 (long)(Math.random() * 1000000000));
-		}
-		endTime = System.nanoTime();
-		System.out.println("Average ADD time: " + (endTime - startTime) / size + " ns");
-
-		startTime = System.nanoTime();
-		for (int i = 0; i < size; i++) {
-			manager.searchStock("SYM" + i);
+	private static boolean
+	loadStocks(CommandParser parser, Command command, StockDataManager manager, OutputSink out, long[] outcomes)
+		throws IOException {
+		List<Stock> stocks = new ArrayList<>();
+		Set<String> symbols = new HashSet<>();
+		boolean more;
+		while ((more = parser.next(command)) && command.getType() == Command.Type.ADD) {
+			String symbol = command.getSymbol();
+			stocks.add(new Stock(symbol, command.getPrice(), command.getVolume(), command.getMarketCap()));
+			Command.Outcome outcome = (!symbols.add(symbol) || manager.searchStock(symbol) != null) ? Command.Outcome.UPDATED : Command.Outcome.ADDED;
+			outcomes[outcome.ordinal()]++;
+			if (out == null)
+				continue;
+			if (outcome == Command.Outcome.UPDATED)
+				out.print("Stock updated:   ").println(symbol);
+			else
+				out.print("Stock added:     ").println(symbol);
 		}
-		endTime = System.nanoTime();
-		System.out.println("Average SEARCH time: " + (endTime - startTime) / size + " ns");
+		manager.addAll(stocks);
+		return more;
+	}
 
-		startTime = System.nanoTime();
-		for (int i = 0; i < size; i++) {
-			manager.removeStock("SYM" + i);
+	/**
+   * Method to process a command read from the input file. The StockServer answers the commands of its clients with it too.
+   * @param command The command to be processed.
+   * @param manager The StockDataManager object to perform the operations.
+   * @param out The sink the result is printed to, or null to print nothing.
+   * @return The outcome of the command.
+   */
+	static Command.Outcome
+	processCommand(Command command, StockDataManager manager, OutputSink out) {
+		switch (command.getType()) {
+		case ADD:
+			if (manager.addOrUpdateStock(command.getSymbol(),
+						     command.getPrice(),
+						     command.getVolume(),
+						     command.getMarketCap()) == 1) {
+				if (out != null)
+					out.print("Stock updated:   ").println(command.getSymbol());
+				return Command.Outcome.UPDATED;
+			}
+			if (out != null)
+				out.print("Stock added:     ").println(command.getSymbol());
+			return Command.Outcome.ADDED;
+		case REMOVE:
+			if (manager.removeStock(command.getSymbol()) == null) {
+				if (out != null)
+					out.print("Stock not found: ").println(command.getSymbol());
+				return Command.Outcome.NOT_FOUND;
+			}
+			if (out != null)
+				out.print("Stock removed:   ").println(command.getSymbol());
+			return Command.Outcome.REMOVED;
+		case SEARCH:
+			Stock stock = manager.searchStock(command.getSymbol());
+			if (stock == null) {
+				if (out != null)
+					out.print("Stock not found: ").println(command.getSymbol());
+				return Command.Outcome.NOT_FOUND;
+			}
+			if (out != null)
+				out.print("Stock found:     ").print(stock).println();
+			return Command.Outcome.FOUND;
+		case UPDATE:
+			Stock updated = manager.updateStock(command.getSymbol(),
+							    command.getNewSymbol(),
+							    command.getPrice(),
+							    command.getVolume(),
+							    command.getMarketCap());
+			if (updated == null) {
+				if (out != null)
+					out.print("Stock not found: ").println(command.getSymbol());
+				return Command.Outcome.NOT_FOUND;
+			}
+			if (out != null)
+				out.print("Stock updated:   ").print(updated).println();
+			return Command.Outcome.UPDATED;
+		case PRINT:
+			if (out != null)
+				manager.printTree(out);
+			return Command.Outcome.PRINTED;
+		case INVALID:
+			if (out != null)
+				out.print("Invalid command: ").println(command.getText());
+			return Command.Outcome.INVALID;
+		default:
+			if (out != null)
+				out.print("Unknown command:  ").println(command.getText());
+			return Command.Outcome.UNKNOWN;
 		}
-		endTime = System.nanoTime();
-		System.out.println("Average REMOVE time: " + (endTime - startTime) / size + " ns");
 	}
 }
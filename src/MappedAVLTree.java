@@ -0,0 +1,858 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * MappedAVLTree.java
+ * This class implements an AVL tree of stocks that lives in a memory-mapped file instead of the Java heap.
+ * The file starts with a header holding the root, the size and the free list, followed by fixed-size records.
+ * A record holds the child links, the height, the packed key of the symbol, the values and the symbol itself,
+ * so the tree needs no objects per stock and opening an existing file makes it usable at once.
+ * Slot 0 stands for the missing node and removed slots are reused through a free list, as in CompactAVLTree.
+ * Changes reach the file through the page cache when the process ends; force() writes them to the disk.
+ * Symbols must be ASCII of at most 16 characters, and the file holds at most about 33 million stocks.
+ */
+public class MappedAVLTree implements Closeable {
+	/**
+   * The maximum length of a symbol in characters.
+   */
+	public static final int MAX_SYMBOL_LENGTH = 16;
+
+	/**
+   * The number at the start of every tree file.
+   */
+	private static final int MAGIC = 0x41564C31;
+	/**
+   * The maximum height of the tree, as in AVLTree.
+   */
+	private static final int MAX_HEIGHT = 64;
+	/**
+   * The slot standing for a missing node.
+   */
+	private static final int NIL = 0;
+	/**
+   * The number of slots of a new file, including the slot of the missing node.
+   */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+   * The size of the header and the offsets of its fields.
+   */
+	private static final int HEADER_SIZE = 64;
+	private static final int HEADER_MAGIC = 0;
+	private static final int HEADER_ROOT = 4;
+	private static final int HEADER_SIZE_FIELD = 8;
+	private static final int HEADER_USED = 12;
+	private static final int HEADER_FREE = 16;
+	private static final int HEADER_CAPACITY = 20;
+
+	/**
+   * The size of a record and the offsets of its fields.
+   */
+	private static final int RECORD_SIZE = 64;
+	private static final int LEFT = 0;
+	private static final int RIGHT = 4;
+	private static final int HEIGHT = 8;
+	private static final int LENGTH = 12;
+	private static final int KEY = 16;
+	private static final int PRICE = 24;
+	private static final int VOLUME = 32;
+	private static final int MARKET_CAP = 40;
+	private static final int SYMBOL = 48;
+
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	/**
+   * The number of slots mapped, including the slot of the missing node.
+   */
+	private int capacity;
+	/**
+   * The ancestors of the node being inserted or deleted, reused by every update.
+   */
+	private final int[] path = new int[MAX_HEIGHT];
+	private int modCount;
+
+	/**
+   * Constructor to open the tree stored in a file, or to create an empty tree if the file is new or empty.
+   * @param file The file holding the tree.
+   * @throws IOException If the file cannot be opened, mapped or is not a tree file.
+   */
+	public MappedAVLTree(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() == 0) {
+			map(INITIAL_CAPACITY);
+			buffer.putInt(HEADER_MAGIC, MAGIC);
+			setRoot(NIL);
+			setSize(0);
+			setUsed(1);
+			setFree(NIL);
+		} else {
+			int slots;
+			try {
+				slots = checkHeader();
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+			if (slots < 0) {
+				channel.close();
+				throw new IOException("Not a stock tree file: " + file);
+			}
+			map(slots);
+		}
+	}
+
+	/**
+   * Insert a stock, or overwrite the values of the stock stored under the same symbol.
+   * The tree is descended once and balanced after an insertion.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return True if an existing stock was updated, false if the stock was inserted.
+   * @throws IllegalArgumentException If the symbol is longer than 16 characters or not ASCII.
+   */
+	public boolean
+	put(String symbol, double price, long volume, long marketCap) {
+		checkSymbol(symbol);
+		long key = SymbolKey.pack(symbol);
+		int node = root();
+		int depth = 0;
+		int cmp = 0;
+		while (node != NIL) {
+			cmp = compare(key, symbol, node);
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = left(node);
+			} else if (cmp > 0) {
+				path[depth++] = node;
+				node = right(node);
+			} else {
+				setValues(node, price, volume, marketCap);
+				return true;
+			}
+		}
+
+		int newNode = allocate();
+		int offset = offset(newNode);
+		buffer.putLong(offset + KEY, key);
+		buffer.putInt(offset + LENGTH, symbol.length());
+		for (int i = 0; i < symbol.length(); i++)
+			buffer.put(offset + SYMBOL + i, (byte)symbol.charAt(i));
+		setValues(newNode, price, volume, marketCap);
+		if (depth == 0)
+			setRoot(newNode);
+		else if (cmp < 0)
+			setLeft(path[depth - 1], newNode);
+		else
+			setRight(path[depth - 1], newNode);
+		setSize(size() + 1);
+		modCount++;
+		rebalancePath(depth);
+		return false;
+	}
+
+	/**
+   * Remove a stock from the tree. The tree is balanced after removal.
+   * A node with two children takes the record of its in-order successor, and the successor slot is freed instead.
+   * 
+   * @param symbol The symbol of the stock to be removed.
+   * @return A copy of the removed stock, or null if there was no stock with the symbol.
+   */
+	public Stock
+	remove(String symbol) {
+		long key = SymbolKey.pack(symbol);
+		int node = root();
+		int depth = 0;
+		while (node != NIL) {
+			int cmp = compare(key, symbol, node);
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = left(node);
+			} else if (cmp > 0) {
+				path[depth++] = node;
+				node = right(node);
+			} else {
+				break;
+			}
+		}
+		if (node == NIL)
+			return null;
+
+		Stock removed = toStock(node);
+		if (left(node) != NIL && right(node) != NIL) {
+			path[depth++] = node;
+			int minNode = right(node);
+			while (left(minNode) != NIL) {
+				path[depth++] = minNode;
+				minNode = left(minNode);
+			}
+			copyRecord(minNode, node);
+			node = minNode;
+		}
+
+		int child = (left(node) != NIL) ? left(node) : right(node);
+		if (depth == 0)
+			setRoot(child);
+		else if (left(path[depth - 1]) == node)
+			setLeft(path[depth - 1], child);
+		else
+			setRight(path[depth - 1], child);
+		setLeft(node, free());
+		setFree(node);
+		setSize(size() - 1);
+		modCount++;
+		rebalancePath(depth);
+		return removed;
+	}
+
+	/**
+   * Search for a stock in the tree based on the symbol. Time complexity is O(log n).
+   * @param symbol The symbol of the stock to be searched.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	public Stock
+	search(String symbol) {
+		int node = find(symbol);
+		return (node != NIL) ? toStock(node) : null;
+	}
+
+	/**
+   * Change the symbol and the values of a stock. A change of symbol removes the stock and inserts it again.
+   * A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   * @return A copy of the updated stock, or null if there was no stock with the symbol.
+   * @throws IllegalArgumentException If the new symbol is longer than 16 characters or not ASCII.
+   */
+	public Stock
+	update(String symbol, String newSymbol, double price, long volume, long marketCap) {
+		checkSymbol(newSymbol);
+		int node = find(symbol);
+		if (node == NIL)
+			return null;
+		if (symbol.equals(newSymbol)) {
+			setValues(node, price, volume, marketCap);
+		} else {
+			remove(symbol);
+			put(newSymbol, price, volume, marketCap);
+		}
+		return new Stock(newSymbol, price, volume, marketCap);
+	}
+
+	/**
+   * Get a sequential stream of copies of the stocks with symbols in [fromSymbol, toSymbol), in symbol order.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of copies of the stocks in the range.
+   */
+	public Stream<Stock>
+	range(String fromSymbol, String toSymbol) {
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		Iterator<Stock> iterator = new StockIterator(fromSymbol, toSymbol);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+	}
+
+	/**
+   * Get the number of stocks in the tree.
+   * @return The number of stocks.
+   */
+	public int
+	size() {
+		return buffer.getInt(HEADER_SIZE_FIELD);
+	}
+
+	/**
+   * Get the height of the tree.
+   * @return The height of the root, or 0 if the tree is empty.
+   */
+	public int
+	getHeight() {
+		return height(root());
+	}
+
+	/**
+   * Verify the AVL tree invariants by visiting every node.
+   * The symbols must be in strictly increasing order, the stored keys and heights must be correct,
+   * every balance factor must be in [-1, 1] and the size must match the number of nodes.
+   * 
+   * @return True if all invariants hold, false otherwise.
+   */
+	public boolean
+	isBalanced() {
+		int[] count = new int[1];
+		return verify(root(), null, null, count) >= 0 && count[0] == size();
+	}
+
+	/**
+   * Print the stocks in symbol order, indented by their depth, like AVLTree.inOrderTraversal.
+   */
+	public void
+	inOrderTraversal() {
+		OutputSink out = new OutputSink();
+		inOrderTraversal(out);
+		out.flush();
+	}
+
+	/**
+   * Method to write the stocks in symbol order to an output sink, indented by their depth like
+   * inOrderTraversal(). Only the symbol of a record is decoded; the values are printed from the file.
+   * @param out The sink to write to, which is not flushed.
+   */
+	public void
+	inOrderTraversal(OutputSink out) {
+		int root = root();
+		if (root == NIL)
+			return;
+
+		int[] stack = new int[height(root)];
+		int[] levels = new int[height(root)];
+		int top = 0;
+		int node = root;
+		int level = 0;
+
+		while (node != NIL || top > 0) {
+			while (node != NIL) {
+				stack[top] = node;
+				levels[top++] = level++;
+				node = left(node);
+			}
+			node = stack[--top];
+			level = levels[top];
+			int offset = offset(node);
+			out.indent(level * 4).print(height(node)).print(' ').print(symbol(node), buffer.getDouble(offset + PRICE),
+				buffer.getLong(offset + VOLUME), buffer.getLong(offset + MARKET_CAP)).println();
+			node = right(node);
+			level++;
+		}
+	}
+
+	/**
+   * Method to write all changes to the disk.
+   */
+	public void
+	force() {
+		buffer.force();
+	}
+
+	/**
+   * Method to write all changes to the disk and close the file. The tree must not be used afterwards.
+   * @throws IOException If the file cannot be closed.
+   */
+	@Override
+	public void
+	close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	/**
+   * Method to check that a symbol fits into a record.
+   * @param symbol The symbol to be checked.
+   * @throws IllegalArgumentException If the symbol is longer than 16 characters or not ASCII.
+   */
+	private static void
+	checkSymbol(String symbol) {
+		if (symbol.length() > MAX_SYMBOL_LENGTH)
+			throw new IllegalArgumentException("Symbol longer than " + MAX_SYMBOL_LENGTH + " characters: " + symbol);
+		for (int i = 0; i < symbol.length(); i++) {
+			if (symbol.charAt(i) > 0x7F)
+				throw new IllegalArgumentException("Symbol is not ASCII: " + symbol);
+		}
+	}
+
+	/**
+   * Method to compare a symbol with the symbol of a record, using the packed keys first.
+   * 
+   * @param key The packed key of the symbol.
+   * @param symbol The symbol.
+   * @param node The slot of the record.
+   * @return A negative number, zero or a positive number if the symbol is less than, equal to or greater than the record.
+   */
+	private int
+	compare(long key, String symbol, int node) {
+		int offset = offset(node);
+		long nodeKey = buffer.getLong(offset + KEY);
+		if (key != nodeKey)
+			return Long.compareUnsigned(key, nodeKey);
+
+		int length = buffer.getInt(offset + LENGTH);
+		int common = Math.min(symbol.length(), length);
+		for (int i = SymbolKey.LENGTH; i < common; i++) {
+			int cmp = symbol.charAt(i) - buffer.get(offset + SYMBOL + i);
+			if (cmp != 0)
+				return cmp;
+		}
+		return symbol.length() - length;
+	}
+
+	/**
+   * Method to find the slot holding a symbol.
+   * @param symbol The symbol to be found.
+   * @return The slot of the symbol, or NIL if there is none.
+   */
+	private int
+	find(String symbol) {
+		long key = SymbolKey.pack(symbol);
+		int node = root();
+		while (node != NIL) {
+			int cmp = compare(key, symbol, node);
+			if (cmp < 0)
+				node = left(node);
+			else if (cmp > 0)
+				node = right(node);
+			else
+				return node;
+		}
+		return NIL;
+	}
+
+	/**
+   * Method to read the symbol of a record.
+   * @param node The slot of the record.
+   * @return The symbol.
+   */
+	private String
+	symbol(int node) {
+		int offset = offset(node);
+		byte[] bytes = new byte[buffer.getInt(offset + LENGTH)];
+		buffer.get(offset + SYMBOL, bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	/**
+   * Method to copy a record into a new stock object.
+   * @param node The slot of the record.
+   * @return The stock object with the values of the record.
+   */
+	private Stock
+	toStock(int node) {
+		int offset = offset(node);
+		return new Stock(symbol(node), buffer.getDouble(offset + PRICE), buffer.getLong(offset + VOLUME),
+				 buffer.getLong(offset + MARKET_CAP));
+	}
+
+	/**
+   * Method to write the values of a record.
+   * 
+   * @param node The slot of the record.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   */
+	private void
+	setValues(int node, double price, long volume, long marketCap) {
+		int offset = offset(node);
+		buffer.putDouble(offset + PRICE, price);
+		buffer.putLong(offset + VOLUME, volume);
+		buffer.putLong(offset + MARKET_CAP, marketCap);
+	}
+
+	/**
+   * Method to copy the symbol and the values of one record into another, keeping the links of the target.
+   * @param from The slot of the record to be copied.
+   * @param to The slot of the record to be overwritten.
+   */
+	private void
+	copyRecord(int from, int to) {
+		int source = offset(from);
+		int target = offset(to);
+		for (int i = LENGTH; i < RECORD_SIZE; i += 4)
+			buffer.putInt(target + i, buffer.getInt(source + i));
+	}
+
+	/**
+   * Method to take a slot from the free list, or the next unused slot, growing the file if needed.
+   * @return The slot, without children and with height 1.
+   */
+	private int
+	allocate() {
+		int node = free();
+		if (node != NIL) {
+			setFree(left(node));
+		} else {
+			int used = buffer.getInt(HEADER_USED);
+			if (used == capacity)
+				grow();
+			node = used;
+			setUsed(used + 1);
+		}
+		setLeft(node, NIL);
+		setRight(node, NIL);
+		setHeight(node, 1);
+		return node;
+	}
+
+	/**
+   * Method to double the number of slots by extending the file and mapping it again.
+   * @throws IllegalStateException If the file cannot be extended.
+   */
+	private void
+	grow() {
+		long maxCapacity = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+		if (capacity >= maxCapacity)
+			throw new IllegalStateException("Stock tree file is full");
+		try {
+			map((int)Math.min(2L * capacity, maxCapacity));
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot extend stock tree file", e);
+		}
+	}
+
+	/**
+   * Method to check the header of an existing file before it is mapped. The header is read with a plain read,
+   * so a file that is not a tree file is neither extended nor written to.
+   * @return The number of slots of the file, or -1 if the file is not a tree file.
+   * @throws IOException If the file cannot be read.
+   */
+	private int
+	checkHeader() throws IOException {
+		long size = channel.size();
+		if (size < HEADER_SIZE + RECORD_SIZE || (size - HEADER_SIZE) % RECORD_SIZE != 0 ||
+		    (size - HEADER_SIZE) / RECORD_SIZE > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)
+			return -1;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0)
+				return -1;
+		}
+		int slots = (int)((size - HEADER_SIZE) / RECORD_SIZE);
+		int used = header.getInt(HEADER_USED);
+		if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_CAPACITY) != slots || used < 1 || used > slots)
+			return -1;
+		return slots;
+	}
+
+	/**
+   * Method to map the file with the given number of slots, extending the file if it is shorter.
+   * @param newCapacity The number of slots, including the slot of the missing node.
+   * @throws IOException If the file cannot be mapped.
+   */
+	private void
+	map(int newCapacity) throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)newCapacity * RECORD_SIZE);
+		buffer.order(ByteOrder.nativeOrder());
+		capacity = newCapacity;
+		buffer.putInt(HEADER_CAPACITY, capacity);
+	}
+
+	/**
+   * Method to get the byte offset of a record.
+   * @param node The slot of the record.
+   * @return The offset of the record in the file.
+   */
+	private static int
+	offset(int node) {
+		return HEADER_SIZE + node * RECORD_SIZE;
+	}
+
+	/**
+   * Get the slot of the root node.
+   * @return The slot of the root, or NIL if the tree is empty.
+   */
+	private int
+	root() {
+		return buffer.getInt(HEADER_ROOT);
+	}
+
+	/**
+   * Method to set the slot of the root node.
+   * @param node The slot of the new root.
+   */
+	private void
+	setRoot(int node) {
+		buffer.putInt(HEADER_ROOT, node);
+	}
+
+	/**
+   * Method to set the number of stocks in the header.
+   * @param size The number of stocks.
+   */
+	private void
+	setSize(int size) {
+		buffer.putInt(HEADER_SIZE_FIELD, size);
+	}
+
+	/**
+   * Method to set the number of slots handed out so far, including the slot of the missing node.
+   * @param used The number of slots.
+   */
+	private void
+	setUsed(int used) {
+		buffer.putInt(HEADER_USED, used);
+	}
+
+	/**
+   * Get the first slot of the free list.
+   * @return The first free slot, or NIL if the free list is empty.
+   */
+	private int
+	free() {
+		return buffer.getInt(HEADER_FREE);
+	}
+
+	/**
+   * Method to set the first slot of the free list.
+   * @param node The first free slot.
+   */
+	private void
+	setFree(int node) {
+		buffer.putInt(HEADER_FREE, node);
+	}
+
+	/**
+   * Get the left child of a node. Free slots link the free list through it.
+   * @param node The slot of the node.
+   * @return The slot of the left child.
+   */
+	private int
+	left(int node) {
+		return buffer.getInt(offset(node) + LEFT);
+	}
+
+	/**
+   * Method to set the left child of a node.
+   * @param node The slot of the node.
+   * @param child The slot of the new left child.
+   */
+	private void
+	setLeft(int node, int child) {
+		buffer.putInt(offset(node) + LEFT, child);
+	}
+
+	/**
+   * Get the right child of a node.
+   * @param node The slot of the node.
+   * @return The slot of the right child.
+   */
+	private int
+	right(int node) {
+		return buffer.getInt(offset(node) + RIGHT);
+	}
+
+	/**
+   * Method to set the right child of a node.
+   * @param node The slot of the node.
+   * @param child The slot of the new right child.
+   */
+	private void
+	setRight(int node, int child) {
+		buffer.putInt(offset(node) + RIGHT, child);
+	}
+
+	/**
+   * Get the height of a node.
+   * @param node The slot of the node.
+   * @return The height of the node, or 0 for the missing node.
+   */
+	private int
+	height(int node) {
+		return (node != NIL) ? buffer.getInt(offset(node) + HEIGHT) : 0;
+	}
+
+	/**
+   * Method to set the height of a node.
+   * @param node The slot of the node.
+   * @param height The new height.
+   */
+	private void
+	setHeight(int node, int height) {
+		buffer.putInt(offset(node) + HEIGHT, height);
+	}
+
+	/**
+   * Method to rebalance the nodes recorded in the path array from the deepest one up to the root.
+   * @param depth The number of nodes recorded in the path array.
+   */
+	private void
+	rebalancePath(int depth) {
+		for (int i = depth - 1; i >= 0; i--) {
+			int node = path[i];
+			int newNode = balance(node);
+			if (i == 0)
+				setRoot(newNode);
+			else if (newNode == node)
+				continue;
+			else if (left(path[i - 1]) == node)
+				setLeft(path[i - 1], newNode);
+			else
+				setRight(path[i - 1], newNode);
+		}
+	}
+
+	/**
+   * Method to calculate the height of a node based on its children.
+   * @param node The node.
+   */
+	private void
+	update(int node) {
+		setHeight(node, 1 + Math.max(height(left(node)), height(right(node))));
+	}
+
+	/**
+   * Method to balance a node whose children are balanced.
+   * @param node The node to be balanced.
+   * @return The new root of the subtree.
+   */
+	private int
+	balance(int node) {
+		update(node);
+		int balance = height(left(node)) - height(right(node));
+		if (balance > 1) {
+			int child = left(node);
+			if (height(left(child)) < height(right(child)))
+				setLeft(node, rotateLeft(child));
+			return rotateRight(node);
+		} else if (balance < -1) {
+			int child = right(node);
+			if (height(right(child)) < height(left(child)))
+				setRight(node, rotateRight(child));
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	/**
+   * Method to rotate a subtree to the right.
+   * @param node The root of the subtree.
+   * @return The new root of the subtree.
+   */
+	private int
+	rotateRight(int node) {
+		int newRoot = left(node);
+		setLeft(node, right(newRoot));
+		setRight(newRoot, node);
+		update(node);
+		update(newRoot);
+		return newRoot;
+	}
+
+	/**
+   * Method to rotate a subtree to the left.
+   * @param node The root of the subtree.
+   * @return The new root of the subtree.
+   */
+	private int
+	rotateLeft(int node) {
+		int newRoot = right(node);
+		setRight(node, left(newRoot));
+		setLeft(newRoot, node);
+		update(node);
+		update(newRoot);
+		return newRoot;
+	}
+
+	/**
+   * Method to verify a subtree recursively.
+   * 
+   * @param node The root of the subtree.
+   * @param low The exclusive lower bound of the symbols, or null for no bound.
+   * @param high The exclusive upper bound of the symbols, or null for no bound.
+   * @param count The array counting the visited nodes at index 0.
+   * @return The height of the subtree, or -1 if an invariant does not hold.
+   */
+	private int
+	verify(int node, String low, String high, int[] count) {
+		if (node == NIL)
+			return 0;
+
+		String symbol = symbol(node);
+		if ((low != null && symbol.compareTo(low) <= 0) || (high != null && symbol.compareTo(high) >= 0))
+			return -1;
+		if (buffer.getLong(offset(node) + KEY) != SymbolKey.pack(symbol))
+			return -1;
+
+		int leftHeight = verify(left(node), low, symbol, count);
+		if (leftHeight < 0)
+			return -1;
+		int rightHeight = verify(right(node), symbol, high, count);
+		if (rightHeight < 0)
+			return -1;
+
+		int nodeHeight = 1 + Math.max(leftHeight, rightHeight);
+		if (nodeHeight != height(node) || Math.abs(leftHeight - rightHeight) > 1)
+			return -1;
+		count[0]++;
+		return nodeHeight;
+	}
+
+	/**
+   * Iterator class that walks the records in-order with an explicit stack of the pending ancestors.
+   */
+	private class StockIterator implements Iterator<Stock> {
+		private final int[] stack;
+		private final String toSymbol;
+		private final int expectedModCount;
+		private int top;
+
+		/**
+     * Constructor to seek to the first stock with a symbol greater than or equal to the start symbol.
+     * 
+     * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+     * @param toSymbol The exclusive upper bound, or null for no upper bound.
+     */
+		StockIterator(String fromSymbol, String toSymbol) {
+			this.stack = new int[getHeight()];
+			this.toSymbol = toSymbol;
+			this.expectedModCount = modCount;
+			long fromKey = (fromSymbol != null) ? SymbolKey.pack(fromSymbol) : 0;
+			int node = root();
+			while (node != NIL) {
+				if (fromSymbol == null || compare(fromKey, fromSymbol, node) <= 0) {
+					stack[top++] = node;
+					node = left(node);
+				} else {
+					node = right(node);
+				}
+			}
+		}
+
+		/**
+     * Method to check whether there is another stock before the upper bound.
+     * @return True if there is another stock, false otherwise.
+     */
+		@Override
+		public boolean
+		hasNext() {
+			return top > 0 && (toSymbol == null || compare(SymbolKey.pack(toSymbol), toSymbol, stack[top - 1]) > 0);
+		}
+
+		/**
+     * Method to return a copy of the next stock and advance to the following one.
+     * @return A copy of the next stock.
+     * @throws NoSuchElementException If there are no more stocks.
+     * @throws ConcurrentModificationException If the tree was changed structurally during the iteration.
+     */
+		@Override
+		public Stock
+		next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (!hasNext())
+				throw new NoSuchElementException();
+			int node = stack[--top];
+			for (int child = right(node); child != NIL; child = left(child))
+				stack[top++] = child;
+			return toStock(node);
+		}
+	}
+}
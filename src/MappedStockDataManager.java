@@ -0,0 +1,209 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * MappedStockDataManager.java
+ * This class manages the stock data using a MappedAVLTree, which keeps the stocks in a memory-mapped file
+ * outside the Java heap. Opening the manager on an existing file maps it and makes the stocks available
+ * without reading or inserting them again, and the stocks add no work for the garbage collector.
+ * Changes survive the end of the process once written to the mapping; flush() also makes them survive
+ * a crash of the machine. A crash of the machine before flush() can leave the file torn.
+ * Stocks handed out are copies; updates always go through this class.
+ */
+public class MappedStockDataManager implements Closeable {
+	private MappedAVLTree tree;
+	/**
+   * The optional cache in front of searchStock, or null if not kept.
+   */
+	private StockCache cache;
+
+	/**
+   * Constructor to open the stocks stored in a file, or to start with no stocks if the file is new.
+   * @param file The file holding the stocks.
+   * @throws IOException If the file cannot be opened or is not a stock file.
+   */
+	public MappedStockDataManager(Path file) throws IOException {
+		tree = new MappedAVLTree(file);
+	}
+
+	/**
+   * Method to start keeping a bounded cache of the stocks searched for, which spares hot symbols the walk
+   * down the tree. The cache is kept current by every later change. A cache already kept is replaced.
+   * @param capacity The maximum number of stocks in the cache.
+   */
+	public void
+	enableSearchCache(int capacity) {
+		cache = new StockCache(capacity);
+	}
+
+	/**
+   * Method to stop keeping the search cache.
+   */
+	public void
+	disableSearchCache() {
+		cache = null;
+	}
+
+	/**
+   * Get the search cache, for example to read its counters.
+   * @return The search cache, or null if not kept.
+   */
+	public StockCache
+	getSearchCache() {
+		return cache;
+	}
+
+	/**
+   * Method to add or update a stock in the mapped AVL tree.
+   * If the stock already exists, it is updated with the new values.
+   * If the stock does not exist, it is added to the tree.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return 0 if the stock is added, 1 if the stock is updated.
+   * @throws IllegalArgumentException If the symbol is longer than 16 characters or not ASCII.
+   */
+	public int
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		boolean updated = tree.put(symbol, price, volume, marketCap);
+		if (cache != null)
+			cache.update(symbol, price, volume, marketCap);
+		return updated ? 1 : 0;
+	}
+
+	/**
+   * Method to remove a stock from the mapped AVL tree.
+   * @param symbol The symbol of the stock to be removed.
+   * @return A copy of the removed stock, or null if the stock was not found.
+   */
+	public Stock
+	removeStock(String symbol) {
+		if (cache != null)
+			cache.invalidate(symbol);
+		return tree.remove(symbol);
+	}
+
+	/**
+   * Method to search for a stock in the mapped AVL tree, or in the search cache if one is kept.
+   * @param symbol The symbol of the stock to be searched.
+   * @return A copy of the stock if found, null otherwise.
+   */
+	public Stock
+	searchStock(String symbol) {
+		if (cache == null)
+			return tree.search(symbol);
+		Stock stock = cache.get(symbol);
+		if (stock == null) {
+			stock = tree.search(symbol);
+			if (stock != null)
+				cache.put(stock);
+		}
+		return stock;
+	}
+
+	/**
+   * Method to update the details of a stock in the mapped AVL tree.
+   * A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return A copy of the updated stock, or null if the stock was not found.
+   * @throws IllegalArgumentException If the new symbol is longer than 16 characters or not ASCII.
+   */
+	public Stock
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		Stock updated = tree.update(symbol, newSymbol, newPrice, newVolume, newMarketCap);
+		if (cache != null && updated != null) {
+			if (symbol.equals(newSymbol)) {
+				cache.update(symbol, newPrice, newVolume, newMarketCap);
+			} else {
+				cache.invalidate(symbol);
+				cache.invalidate(newSymbol);
+			}
+		}
+		return updated;
+	}
+
+	/**
+   * Method to stream copies of the stocks with symbols in [fromSymbol, toSymbol) in symbol order.
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of copies of the stocks in the range.
+   */
+	public Stream<Stock>
+	rangeStocks(String fromSymbol, String toSymbol) {
+		return tree.range(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Get the number of stocks managed.
+   * @return The number of stocks in the mapped AVL tree.
+   */
+	public int
+	size() {
+		return tree.size();
+	}
+
+	/**
+   * Get the height of the mapped AVL tree.
+   * @return The height of the mapped AVL tree.
+   */
+	public int
+	getHeight() {
+		return tree.getHeight();
+	}
+
+	/**
+   * Method to verify the mapped AVL tree.
+   * @return True if the AVL tree invariants hold, false otherwise.
+   */
+	public boolean
+	isBalanced() {
+		return tree.isBalanced();
+	}
+
+	/**
+   * Method to print the stocks in the mapped AVL tree.
+   */
+	public void
+	printTree() {
+		OutputSink out = new OutputSink();
+		printTree(out);
+		out.flush();
+	}
+
+	/**
+   * Method to write the stocks in the mapped AVL tree to an output sink.
+   * @param out The sink to write to, which is not flushed.
+   */
+	public void
+	printTree(OutputSink out) {
+		out.println("Stocks:");
+		tree.inOrderTraversal(out);
+	}
+
+	/**
+   * Method to write all changes to the disk, so that they survive a crash of the machine.
+   */
+	public void
+	flush() {
+		tree.force();
+	}
+
+	/**
+   * Method to write all changes to the disk and close the file. The manager must not be used afterwards.
+   * @throws IOException If the file cannot be closed.
+   */
+	@Override
+	public void
+	close() throws IOException {
+		tree.close();
+	}
+}
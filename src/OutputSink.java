@@ -0,0 +1,209 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * OutputSink.java
+ * This class collects text output in a large byte buffer and writes it to an output stream in batches,
+ * instead of one write and one flush per line as System.out.println does.
+ * Text is encoded as UTF-8 straight into the buffer, and stocks and numbers are formatted into
+ * a reused StringBuilder, so printing creates no strings. Output only reaches the stream when the buffer
+ * is full or flush() is called. The class is not thread-safe.
+ */
+public class OutputSink implements Flushable {
+	/**
+   * The default size of the buffer in bytes.
+   */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count;
+	/**
+   * The builder stocks and numbers are formatted into before they are encoded.
+   */
+	private final StringBuilder scratch = new StringBuilder(128);
+
+	/**
+   * Constructor to write to the standard output with the default buffer size.
+   * The standard output is written directly, bypassing the line flushing of System.out.
+   */
+	public OutputSink() {
+		this(new FileOutputStream(FileDescriptor.out), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+   * Constructor to write to an output stream.
+   * @param out The stream to write to.
+   * @param bufferSize The size of the buffer in bytes, at least 4.
+   */
+	public OutputSink(OutputStream out, int bufferSize) {
+		this.out = out;
+		this.buffer = new byte[Math.max(bufferSize, 4)];
+	}
+
+	/**
+   * Method to print text.
+   * @param text The text to be printed.
+   * @return This sink.
+   */
+	public OutputSink
+	print(CharSequence text) {
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				if (count == buffer.length)
+					drain();
+				buffer[count++] = (byte)c;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				encode(Character.toCodePoint(c, text.charAt(++i)));
+			} else {
+				print(c);
+			}
+		}
+		return this;
+	}
+
+	/**
+   * Method to print a character. A surrogate on its own is printed as '?', like String.getBytes does.
+   * @param c The character to be printed.
+   * @return This sink.
+   */
+	public OutputSink
+	print(char c) {
+		if (c < 0x80) {
+			if (count == buffer.length)
+				drain();
+			buffer[count++] = (byte)c;
+		} else if (Character.isSurrogate(c)) {
+			print('?');
+		} else {
+			encode(c);
+		}
+		return this;
+	}
+
+	/**
+   * Method to print a number.
+   * @param value The number to be printed.
+   * @return This sink.
+   */
+	public OutputSink
+	print(long value) {
+		scratch.setLength(0);
+		return print(scratch.append(value));
+	}
+
+	/**
+   * Method to print a stock as Stock.toString formats it.
+   * @param stock The stock to be printed.
+   * @return This sink.
+   */
+	public OutputSink
+	print(Stock stock) {
+		scratch.setLength(0);
+		return print(stock.appendTo(scratch));
+	}
+
+	/**
+   * Method to print a stock given by its values as Stock.toString formats it, without a stock object.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return This sink.
+   */
+	public OutputSink
+	print(String symbol, double price, long volume, long marketCap) {
+		scratch.setLength(0);
+		return print(Stock.appendTo(scratch, symbol, price, volume, marketCap));
+	}
+
+	/**
+   * Method to print a number of spaces.
+   * @param spaces The number of spaces.
+   * @return This sink.
+   */
+	public OutputSink
+	indent(int spaces) {
+		for (int i = 0; i < spaces; i++)
+			print(' ');
+		return this;
+	}
+
+	/**
+   * Method to end the line.
+   * @return This sink.
+   */
+	public OutputSink
+	println() {
+		return print('\n');
+	}
+
+	/**
+   * Method to print text and end the line.
+   * @param text The text to be printed.
+   * @return This sink.
+   */
+	public OutputSink
+	println(CharSequence text) {
+		return print(text).print('\n');
+	}
+
+	/**
+   * Method to write the buffered output to the stream and flush the stream.
+   * @throws UncheckedIOException If the stream cannot be written.
+   */
+	@Override
+	public void
+	flush() {
+		drain();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+   * Method to encode a code point of at least 0x80 as UTF-8.
+   * @param codePoint The code point.
+   */
+	private void
+	encode(int codePoint) {
+		if (count + 4 > buffer.length)
+			drain();
+		if (codePoint < 0x800) {
+			buffer[count++] = (byte)(0xC0 | (codePoint >> 6));
+		} else if (codePoint < 0x10000) {
+			buffer[count++] = (byte)(0xE0 | (codePoint >> 12));
+			buffer[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+		} else {
+			buffer[count++] = (byte)(0xF0 | (codePoint >> 18));
+			buffer[count++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+		}
+		buffer[count++] = (byte)(0x80 | (codePoint & 0x3F));
+	}
+
+	/**
+   * Method to write the buffered output to the stream without flushing the stream.
+   * @throws UncheckedIOException If the stream cannot be written.
+   */
+	private void
+	drain() {
+		if (count == 0)
+			return;
+		try {
+			out.write(buffer, 0, count);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		count = 0;
+	}
+}
@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * ParallelReplay.java
+ * This class replays the commands of an input file into a ShardedStockDataManager with one worker thread per shard.
+ * The reading thread parses the commands and appends each one to a batch of the shard its symbol belongs to.
+ * Full batches are handed to the worker of the shard, which applies them in order, so the commands of one
+ * symbol keep their order while different shards run in parallel.
+ * An UPDATE whose new symbol belongs to another shard is split in two: the old shard removes the stock and
+ * hands over whether it existed, and the new shard waits for the hand-over before adding the stock.
+ * The batch holding the removal is handed to its worker at once, before the waiting step is even appended,
+ * so every waiting step waits for a step that is already queued and comes earlier in the input.
+ * A worker therefore never waits for a batch that the reader, blocked on that worker's full queue, still holds,
+ * and the replay cannot deadlock.
+ * A PRINT waits until all workers are idle and prints the stocks of all shards in symbol order.
+ * Commands are not echoed, as the results of different shards are ready out of input order;
+ * the replay reports the number of commands per outcome.
+ */
+public class ParallelReplay {
+	/**
+   * The number of commands in a batch.
+   */
+	private static final int BATCH_SIZE = 1024;
+	/**
+   * The number of full batches that may wait for a worker before the reader waits.
+   */
+	private static final int QUEUE_CAPACITY = 8;
+
+	/**
+   * The operations of a batch. SEND removes a stock and hands over whether it existed, RECEIVE waits
+   * for the hand-over and adds the stock under the new symbol if it existed.
+   */
+	private static final byte ADD = 0;
+	private static final byte REMOVE = 1;
+	private static final byte SEARCH = 2;
+	private static final byte UPDATE = 3;
+	private static final byte SEND = 4;
+	private static final byte RECEIVE = 5;
+
+	private final ShardedStockDataManager manager;
+	private final Worker[] workers;
+	/**
+   * The batch being filled for each shard.
+   */
+	private final Batch[] batches;
+
+	/**
+   * Constructor to prepare the workers of a sharded manager. The threads are started by replay.
+   * @param manager The manager to replay into.
+   */
+	public ParallelReplay(ShardedStockDataManager manager) {
+		this.manager = manager;
+		this.workers = new Worker[manager.getShardCount()];
+		this.batches = new Batch[workers.length];
+		for (int i = 0; i < workers.length; i++)
+			workers[i] = new Worker(manager.shard(i));
+	}
+
+	/**
+   * Method to replay all commands of a parser and wait until they are applied. A replay can be run once.
+   * 
+   * @param parser The parser of the input.
+   * @param out The sink PRINT commands write to, or null to skip their output.
+   * @return The number of commands per outcome, indexed by the ordinal of Command.Outcome.
+   * @throws IOException If the input cannot be read or the replay is interrupted.
+   * @throws IllegalStateException If a command failed on a worker.
+   */
+	public long[]
+	replay(CommandParser parser, OutputSink out) throws IOException {
+		long[] outcomes = new long[Command.Outcome.values().length];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].start();
+			batches[i] = workers[i].freeBatch();
+		}
+		try {
+			Command command = new Command();
+			while (parser.next(command)) {
+				switch (command.getType()) {
+				case ADD:
+					append(ADD, command.getSymbol(), command, null);
+					break;
+				case REMOVE:
+					append(REMOVE, command.getSymbol(), command, null);
+					break;
+				case SEARCH:
+					append(SEARCH, command.getSymbol(), command, null);
+					break;
+				case UPDATE:
+					if (manager.shardOf(command.getSymbol()) == manager.shardOf(command.getNewSymbol())) {
+						append(UPDATE, command.getSymbol(), command, null);
+					} else {
+						CompletableFuture<Boolean> handOver = new CompletableFuture<>();
+						append(SEND, command.getSymbol(), command, handOver);
+						handOver(manager.shardOf(command.getSymbol()));
+						append(RECEIVE, command.getNewSymbol(), command, handOver);
+					}
+					break;
+				case PRINT:
+					await();
+					if (out != null)
+						manager.printTree(out);
+					outcomes[Command.Outcome.PRINTED.ordinal()]++;
+					break;
+				case INVALID:
+					outcomes[Command.Outcome.INVALID.ordinal()]++;
+					break;
+				default:
+					outcomes[Command.Outcome.UNKNOWN.ordinal()]++;
+					break;
+				}
+			}
+			await();
+		} finally {
+			stop();
+		}
+
+		for (Worker worker : workers) {
+			for (int i = 0; i < outcomes.length; i++)
+				outcomes[i] += worker.outcomes[i];
+		}
+		return outcomes;
+	}
+
+	/**
+   * Method to append an operation to the batch of the shard of a symbol, handing the batch over when it is full.
+   * 
+   * @param operation The operation.
+   * @param symbol The symbol that decides the shard.
+   * @param command The command holding the other arguments.
+   * @param handOver The hand-over of a SEND or RECEIVE operation, or null.
+   * @throws InterruptedIOException If the reader is interrupted while waiting for a free batch.
+   */
+	private void
+	append(byte operation, String symbol, Command command, CompletableFuture<Boolean> handOver) throws InterruptedIOException {
+		int shard = manager.shardOf(symbol);
+		Batch batch = batches[shard];
+		int i = batch.size++;
+		batch.operations[i] = operation;
+		batch.symbols[i] = command.getSymbol();
+		batch.newSymbols[i] = command.getNewSymbol();
+		batch.prices[i] = command.getPrice();
+		batch.volumes[i] = command.getVolume();
+		batch.marketCaps[i] = command.getMarketCap();
+		batch.handOvers[i] = handOver;
+		if (batch.size == BATCH_SIZE)
+			handOver(shard);
+	}
+
+	/**
+   * Method to hand the batch being filled for a shard to its worker, even if it is not full, and start a new one.
+   * @param shard The shard.
+   * @throws InterruptedIOException If the reader is interrupted while waiting for the worker.
+   */
+	private void
+	handOver(int shard) throws InterruptedIOException {
+		workers[shard].submit(batches[shard]);
+		batches[shard] = workers[shard].freeBatch();
+	}
+
+	/**
+   * Method to hand over all partly filled batches and wait until every worker has applied them.
+   * @throws InterruptedIOException If the reader is interrupted while waiting.
+   * @throws IllegalStateException If a command failed on a worker.
+   */
+	private void
+	await() throws InterruptedIOException {
+		CountDownLatch latch = new CountDownLatch(workers.length);
+		for (int i = 0; i < workers.length; i++) {
+			batches[i].latch = latch;
+			handOver(i);
+		}
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Replay interrupted");
+		}
+		for (Worker worker : workers) {
+			if (worker.failure != null)
+				throw new IllegalStateException("Command failed on a worker", worker.failure);
+		}
+	}
+
+	/**
+   * Method to stop the workers and wait for them to end. The hand-overs still waiting in unsubmitted
+   * batches are completed, so no worker keeps waiting for them if the replay ends early.
+   */
+	@SuppressWarnings("unchecked")
+	private void
+	stop() {
+		for (Batch batch : batches) {
+			for (int i = 0; batch != null && i < batch.size; i++) {
+				if (batch.operations[i] == SEND)
+					((CompletableFuture<Boolean>)batch.handOvers[i]).complete(false);
+			}
+		}
+		for (Worker worker : workers)
+			worker.interrupt();
+		for (Worker worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+   * Class holding a batch of operations for one shard in columns, which is reused once applied.
+   */
+	private static class Batch {
+		private final byte[] operations = new byte[BATCH_SIZE];
+		private final String[] symbols = new String[BATCH_SIZE];
+		private final String[] newSymbols = new String[BATCH_SIZE];
+		private final double[] prices = new double[BATCH_SIZE];
+		private final long[] volumes = new long[BATCH_SIZE];
+		private final long[] marketCaps = new long[BATCH_SIZE];
+		private final Object[] handOvers = new Object[BATCH_SIZE];
+		private int size;
+		/**
+     * The latch counted down once the batch is applied, or null.
+     */
+		private CountDownLatch latch;
+
+		/**
+     * Method to empty the batch, dropping the references it holds.
+     */
+		void
+		clear() {
+			Arrays.fill(symbols, 0, size, null);
+			Arrays.fill(newSymbols, 0, size, null);
+			Arrays.fill(handOvers, 0, size, null);
+			size = 0;
+			latch = null;
+		}
+	}
+
+	/**
+   * Thread class that applies the batches of one shard in the order they are submitted.
+   */
+	private static class Worker extends Thread {
+		private final StockDataManager shard;
+		private final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 2);
+		/**
+     * The number of commands per outcome applied by this worker, read by the reader after the worker ended.
+     */
+		private final long[] outcomes = new long[Command.Outcome.values().length];
+		/**
+     * The first failure of a command, read by the reader after waiting for the worker.
+     */
+		private volatile RuntimeException failure;
+
+		/**
+     * Constructor to create the worker of a shard and its batches.
+     * @param shard The shard the worker applies the batches to.
+     */
+		Worker(StockDataManager shard) {
+			super("replay-worker");
+			this.shard = shard;
+			setDaemon(true);
+			for (int i = 0; i < QUEUE_CAPACITY + 2; i++)
+				free.add(new Batch());
+		}
+
+		/**
+     * Method to take a free batch, waiting until the worker has applied one if necessary.
+     * @return The free batch.
+     * @throws InterruptedIOException If the reader is interrupted while waiting.
+     */
+		Batch
+		freeBatch() throws InterruptedIOException {
+			try {
+				return free.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Replay interrupted");
+			}
+		}
+
+		/**
+     * Method to hand a batch to the worker, waiting while its queue is full.
+     * @param batch The batch to be applied.
+     * @throws InterruptedIOException If the reader is interrupted while waiting.
+     */
+		void
+		submit(Batch batch) throws InterruptedIOException {
+			try {
+				full.put(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Replay interrupted");
+			}
+		}
+
+		/**
+     * Method to apply the submitted batches until the worker is interrupted.
+     */
+		@Override
+		public void
+		run() {
+			try {
+				while (true) {
+					Batch batch = full.take();
+					for (int i = 0; i < batch.size; i++)
+						apply(batch, i);
+					CountDownLatch latch = batch.latch;
+					batch.clear();
+					free.add(batch);
+					if (latch != null)
+						latch.countDown();
+				}
+			} catch (InterruptedException e) {
+				// the replay is finished
+			}
+		}
+
+		/**
+     * Method to apply one operation of a batch and count its outcome. A failing operation is recorded,
+     * and a SEND always hands over, so the shard waiting for it goes on.
+     * 
+     * @param batch The batch.
+     * @param i The index of the operation.
+     */
+		@SuppressWarnings("unchecked")
+		private void
+		apply(Batch batch, int i) {
+			String symbol = batch.symbols[i];
+			Command.Outcome outcome = null;
+			boolean handedOver = false;
+			try {
+				switch (batch.operations[i]) {
+				case ADD:
+					outcome = (shard.addOrUpdateStock(symbol, batch.prices[i], batch.volumes[i], batch.marketCaps[i]) == 1)
+						? Command.Outcome.UPDATED : Command.Outcome.ADDED;
+					break;
+				case REMOVE:
+					outcome = (shard.removeStock(symbol) != null) ? Command.Outcome.REMOVED : Command.Outcome.NOT_FOUND;
+					break;
+				case SEARCH:
+					outcome = (shard.searchStock(symbol) != null) ? Command.Outcome.FOUND : Command.Outcome.NOT_FOUND;
+					break;
+				case UPDATE:
+					outcome = (shard.updateStock(symbol, batch.newSymbols[i], batch.prices[i], batch.volumes[i],
+								     batch.marketCaps[i]) != null) ? Command.Outcome.UPDATED : Command.Outcome.NOT_FOUND;
+					break;
+				case SEND:
+					handedOver = shard.removeStock(symbol) != null;
+					break;
+				default:
+					if (((CompletableFuture<Boolean>)batch.handOvers[i]).join()) {
+						shard.addOrUpdateStock(batch.newSymbols[i], batch.prices[i], batch.volumes[i], batch.marketCaps[i]);
+						outcome = Command.Outcome.UPDATED;
+					} else {
+						outcome = Command.Outcome.NOT_FOUND;
+					}
+					break;
+				}
+			} catch (RuntimeException e) {
+				if (failure == null)
+					failure = e;
+			} finally {
+				if (batch.operations[i] == SEND)
+					((CompletableFuture<Boolean>)batch.handOvers[i]).complete(handedOver);
+			}
+			if (outcome != null)
+				outcomes[outcome.ordinal()]++;
+		}
+	}
+}
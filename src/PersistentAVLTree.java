@@ -0,0 +1,475 @@
+import java.util.function.Consumer;
+
+/**
+ * PersistentAVLTree.java
+ * This class implements a persistent AVL tree to store Stock objects.
+ * Nodes are never modified after construction. An update copies only the nodes on the path from the root
+ * to the changed node, O(log n) of them, and shares every other node with the previous version.
+ * Every version is published as an immutable Snapshot, so readers never see a half-applied update or rotation
+ * and can traverse a snapshot without locking while updates continue.
+ * Stocks are copied into the tree and cannot be changed there, so a snapshot stays stable.
+ */
+public class PersistentAVLTree {
+	/**
+   * Immutable node class to store the stock object, the child nodes and the height of the node.
+   */
+	private static final class Node {
+		final Stock stock;
+		final Node left, right;
+		final int height;
+
+		/**
+     * Constructor to create a node and calculate its height from the heights of the child nodes.
+     * @param stock The stock object to be stored in the node.
+     * @param left The left child node.
+     * @param right The right child node.
+     */
+		Node(Stock stock, Node left, Node right) {
+			this.stock = stock;
+			this.left = left;
+			this.right = right;
+			this.height = 1 + Math.max(height(left), height(right));
+		}
+	}
+
+	/**
+   * Stock class whose values cannot be changed once it is stored in the tree.
+   */
+	private static final class FrozenStock extends Stock {
+		/**
+     * Constructor to create a frozen copy of a stock.
+     * @param stock The stock to be copied.
+     */
+		FrozenStock(Stock stock) {
+			super(stock);
+		}
+
+		/**
+     * Method that always fails, since the stock cannot be changed.
+     * @param symbol Ignored.
+     * @throws UnsupportedOperationException Always.
+     */
+		@Override
+		public void
+		setSymbol(String symbol) {
+			throw new UnsupportedOperationException("Stocks in a PersistentAVLTree cannot be changed");
+		}
+
+		/**
+     * Method that always fails, since the stock cannot be changed.
+     * @param price Ignored.
+     * @throws UnsupportedOperationException Always.
+     */
+		@Override
+		public void
+		setPrice(double price) {
+			throw new UnsupportedOperationException("Stocks in a PersistentAVLTree cannot be changed");
+		}
+
+		/**
+     * Method that always fails, since the stock cannot be changed.
+     * @param volume Ignored.
+     * @throws UnsupportedOperationException Always.
+     */
+		@Override
+		public void
+		setVolume(long volume) {
+			throw new UnsupportedOperationException("Stocks in a PersistentAVLTree cannot be changed");
+		}
+
+		/**
+     * Method that always fails, since the stock cannot be changed.
+     * @param marketCap Ignored.
+     * @throws UnsupportedOperationException Always.
+     */
+		@Override
+		public void
+		setMarketCap(long marketCap) {
+			throw new UnsupportedOperationException("Stocks in a PersistentAVLTree cannot be changed");
+		}
+	}
+
+	/**
+   * Snapshot class representing one immutable version of the tree.
+   * A snapshot can be searched and traversed by any number of threads without locking.
+   */
+	public static final class Snapshot {
+		private final Node root;
+		private final int size;
+
+		/**
+     * Constructor to create a snapshot of a version of the tree.
+     * @param root The root node of the version.
+     * @param size The number of stocks in the version.
+     */
+		private Snapshot(Node root, int size) {
+			this.root = root;
+			this.size = size;
+		}
+
+		/**
+     * Search for a stock in the snapshot based on the symbol.
+     * @param symbol The symbol of the stock to be searched.
+     * @return The stock object if found, null otherwise. The stock cannot be changed.
+     */
+		public Stock
+		search(String symbol) {
+			Node node = root;
+			while (node != null) {
+				int cmp = symbol.compareTo(node.stock.getSymbol());
+				if (cmp < 0)
+					node = node.left;
+				else if (cmp > 0)
+					node = node.right;
+				else
+					return node.stock;
+			}
+			return null;
+		}
+
+		/**
+     * Get the number of stocks in the snapshot.
+     * @return The number of stocks in the snapshot.
+     */
+		public int
+		size() {
+			return size;
+		}
+
+		/**
+     * Get the height of the snapshot. An empty snapshot has height 0.
+     * @return The height of the root node.
+     */
+		public int
+		getHeight() {
+			return height(root);
+		}
+
+		/**
+     * Method to pass every stock of the snapshot to an action in in-order.
+     * @param action The action to be performed on every stock.
+     */
+		public void
+		forEach(Consumer<Stock> action) {
+			if (root == null)
+				return;
+
+			Node[] stack = new Node[root.height];
+			int top = 0;
+			Node node = root;
+			while (node != null || top > 0) {
+				while (node != null) {
+					stack[top++] = node;
+					node = node.left;
+				}
+				node = stack[--top];
+				action.accept(node.stock);
+				node = node.right;
+			}
+		}
+
+		/**
+     * Method to display the stocks in the snapshot in in-order traversal.
+     * The level of the node is used to indent the output in the same way as AVLTree.
+     */
+		public void
+		inOrderTraversal() {
+			OutputSink out = new OutputSink();
+			inOrderTraversal(out);
+			out.flush();
+		}
+
+		/**
+     * Method to write the stocks in the snapshot in in-order traversal to an output sink,
+     * indented like inOrderTraversal(). No strings are created per node.
+     * @param out The sink to write to, which is not flushed.
+     */
+		public void
+		inOrderTraversal(OutputSink out) {
+			if (root == null)
+				return;
+
+			Node[] stack = new Node[root.height];
+			int[] levels = new int[root.height];
+			int top = 0;
+			Node node = root;
+			int level = 0;
+
+			while (node != null || top > 0) {
+				while (node != null) {
+					stack[top] = node;
+					levels[top++] = level++;
+					node = node.left;
+				}
+				node = stack[--top];
+				level = levels[top];
+				out.indent(level * 4).print(node.height).print(' ').print(node.stock).println();
+				node = node.right;
+				level++;
+			}
+		}
+	}
+
+	/**
+   * The maximum height of the tree. An AVL tree holding Integer.MAX_VALUE nodes is at most 45 levels high.
+   */
+	private static final int MAX_HEIGHT = 64;
+
+	/**
+   * The latest version of the tree. Readers only ever read this field once per operation.
+   */
+	private volatile Snapshot current;
+	/**
+   * The nodes visited by the update in progress and whether it went left at each of them, reused by every update.
+   */
+	private final Node[] path = new Node[MAX_HEIGHT];
+	private final boolean[] wentLeft = new boolean[MAX_HEIGHT];
+	/**
+   * The stock replaced or removed by the last update, or null if there was none.
+   */
+	private Stock previous;
+
+	/**
+   * Constructor to initialize the tree with an empty version.
+   */
+	public PersistentAVLTree() {
+		current = new Snapshot(null, 0);
+	}
+
+	/**
+   * Get the latest version of the tree. Time complexity is O(1).
+   * @return The immutable snapshot of the latest version.
+   */
+	public Snapshot
+	snapshot() {
+		return current;
+	}
+
+	/**
+   * Search for a stock in the latest version of the tree based on the symbol.
+   * @param symbol The symbol of the stock to be searched.
+   * @return The stock object if found, null otherwise. The stock cannot be changed.
+   */
+	public Stock
+	search(String symbol) {
+		return current.search(symbol);
+	}
+
+	/**
+   * Get the number of stocks in the latest version of the tree.
+   * @return The number of stocks in the tree.
+   */
+	public int
+	size() {
+		return current.size();
+	}
+
+	/**
+   * Insert a copy of the stock, replacing the stock stored under the same symbol, and publish the new version.
+   * @param stock The stock object to be stored.
+   * @return The stock previously stored under the symbol, or null if there was none.
+   */
+	public synchronized Stock
+	put(Stock stock) {
+		Snapshot snapshot = current;
+		Node root = put(snapshot.root, new FrozenStock(stock));
+		current = new Snapshot(root, (previous != null) ? snapshot.size : snapshot.size + 1);
+		return takePrevious();
+	}
+
+	/**
+   * Remove a stock and publish the new version.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if there was no stock with the symbol.
+   */
+	public synchronized Stock
+	remove(String symbol) {
+		Snapshot snapshot = current;
+		Node root = remove(snapshot.root, symbol);
+		if (previous != null)
+			current = new Snapshot(root, snapshot.size - 1);
+		return takePrevious();
+	}
+
+	/**
+   * Replace a stock by a copy of another stock, possibly with a different symbol, and publish the new version.
+   * The removal and the insertion become visible together. A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The symbol of the stock to be replaced.
+   * @param stock The stock object to be stored instead.
+   * @return The stored copy of the stock, or null if there was no stock with the symbol.
+   */
+	public synchronized Stock
+	replace(String symbol, Stock stock) {
+		Snapshot snapshot = current;
+		Node root = snapshot.root;
+		int size = snapshot.size;
+		if (!symbol.equals(stock.getSymbol())) {
+			root = remove(root, symbol);
+			if (takePrevious() == null)
+				return null;
+			size--;
+		} else if (snapshot.search(symbol) == null) {
+			return null;
+		}
+
+		Stock frozen = new FrozenStock(stock);
+		root = put(root, frozen);
+		if (takePrevious() == null)
+			size++;
+		current = new Snapshot(root, size);
+		return frozen;
+	}
+
+	/**
+   * Method to return the stock replaced or removed by the last update and forget it.
+   * @return The stock replaced or removed by the last update, or null if there was none.
+   */
+	private Stock
+	takePrevious() {
+		Stock stock = previous;
+		previous = null;
+		return stock;
+	}
+
+	/**
+   * Method to create a version with the stock stored under its symbol.
+   * The path to the symbol is recorded, and new nodes are created for it from the bottom up.
+   * The replaced stock is kept in previous.
+   * 
+   * @param root The root node of the version to start from.
+   * @param stock The frozen stock object to be stored.
+   * @return The root node of the new version.
+   */
+	private Node
+	put(Node root, Stock stock) {
+		String symbol = stock.getSymbol();
+		Node node = root;
+		int depth = 0;
+		while (node != null) {
+			int cmp = symbol.compareTo(node.stock.getSymbol());
+			if (cmp == 0)
+				break;
+			path[depth] = node;
+			wentLeft[depth++] = cmp < 0;
+			if (cmp < 0)
+				node = node.left;
+			else
+				node = node.right;
+		}
+
+		if (node == null)
+			return copyPath(depth, -1, null, new Node(stock, null, null));
+		previous = node.stock;
+		return copyPath(depth, -1, null, new Node(stock, node.left, node.right));
+	}
+
+	/**
+   * Method to create a version without the stock with the given symbol.
+   * A node with two children takes the stock of its in-order successor, and the successor is left out instead.
+   * The removed stock is kept in previous.
+   * 
+   * @param root The root node of the version to start from.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The root node of the new version, or the given root if there was no stock with the symbol.
+   */
+	private Node
+	remove(Node root, String symbol) {
+		Node node = root;
+		int depth = 0;
+		while (node != null) {
+			int cmp = symbol.compareTo(node.stock.getSymbol());
+			if (cmp == 0)
+				break;
+			path[depth] = node;
+			wentLeft[depth++] = cmp < 0;
+			if (cmp < 0)
+				node = node.left;
+			else
+				node = node.right;
+		}
+		if (node == null) {
+			for (int i = 0; i < depth; i++)
+				path[i] = null;
+			return root;
+		}
+
+		previous = node.stock;
+
+		if (node.left == null || node.right == null)
+			return copyPath(depth, -1, null, (node.left != null) ? node.left : node.right);
+
+		int removedDepth = depth;
+		path[depth] = node;
+		wentLeft[depth++] = false;
+		Node minNode = node.right;
+		while (minNode.left != null) {
+			path[depth] = minNode;
+			wentLeft[depth++] = true;
+			minNode = minNode.left;
+		}
+		return copyPath(depth, removedDepth, minNode.stock, minNode.right);
+	}
+
+	/**
+   * Method to create new nodes for the recorded path from the bottom up, rebalancing each of them.
+   * The used part of the path array is cleared so it does not keep old versions alive.
+   * 
+   * @param depth The number of nodes recorded in the path array.
+   * @param replacedDepth The index of the node whose stock is replaced, or -1.
+   * @param replacement The stock to be stored in that node instead.
+   * @param child The new subtree below the deepest recorded node.
+   * @return The root node of the new version.
+   */
+	private Node
+	copyPath(int depth, int replacedDepth, Stock replacement, Node child) {
+		for (int i = depth - 1; i >= 0; i--) {
+			Node node = path[i];
+			Stock stock = (i == replacedDepth) ? replacement : node.stock;
+			if (wentLeft[i])
+				child = balance(stock, child, node.right);
+			else
+				child = balance(stock, node.left, child);
+			path[i] = null;
+		}
+		return child;
+	}
+
+	/**
+   * Method to create a balanced subtree from a stock and two subtrees whose heights differ by at most two.
+   * The same four cases as in AVLTree are handled, but the rotations create new nodes instead of modifying them.
+   * 
+   * @param stock The stock object of the subtree root.
+   * @param left The left subtree.
+   * @param right The right subtree.
+   * @return The root node of the balanced subtree.
+   */
+	private static Node
+	balance(Stock stock, Node left, Node right) {
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+
+		if (leftHeight > rightHeight + 1) {
+			if (height(left.left) >= height(left.right))
+				return new Node(left.stock, left.left, new Node(stock, left.right, right));
+			Node pivot = left.right;
+			return new Node(pivot.stock, new Node(left.stock, left.left, pivot.left), new Node(stock, pivot.right, right));
+		} else if (rightHeight > leftHeight + 1) {
+			if (height(right.right) >= height(right.left))
+				return new Node(right.stock, new Node(stock, left, right.left), right.right);
+			Node pivot = right.left;
+			return new Node(pivot.stock, new Node(stock, left, pivot.left), new Node(right.stock, pivot.right, right.right));
+		}
+		return new Node(stock, left, right);
+	}
+
+	/**
+   * Method to get the height of a node. A missing node has height 0.
+   * @param node The node to get the height of.
+   * @return The height of the node.
+   */
+	private static int
+	height(Node node) {
+		return (node != null) ? node.height : 0;
+	}
+}
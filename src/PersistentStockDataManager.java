@@ -0,0 +1,108 @@
+/**
+ * PersistentStockDataManager.java
+ * This class manages the stock data using a persistent AVL tree.
+ * It offers the same operations as StockDataManager, and in addition snapshots of the whole book that
+ * stay consistent while updates keep flowing. Searches and snapshots never lock, updates are serialized.
+ * Stocks handed out cannot be changed; updates always go through this class.
+ */
+public class PersistentStockDataManager {
+	private PersistentAVLTree tree;
+
+	/**
+   * Constructor to initialize the persistent AVL tree.
+   */
+	public PersistentStockDataManager() {
+		tree = new PersistentAVLTree();
+	}
+
+	/**
+   * Method to add or update a stock in the persistent AVL tree.
+   * If the stock already exists, it is replaced by a stock with the new values.
+   * If the stock does not exist, it is added to the tree.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return 0 if the stock is added, 1 if the stock is updated.
+   */
+	public int
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		return (tree.put(new Stock(symbol, price, volume, marketCap)) != null) ? 1 : 0;
+	}
+
+	/**
+   * Method to remove a stock from the persistent AVL tree.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if the stock was not found.
+   */
+	public Stock
+	removeStock(String symbol) {
+		return tree.remove(symbol);
+	}
+
+	/**
+   * Method to search for a stock in the latest version of the persistent AVL tree.
+   * @param symbol The symbol of the stock to be searched.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	searchStock(String symbol) {
+		return tree.search(symbol);
+	}
+
+	/**
+   * Method to update the details of a stock in the persistent AVL tree.
+   * A change of symbol becomes visible together with the new values.
+   * A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return The updated stock object, or null if the stock was not found.
+   */
+	public Stock
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		return tree.replace(symbol, new Stock(newSymbol, newPrice, newVolume, newMarketCap));
+	}
+
+	/**
+   * Get the number of stocks managed.
+   * @return The number of stocks in the latest version.
+   */
+	public int
+	size() {
+		return tree.size();
+	}
+
+	/**
+   * Method to take a point-in-time view of all stocks. Time complexity is O(1).
+   * @return The immutable snapshot of the latest version.
+   */
+	public PersistentAVLTree.Snapshot
+	snapshot() {
+		return tree.snapshot();
+	}
+
+	/**
+   * Method to print the stocks of a snapshot. Updates are not blocked while printing.
+   */
+	public void
+	printTree() {
+		OutputSink out = new OutputSink();
+		printTree(out);
+		out.flush();
+	}
+
+	/**
+   * Method to write the stocks of a snapshot to an output sink. Updates are not blocked while writing.
+   * @param out The sink to write to, which is not flushed.
+   */
+	public void
+	printTree(OutputSink out) {
+		out.println("Stocks:");
+		tree.snapshot().inOrderTraversal(out);
+	}
+}
@@ -0,0 +1,413 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * SecondaryIndex.java
+ * This class implements an AVL tree ordering stocks by one of their values, with ties broken by symbol.
+ * The rotations and the rebalancing of a node are those of AVLTree, shared through BalancedNode.
+ * It answers top-K and value range queries in O(log n + k) without scanning the whole book.
+ * The index does not watch the stocks: every change of the indexed value or of the symbol must be
+ * reported through move, or through remove before and insert after the change.
+ */
+public class SecondaryIndex {
+	/**
+   * Field enum to select the stock value an index is ordered by.
+   */
+	public enum Field {
+		PRICE, VOLUME, MARKET_CAP;
+
+		/**
+     * Get the sort key of a stock for this field.
+     * @param stock The stock object.
+     * @return The sort key of the stock.
+     */
+		public long
+		key(Stock stock) {
+			return key(stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+		}
+
+		/**
+     * Get the sort key of a stock with the given values for this field.
+     * Prices are mapped to longs that sort in the same order as the doubles.
+     * 
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
+     * @return The sort key of the values.
+     */
+		public long
+		key(double price, long volume, long marketCap) {
+			switch (this) {
+			case PRICE:
+				return priceKey(price);
+			case VOLUME:
+				return volume;
+			default:
+				return marketCap;
+			}
+		}
+	}
+
+	/**
+   * Node class to store the sort key and the stock object.
+   * The child links and the height come from BalancedNode.
+   */
+	private static class Node extends BalancedNode<Node> {
+		long key;
+		Stock stock;
+
+		/**
+     * Constructor to initialize the sort key and the stock object and set the height to 1.
+     * @param key The sort key of the stock.
+     * @param stock The stock object to be stored in the node.
+     */
+		Node(long key, Stock stock) {
+			this.key = key;
+			this.stock = stock;
+		}
+	}
+
+	/**
+   * The maximum height of the tree, as in AVLTree.
+   */
+	private static final int MAX_HEIGHT = 64;
+
+	private final Field field;
+	private Node root;
+	private int size;
+	private final Node[] path = new Node[MAX_HEIGHT];
+	private int modCount;
+
+	/**
+   * Constructor to initialize an empty index.
+   * @param field The stock value the index is ordered by.
+   */
+	public SecondaryIndex(Field field) {
+		this.field = field;
+	}
+
+	/**
+   * Get the stock value the index is ordered by.
+   * @return The field of the index.
+   */
+	public Field
+	getField() {
+		return field;
+	}
+
+	/**
+   * Insert a stock under its current value and symbol. The tree is balanced after insertion.
+   * @param stock The stock object to be inserted, which must not be in the index yet.
+   */
+	public void
+	insert(Stock stock) {
+		insert(new Node(field.key(stock), stock));
+	}
+
+	/**
+   * Remove a stock that was inserted under its current value and symbol. The tree is balanced after removal.
+   * @param stock The stock object to be removed.
+   * @return True if the stock was found and removed, false otherwise.
+   */
+	public boolean
+	remove(Stock stock) {
+		return remove(field.key(stock), stock.getSymbol()) != null;
+	}
+
+	/**
+   * Move a stock to the position of its new values, before the values of the stock are changed.
+   * Nothing is done if the indexed value does not change, so a price tick leaves a volume index alone.
+   * 
+   * @param stock The stock object, still holding its indexed values.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   */
+	public void
+	move(Stock stock, double price, long volume, long marketCap) {
+		long newKey = field.key(price, volume, marketCap);
+		long key = field.key(stock);
+		if (newKey == key)
+			return;
+		Node node = remove(key, stock.getSymbol());
+		if (node == null)
+			return;
+		node.key = newKey;
+		node.stock = stock;
+		node.left = null;
+		node.right = null;
+		node.height = 1;
+		insert(node);
+	}
+
+	/**
+   * Remove every stock from the index.
+   */
+	public void
+	clear() {
+		root = null;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+   * Get the number of stocks in the index.
+   * @return The number of stocks.
+   */
+	public int
+	size() {
+		return size;
+	}
+
+	/**
+   * Get a sequential stream of the k stocks with the highest values, highest first.
+   * Ties are returned in descending symbol order. Time complexity is O(log n + k).
+   * 
+   * @param k The maximum number of stocks to be returned.
+   * @return The stream of the top stocks.
+   */
+	public Stream<Stock>
+	top(int k) {
+		return stream(new EntryIterator(true, Long.MAX_VALUE, Long.MIN_VALUE)).limit(Math.max(k, 0));
+	}
+
+	/**
+   * Get a sequential stream of the stocks with values in [low, high], lowest first.
+   * Ties are returned in symbol order. Time complexity is O(log n + k) for k stocks in the range.
+   * 
+   * @param low The inclusive lower bound of the value.
+   * @param high The inclusive upper bound of the value.
+   * @return The stream of stocks in the range.
+   */
+	public Stream<Stock>
+	range(double low, double high) {
+		long lowKey;
+		long highKey;
+		if (field == Field.PRICE) {
+			lowKey = priceKey(low);
+			highKey = priceKey(high);
+		} else {
+			lowKey = (long)Math.ceil(low);
+			highKey = (long)Math.floor(high);
+		}
+		return stream(new EntryIterator(false, lowKey, highKey));
+	}
+
+	/**
+   * Method to map a price to a long that sorts in the same order as the price.
+   * Negative doubles sort in reverse order as raw bits, so their magnitude bits are flipped.
+   * 
+   * @param price The price to be mapped.
+   * @return The sort key of the price.
+   */
+	private static long
+	priceKey(double price) {
+		long bits = Double.doubleToLongBits(price);
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+   * Method to compare a sort key and a symbol with the entry of a node.
+   * @param key The sort key.
+   * @param symbol The symbol breaking ties.
+   * @param node The node to be compared with.
+   * @return A negative number, zero or a positive number if the entry is less than, equal to or greater than the node.
+   */
+	private static int
+	compare(long key, String symbol, Node node) {
+		int cmp = Long.compare(key, node.key);
+		return (cmp != 0) ? cmp : symbol.compareTo(node.stock.getSymbol());
+	}
+
+	/**
+   * Method to link a node at the position of its entry and rebalance its ancestors.
+   * @param newNode The node to be linked, without children.
+   */
+	private void
+	insert(Node newNode) {
+		String symbol = newNode.stock.getSymbol();
+		Node node = root;
+		int depth = 0;
+		int cmp = 0;
+		while (node != null) {
+			cmp = compare(newNode.key, symbol, node);
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = node.left;
+			} else {
+				path[depth++] = node;
+				node = node.right;
+			}
+		}
+
+		if (depth == 0)
+			root = newNode;
+		else if (cmp < 0)
+			path[depth - 1].left = newNode;
+		else
+			path[depth - 1].right = newNode;
+		size++;
+		modCount++;
+		rebalancePath(depth);
+	}
+
+	/**
+   * Method to unlink the node of an entry and rebalance its ancestors.
+   * A node with two children takes the entry of its in-order successor, and the successor node is unlinked instead.
+   * 
+   * @param key The sort key of the entry.
+   * @param symbol The symbol of the entry.
+   * @return The node that was taken out of the tree, or null if the entry was not found.
+   */
+	private Node
+	remove(long key, String symbol) {
+		Node node = root;
+		int depth = 0;
+		while (node != null) {
+			int cmp = compare(key, symbol, node);
+			if (cmp < 0) {
+				path[depth++] = node;
+				node = node.left;
+			} else if (cmp > 0) {
+				path[depth++] = node;
+				node = node.right;
+			} else {
+				break;
+			}
+		}
+		if (node == null) {
+			for (int i = 0; i < depth; i++)
+				path[i] = null;
+			return null;
+		}
+
+		if (node.left != null && node.right != null) {
+			path[depth++] = node;
+			Node minNode = node.right;
+			while (minNode.left != null) {
+				path[depth++] = minNode;
+				minNode = minNode.left;
+			}
+			Stock stock = node.stock;
+			node.key = minNode.key;
+			node.stock = minNode.stock;
+			minNode.key = key;
+			minNode.stock = stock;
+			node = minNode;
+		}
+
+		Node child = (node.left != null) ? node.left : node.right;
+		if (depth == 0)
+			root = child;
+		else
+			BalancedNode.replaceChild(path[depth - 1], node, child);
+		size--;
+		modCount++;
+		rebalancePath(depth);
+		return node;
+	}
+
+	/**
+   * Method to rebalance the nodes recorded in the path array from the deepest one up to the root.
+   * @param depth The number of nodes recorded in the path array.
+   */
+	private void
+	rebalancePath(int depth) {
+		for (int i = depth - 1; i >= 0; i--) {
+			Node node = path[i];
+			Node newNode = BalancedNode.balance(node);
+			path[i] = null;
+
+			if (i == 0)
+				root = newNode;
+			else if (newNode != node)
+				BalancedNode.replaceChild(path[i - 1], node, newNode);
+		}
+	}
+
+	/**
+   * Method to wrap an iterator into an ordered sequential stream.
+   * @param iterator The iterator over the stocks.
+   * @return The stream of stocks.
+   */
+	private static Stream<Stock>
+	stream(Iterator<Stock> iterator) {
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+	}
+
+	/**
+   * EntryIterator class to walk the entries in ascending or descending order between two sort keys.
+   * The path to the next entry is kept on an explicit stack, so only the returned entries are visited.
+   */
+	private class EntryIterator implements Iterator<Stock> {
+		private final boolean descending;
+		private final long toKey;
+		private final Node[] stack;
+		private final int expectedModCount;
+		private int top;
+
+		/**
+     * Constructor to seek to the first entry in iteration order that is not before the start key.
+     * 
+     * @param descending True to iterate from high to low values, false for low to high.
+     * @param fromKey The inclusive sort key to start from.
+     * @param toKey The inclusive sort key to stop at.
+     */
+		EntryIterator(boolean descending, long fromKey, long toKey) {
+			this.descending = descending;
+			this.toKey = toKey;
+			this.stack = new Node[(root != null) ? root.height : 0];
+			this.expectedModCount = modCount;
+			Node node = root;
+			while (node != null) {
+				if (descending ? node.key <= fromKey : node.key >= fromKey) {
+					stack[top++] = node;
+					node = descending ? node.right : node.left;
+				} else {
+					node = descending ? node.left : node.right;
+				}
+			}
+		}
+
+		/**
+     * Method to check whether there is another stock before the stop key.
+     * @return True if there is another stock, false otherwise.
+     */
+		@Override
+		public boolean
+		hasNext() {
+			if (top == 0)
+				return false;
+			long key = stack[top - 1].key;
+			return descending ? key >= toKey : key <= toKey;
+		}
+
+		/**
+     * Method to return the next stock and advance to the following one.
+     * @return The next stock object.
+     * @throws NoSuchElementException If there are no more stocks.
+     * @throws ConcurrentModificationException If the index was modified during the iteration.
+     */
+		@Override
+		public Stock
+		next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Node node = stack[--top];
+			Node child = descending ? node.left : node.right;
+			while (child != null) {
+				stack[top++] = child;
+				child = descending ? child.right : child.left;
+			}
+			return node.stock;
+		}
+	}
+}
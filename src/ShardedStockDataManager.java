@@ -0,0 +1,284 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ShardedStockDataManager.java
+ * This class manages the stock data in a number of independent StockDataManager shards.
+ * Each symbol belongs to the shard chosen by its hash, so point operations touch one shard only,
+ * and a ParallelReplay can apply the commands of different shards on different threads.
+ * An update that changes the symbol moves the stock to the shard of the new symbol.
+ * Ordered views merge the ordered views of the shards with a k-way merge.
+ * The class is not thread-safe; parallel use goes through ParallelReplay, which gives each shard one thread.
+ */
+public class ShardedStockDataManager {
+	private final StockDataManager[] shards;
+
+	/**
+   * Constructor to initialize the shards.
+   * @param shardCount The number of shards, at least 1.
+   * @throws IllegalArgumentException If the number of shards is less than 1.
+   */
+	public ShardedStockDataManager(int shardCount) {
+		if (shardCount < 1)
+			throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+		shards = new StockDataManager[shardCount];
+		for (int i = 0; i < shardCount; i++)
+			shards[i] = new StockDataManager();
+	}
+
+	/**
+   * Get the number of shards.
+   * @return The number of shards.
+   */
+	public int
+	getShardCount() {
+		return shards.length;
+	}
+
+	/**
+   * Method to find the shard a symbol belongs to.
+   * The hash of the symbol is spread like in HashMap, so symbols that differ only in their last
+   * characters still spread over all shards.
+   * 
+   * @param symbol The symbol.
+   * @return The index of the shard.
+   */
+	public int
+	shardOf(String symbol) {
+		int hash = symbol.hashCode();
+		hash ^= hash >>> 16;
+		return Math.floorMod(hash * 0x9E3779B9, shards.length);
+	}
+
+	/**
+   * Get a shard. The shard must only be used by the thread that owns it.
+   * @param index The index of the shard.
+   * @return The shard.
+   */
+	StockDataManager
+	shard(int index) {
+		return shards[index];
+	}
+
+	/**
+   * Method to add or update a stock in its shard.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return 0 if the stock is added, 1 if the stock is updated.
+   */
+	public int
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		return shards[shardOf(symbol)].addOrUpdateStock(symbol, price, volume, marketCap);
+	}
+
+	/**
+   * Method to remove a stock from its shard.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if the stock was not found.
+   */
+	public Stock
+	removeStock(String symbol) {
+		return shards[shardOf(symbol)].removeStock(symbol);
+	}
+
+	/**
+   * Method to search for a stock in its shard.
+   * @param symbol The symbol of the stock to be searched.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	searchStock(String symbol) {
+		return shards[shardOf(symbol)].searchStock(symbol);
+	}
+
+	/**
+   * Method to update the details of a stock. If the new symbol belongs to another shard,
+   * the stock is removed from its shard and added to the shard of the new symbol,
+   * replacing a stock already stored under the new symbol.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return The updated stock object, or null if the stock was not found.
+   */
+	public Stock
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		int from = shardOf(symbol);
+		int to = shardOf(newSymbol);
+		if (from == to)
+			return shards[from].updateStock(symbol, newSymbol, newPrice, newVolume, newMarketCap);
+		if (shards[from].removeStock(symbol) == null)
+			return null;
+		shards[to].addOrUpdateStock(newSymbol, newPrice, newVolume, newMarketCap);
+		return shards[to].searchStock(newSymbol);
+	}
+
+	/**
+   * Method to stream the stocks with symbols in [fromSymbol, toSymbol) of all shards in symbol order.
+   * The ranges of the shards are merged with a priority queue holding the next stock of each shard,
+   * so each stock costs O(log k) for k shards.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of the stocks in the range.
+   */
+	public Stream<Stock>
+	rangeStocks(String fromSymbol, String toSymbol) {
+		List<Iterator<Stock>> iterators = new ArrayList<>(shards.length);
+		for (StockDataManager shard : shards)
+			iterators.add(shard.rangeStocks(fromSymbol, toSymbol).iterator());
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new MergeIterator(iterators), characteristics), false);
+	}
+
+	/**
+   * Get the number of stocks in all shards.
+   * @return The number of stocks.
+   */
+	public int
+	size() {
+		int size = 0;
+		for (StockDataManager shard : shards)
+			size += shard.size();
+		return size;
+	}
+
+	/**
+   * Get the height of the tallest shard.
+   * @return The maximum height of the AVL trees of the shards.
+   */
+	public int
+	getHeight() {
+		int height = 0;
+		for (StockDataManager shard : shards)
+			height = Math.max(height, shard.getHeight());
+		return height;
+	}
+
+	/**
+   * Method to verify the AVL trees of all shards.
+   * @return True if the AVL tree invariants hold in every shard, false otherwise.
+   */
+	public boolean
+	isBalanced() {
+		for (StockDataManager shard : shards) {
+			if (!shard.isBalanced())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+   * Method to print the stocks of all shards in symbol order.
+   */
+	public void
+	printTree() {
+		OutputSink out = new OutputSink();
+		printTree(out);
+		out.flush();
+	}
+
+	/**
+   * Method to write the stocks of all shards in symbol order to an output sink, one per line.
+   * The shards have separate trees, so the stocks are not indented by their level.
+   * @param out The sink to write to, which is not flushed.
+   */
+	public void
+	printTree(OutputSink out) {
+		out.println("Stocks:");
+		Iterator<Stock> stocks = rangeStocks(null, null).iterator();
+		while (stocks.hasNext())
+			out.print(stocks.next()).println();
+	}
+
+	/**
+   * Iterator class that merges iterators over stocks in symbol order into one iterator in symbol order.
+   */
+	private static class MergeIterator implements Iterator<Stock> {
+		/**
+     * The iterators that are not exhausted, ordered by their next stock.
+     */
+		private final PriorityQueue<Head> heads;
+
+		/**
+     * Constructor to fill the queue with the iterators that have a stock.
+     * @param iterators The iterators to be merged.
+     */
+		MergeIterator(List<Iterator<Stock>> iterators) {
+			heads = new PriorityQueue<>(Math.max(iterators.size(), 1));
+			for (Iterator<Stock> iterator : iterators) {
+				if (iterator.hasNext())
+					heads.add(new Head(iterator));
+			}
+		}
+
+		/**
+     * Method to check whether any iterator has another stock.
+     * @return True if there is another stock, false otherwise.
+     */
+		@Override
+		public boolean
+		hasNext() {
+			return !heads.isEmpty();
+		}
+
+		/**
+     * Method to return the least next stock of all iterators and advance that iterator.
+     * @return The next stock in symbol order.
+     * @throws NoSuchElementException If there are no more stocks.
+     */
+		@Override
+		public Stock
+		next() {
+			Head head = heads.poll();
+			if (head == null)
+				throw new NoSuchElementException();
+			Stock stock = head.stock;
+			if (head.iterator.hasNext()) {
+				head.stock = head.iterator.next();
+				heads.add(head);
+			}
+			return stock;
+		}
+	}
+
+	/**
+   * Class holding an iterator together with its next stock, ordered by the symbol of that stock.
+   */
+	private static class Head implements Comparable<Head> {
+		private final Iterator<Stock> iterator;
+		private Stock stock;
+
+		/**
+     * Constructor to take the first stock of an iterator.
+     * @param iterator The iterator, which must have a stock.
+     */
+		Head(Iterator<Stock> iterator) {
+			this.iterator = iterator;
+			this.stock = iterator.next();
+		}
+
+		/**
+     * Method to compare the next stocks of two iterators by symbol.
+     * @param other The other head.
+     * @return A negative number, zero or a positive number if this symbol is less than, equal to or greater than the other.
+     */
+		@Override
+		public int
+		compareTo(Head other) {
+			return stock.getSymbol().compareTo(other.stock.getSymbol());
+		}
+	}
+}
@@ -22,6 +22,14 @@ public class Stock {
 		this.marketCap = marketCap;
 	}
 
+	/**
+   * Copy constructor to create a stock object with the same values as another one.
+   * @param stock The stock to be copied.
+   */
+	public Stock(Stock stock) {
+		this(stock.symbol, stock.price, stock.volume, stock.marketCap);
+	}
+
 	/**
    * Get the symbol of the stock.
    * @return The symbol of the stock.
@@ -101,7 +109,34 @@ public class Stock {
 	@Override
 	public String
 	toString() {
-		return "Stock [symbol=" + symbol + ", price=" + price + ", volume=" + volume +
-			", marketCap=" + marketCap + "]";
+		return appendTo(new StringBuilder(64)).toString();
+	}
+
+	/**
+   * Method to append the string representation of the stock to a builder, so that
+   * output can reuse one builder instead of creating a string per stock.
+   * @param builder The builder to append to.
+   * @return The builder.
+   */
+	public StringBuilder
+	appendTo(StringBuilder builder) {
+		return appendTo(builder, symbol, price, volume, marketCap);
+	}
+
+	/**
+   * Method to append the string representation of a stock given by its values to a builder,
+   * for trees that keep the values instead of stock objects.
+   * 
+   * @param builder The builder to append to.
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return The builder.
+   */
+	public static StringBuilder
+	appendTo(StringBuilder builder, String symbol, double price, long volume, long marketCap) {
+		return builder.append("Stock [symbol=").append(symbol).append(", price=").append(price)
+			.append(", volume=").append(volume).append(", marketCap=").append(marketCap).append(']');
 	}
 }
@@ -0,0 +1,290 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * StockCache.java
+ * This class implements a bounded cache from symbols to stocks with the S3-FIFO eviction policy.
+ * New stocks enter a small FIFO queue holding a tenth of the cache. Stocks that are read again before they
+ * leave it move to the main FIFO queue, the others are dropped and only their symbol is remembered in a ghost
+ * queue. A stock whose symbol is still in the ghost queue enters the main queue directly. The main queue gives
+ * every stock one more round per read, up to three, before it is evicted.
+ * A scan of symbols that are read once only passes through the small queue, so it cannot push the hot
+ * stocks out of the main queue. The cache keeps its own copies of the stocks and hands out copies.
+ * The class is not thread-safe.
+ */
+public class StockCache {
+	/**
+   * The highest read count of an entry, which is the number of extra rounds it gets in the main queue.
+   */
+	private static final int MAX_FREQUENCY = 3;
+
+	private final int capacity;
+	/**
+   * The number of entries the small queue may hold before it is evicted from first.
+   */
+	private final int smallCapacity;
+	private final HashMap<String, Entry> entries;
+	/**
+   * The sentinels of the small and main queues, which are circular lists. New entries go in before the sentinel,
+   * and the entry after the sentinel is the oldest.
+   */
+	private final Entry small = new Entry(null);
+	private final Entry main = new Entry(null);
+	private int smallSize;
+	/**
+   * The symbols recently evicted from the small queue, oldest first.
+   */
+	private final LinkedHashMap<String, Boolean> ghosts;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+   * Constructor to create an empty cache.
+   * @param capacity The maximum number of stocks in the cache, at least 1.
+   * @throws IllegalArgumentException If the capacity is less than 1.
+   */
+	public StockCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+		this.capacity = capacity;
+		this.smallCapacity = Math.max(capacity / 10, 1);
+		this.entries = new HashMap<>(capacity * 2);
+		this.ghosts = new LinkedHashMap<>(capacity * 2);
+	}
+
+	/**
+   * Method to look up a stock and count the hit or miss.
+   * @param symbol The symbol of the stock.
+   * @return A copy of the cached stock, or null if the stock is not cached.
+   */
+	public Stock
+	get(String symbol) {
+		Entry entry = entries.get(symbol);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		if (entry.frequency < MAX_FREQUENCY)
+			entry.frequency++;
+		return new Stock(entry.stock);
+	}
+
+	/**
+   * Method to cache a stock that was not cached, evicting another stock if the cache is full.
+   * A stock already cached under the symbol is replaced.
+   * @param stock The stock, of which the cache keeps a copy.
+   */
+	public void
+	put(Stock stock) {
+		Entry entry = entries.get(stock.getSymbol());
+		if (entry != null) {
+			entry.stock = new Stock(stock);
+			return;
+		}
+		entry = new Entry(new Stock(stock));
+		entries.put(stock.getSymbol(), entry);
+		if (ghosts.remove(stock.getSymbol()) != null) {
+			entry.inMain = true;
+			link(main, entry);
+		} else {
+			link(small, entry);
+			smallSize++;
+		}
+		while (entries.size() > capacity)
+			evict();
+	}
+
+	/**
+   * Method to change the values of a cached stock, which keeps its place in the cache.
+   * Nothing happens if the stock is not cached.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   */
+	public void
+	update(String symbol, double price, long volume, long marketCap) {
+		Entry entry = entries.get(symbol);
+		if (entry == null)
+			return;
+		entry.stock.setPrice(price);
+		entry.stock.setVolume(volume);
+		entry.stock.setMarketCap(marketCap);
+	}
+
+	/**
+   * Method to drop a stock from the cache, for example because it was removed or renamed.
+   * @param symbol The symbol of the stock.
+   */
+	public void
+	invalidate(String symbol) {
+		Entry entry = entries.remove(symbol);
+		if (entry == null)
+			return;
+		unlink(entry);
+		if (!entry.inMain)
+			smallSize--;
+	}
+
+	/**
+   * Method to drop all stocks from the cache. The counters are kept.
+   */
+	public void
+	clear() {
+		entries.clear();
+		ghosts.clear();
+		small.next = small.previous = small;
+		main.next = main.previous = main;
+		smallSize = 0;
+	}
+
+	/**
+   * Get the number of cached stocks.
+   * @return The number of stocks in the cache.
+   */
+	public int
+	size() {
+		return entries.size();
+	}
+
+	/**
+   * Get the maximum number of cached stocks.
+   * @return The capacity of the cache.
+   */
+	public int
+	getCapacity() {
+		return capacity;
+	}
+
+	/**
+   * Get the number of lookups that found the stock in the cache.
+   * @return The number of hits.
+   */
+	public long
+	getHits() {
+		return hits;
+	}
+
+	/**
+   * Get the number of lookups that did not find the stock in the cache.
+   * @return The number of misses.
+   */
+	public long
+	getMisses() {
+		return misses;
+	}
+
+	/**
+   * Get the number of stocks evicted to make room for others. Invalidated stocks are not counted.
+   * @return The number of evictions.
+   */
+	public long
+	getEvictions() {
+		return evictions;
+	}
+
+	/**
+   * Method to make room for one stock. The small queue is evicted from while it holds more than its share,
+   * otherwise the main queue. Entries that were read get another round instead of being evicted.
+   */
+	private void
+	evict() {
+		while (true) {
+			if (smallSize > smallCapacity || main.next == main) {
+				Entry oldest = small.next;
+				unlink(oldest);
+				smallSize--;
+				if (oldest.frequency > 0) {
+					oldest.frequency = 0;
+					oldest.inMain = true;
+					link(main, oldest);
+					continue;
+				}
+				drop(oldest);
+				remember(oldest.stock.getSymbol());
+				return;
+			}
+			Entry oldest = main.next;
+			unlink(oldest);
+			if (oldest.frequency > 0) {
+				oldest.frequency--;
+				link(main, oldest);
+				continue;
+			}
+			drop(oldest);
+			return;
+		}
+	}
+
+	/**
+   * Method to remove an evicted entry from the lookup table and count it.
+   * @param entry The entry, already unlinked from its queue.
+   */
+	private void
+	drop(Entry entry) {
+		entries.remove(entry.stock.getSymbol());
+		evictions++;
+	}
+
+	/**
+   * Method to remember a symbol evicted from the small queue, forgetting the oldest one if the ghost queue is full.
+   * The ghost queue holds as many symbols as the main queue holds stocks.
+   * @param symbol The symbol.
+   */
+	private void
+	remember(String symbol) {
+		ghosts.put(symbol, Boolean.TRUE);
+		if (ghosts.size() > capacity - smallCapacity) {
+			Iterator<String> oldest = ghosts.keySet().iterator();
+			oldest.next();
+			oldest.remove();
+		}
+	}
+
+	/**
+   * Method to append an entry to a queue as its newest entry.
+   * @param queue The sentinel of the queue.
+   * @param entry The entry.
+   */
+	private static void
+	link(Entry queue, Entry entry) {
+		entry.previous = queue.previous;
+		entry.next = queue;
+		queue.previous.next = entry;
+		queue.previous = entry;
+	}
+
+	/**
+   * Method to take an entry out of its queue.
+   * @param entry The entry.
+   */
+	private static void
+	unlink(Entry entry) {
+		entry.previous.next = entry.next;
+		entry.next.previous = entry.previous;
+		entry.previous = entry.next = null;
+	}
+
+	/**
+   * Class holding a cached stock with its place in a queue.
+   */
+	private static class Entry {
+		private Stock stock;
+		private int frequency;
+		private boolean inMain;
+		private Entry previous = this;
+		private Entry next = this;
+
+		/**
+     * Constructor to hold a stock, or to be the sentinel of a queue.
+     * @param stock The stock, or null for a sentinel.
+     */
+		Entry(Stock stock) {
+			this.stock = stock;
+		}
+	}
+}
@@ -1,21 +1,69 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 /**
  * StockDataManager.java
  * This class manages the stock data using an AVL tree.
+ * A hash index from symbol to stock is kept in lockstep with the AVL tree, so point lookups and
+ * existence checks are O(1), while the AVL tree serves the ordered traversal and the range totals.
+ * Stocks handed out must not be changed directly, otherwise the range totals go stale.
  */
-public class StockDataManager {
+public class StockDataManager implements StockStore {
 	private AVLTree avlTree;
+	private SymbolIndex index;
+	/**
+   * The optional indexes ordered by price, volume and market capitalization, by field ordinal, or null if not kept.
+   */
+	private SecondaryIndex[] secondaryIndexes;
 
 	/**
-    * Constructor to initialize the AVL tree.
+    * Constructor to initialize the AVL tree and the hash index.
     */
 	public StockDataManager() {
 		avlTree = new AVLTree();
+		index = new SymbolIndex();
+		secondaryIndexes = new SecondaryIndex[SecondaryIndex.Field.values().length];
+	}
+
+	/**
+   * Method to start keeping a secondary index ordered by one of the stock values.
+   * The index is filled with the current stocks and kept current by every later update.
+   * Updates then also move the stock in the index when the indexed value changes.
+   * 
+   * @param field The stock value the index is ordered by.
+   */
+	public void
+	addSecondaryIndex(SecondaryIndex.Field field) {
+		if (secondaryIndexes[field.ordinal()] != null)
+			return;
+		SecondaryIndex secondaryIndex = new SecondaryIndex(field);
+		for (Stock stock : avlTree)
+			secondaryIndex.insert(stock);
+		secondaryIndexes[field.ordinal()] = secondaryIndex;
+	}
+
+	/**
+   * Method to stop keeping a secondary index.
+   * @param field The stock value the index is ordered by.
+   */
+	public void
+	removeSecondaryIndex(SecondaryIndex.Field field) {
+		secondaryIndexes[field.ordinal()] = null;
 	}
 
 	/**
    * Method to add or update a stock in the AVL tree.
    * If the stock already exists, it is updated with the new values.
    * If the stock does not exist, it is added to the tree.
+   * The existence check uses the hash index. An update walks the tree once to refresh the
+   * range aggregates of the ancestors, and an addition walks it once.
    * 
    * @param symbol The symbol of the stock.
    * @param price The price of the stock.
@@ -23,61 +71,527 @@ public class StockDataManager {
    * @param marketCap The market capitalization of the stock.
    * @return 0 if the stock is added, 1 if the stock is updated.
    */
+	@Override
 	public int
 	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
-		Stock existingStock = avlTree.search(symbol);
+		Stock existingStock = index.get(symbol);
 		if (existingStock != null) {
-			existingStock.setPrice(price);
-			existingStock.setVolume(volume);
-			existingStock.setMarketCap(marketCap);
+			moveSecondary(existingStock, price, volume, marketCap);
+			avlTree.updateValues(symbol, price, volume, marketCap);
 			return 1;
-		} else {
-			Stock newStock = new Stock(symbol, price, volume, marketCap);
-			avlTree.insert(newStock);
-			return 0;
 		}
+		Stock newStock = new Stock(symbol, price, volume, marketCap);
+		avlTree.insert(newStock);
+		index.put(newStock);
+		insertSecondary(newStock);
+		return 0;
+	}
+
+	/**
+   * Method to add or update many stocks at once, for example on a cold start.
+   * Stocks that already exist are updated with the new values. The new stocks are stored as given
+   * and inserted into the AVL tree as one batch, which is built in linear time from sorted input
+   * and merged by split and join into a tree that is not empty. If a symbol occurs more than once,
+   * the last stock with the symbol wins.
+   * 
+   * @param stocks The stock objects to be added or updated.
+   * @return The number of stocks added.
+   */
+	public int
+	addAll(Collection<Stock> stocks) {
+		Map<String, Stock> added = new LinkedHashMap<>();
+		for (Stock stock : stocks) {
+			String symbol = stock.getSymbol();
+			Stock existingStock = index.get(symbol);
+			if (existingStock != null) {
+				moveSecondary(existingStock, stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+				avlTree.updateValues(symbol, stock.getPrice(), stock.getVolume(), stock.getMarketCap());
+			} else {
+				added.put(symbol, stock);
+			}
+		}
+
+		avlTree.insertAll(added.values());
+		for (Stock stock : added.values()) {
+			index.put(stock);
+			insertSecondary(stock);
+		}
+		return added.size();
 	}
 
 	/**
    * Method to remove a stock from the AVL tree.
    * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if the stock was not found.
    */
-	public void
+	@Override
+	public Stock
 	removeStock(String symbol) {
-		avlTree.delete(symbol);
+		Stock removed = index.remove(symbol);
+		if (removed != null) {
+			avlTree.delete(symbol);
+			removeSecondary(removed);
+		}
+		return removed;
+	}
+
+	/**
+   * Method to remove all stocks with symbols in [fromSymbol, toSymbol), for example a delisted segment.
+   * The AVL tree is split at both bounds in O(log n) time, and only the removed stocks are visited
+   * to drop them from the hash index and the secondary indexes.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks removed.
+   */
+	public int
+	removeRange(String fromSymbol, String toSymbol) {
+		AVLTree removed = avlTree.removeRange(fromSymbol, toSymbol);
+		for (Stock stock : removed) {
+			index.remove(stock.getSymbol());
+			removeSecondary(stock);
+		}
+		return removed.size();
+	}
+
+	/**
+   * Method to add copies of all stocks of another manager. A copied stock replaces the stock stored
+   * under the same symbol here. The other manager is not changed.
+   * 
+   * @param other The manager whose stocks are copied.
+   * @return The number of stocks added, not counting the replaced ones.
+   */
+	public int
+	union(StockDataManager other) {
+		return unionAll(other.rangeStocks(null, null).map(Stock::new).collect(Collectors.toList()));
+	}
+
+	/**
+   * Method to keep only the stocks whose symbols are also managed by another manager.
+   * The other manager is not changed.
+   * 
+   * @param other The manager holding the symbols to be kept.
+   * @return The number of stocks removed.
+   */
+	public int
+	intersect(StockDataManager other) {
+		return intersectAll(other.rangeStocks(null, null).collect(Collectors.toList())).size();
+	}
+
+	/**
+   * Method to remove the stocks whose symbols are managed by another manager.
+   * The other manager is not changed.
+   * 
+   * @param other The manager holding the symbols to be removed.
+   * @return The number of stocks removed.
+   */
+	public int
+	difference(StockDataManager other) {
+		return differenceAll(other.rangeStocks(null, null).collect(Collectors.toList())).size();
 	}
 
 	/**
-   * Method to search for a stock in the AVL tree.
+   * Method to merge stocks sorted by symbol into this manager, replacing stocks with the same symbol.
+   * The stocks are built into a temporary AVL tree in linear time and merged by a join-based union.
+   * 
+   * @param stocks The stock objects sorted by symbol, which are stored as given.
+   * @return The number of stocks added, not counting the replaced ones.
+   */
+	protected int
+	unionAll(List<Stock> stocks) {
+		int size = avlTree.size();
+		AVLTree other = new AVLTree();
+		other.insertAll(stocks);
+		avlTree.union(other);
+		for (Stock stock : stocks) {
+			Stock replaced = index.put(stock);
+			if (replaced != null)
+				removeSecondary(replaced);
+			insertSecondary(stock);
+		}
+		return avlTree.size() - size;
+	}
+
+	/**
+   * Method to keep only the stocks whose symbols occur in a list sorted by symbol.
+   * The symbols are built into a temporary AVL tree in linear time and intersected by a join-based intersection,
+   * which reports the stocks it drops, so only those are removed from the hash index and the secondary indexes.
+   * 
+   * @param stocks The stock objects sorted by symbol, which are only used for their symbols.
+   * @return The removed stock objects.
+   */
+	protected List<Stock>
+	intersectAll(List<Stock> stocks) {
+		AVLTree other = new AVLTree();
+		other.insertAll(stocks);
+		List<Stock> removed = avlTree.intersect(other);
+		for (Stock stock : removed) {
+			index.remove(stock.getSymbol());
+			removeSecondary(stock);
+		}
+		return removed;
+	}
+
+	/**
+   * Method to remove the stocks whose symbols occur in a list sorted by symbol.
+   * The symbols are built into a temporary AVL tree in linear time and removed by a join-based difference.
+   * 
+   * @param stocks The stock objects sorted by symbol, which are only used for their symbols.
+   * @return The removed stock objects, in symbol order.
+   */
+	protected List<Stock>
+	differenceAll(List<Stock> stocks) {
+		AVLTree other = new AVLTree();
+		other.insertAll(stocks);
+		avlTree.difference(other);
+		List<Stock> removed = new ArrayList<>();
+		for (Stock stock : stocks) {
+			Stock stored = index.remove(stock.getSymbol());
+			if (stored != null) {
+				removeSecondary(stored);
+				removed.add(stored);
+			}
+		}
+		return removed;
+	}
+
+	/**
+   * Method to search for a stock using the hash index.
    * @param symbol The symbol of the stock to be searched.
    * @return The stock object if found, null otherwise.
    */
+	@Override
 	public Stock
 	searchStock(String symbol) {
-		return avlTree.search(symbol);
+		return index.get(symbol);
+	}
+
+	/**
+   * Method to get the stock with the greatest symbol less than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	floorStock(String symbol) {
+		return avlTree.floor(symbol);
+	}
+
+	/**
+   * Method to get the stock with the least symbol greater than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	ceilingStock(String symbol) {
+		return avlTree.ceiling(symbol);
+	}
+
+	/**
+   * Method to get the stock with the least symbol strictly greater than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	higherStock(String symbol) {
+		return avlTree.higher(symbol);
+	}
+
+	/**
+   * Method to get the stock with the greatest symbol strictly less than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock object if found, null otherwise.
+   */
+	@Override
+	public Stock
+	lowerStock(String symbol) {
+		return avlTree.lower(symbol);
+	}
+
+	/**
+   * Method to stream the stocks with symbols in [fromSymbol, toSymbol) in symbol order.
+   * The stream seeks to the first symbol in O(log n) and visits only the stocks it yields.
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of stocks in the range.
+   */
+	@Override
+	public Stream<Stock>
+	rangeStocks(String fromSymbol, String toSymbol) {
+		return avlTree.range(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Method to stream the stocks whose symbols start with the given prefix in symbol order.
+   * @param prefix The prefix of the symbols.
+   * @return The stream of stocks with the prefix.
+   */
+	public Stream<Stock>
+	prefixStocks(String prefix) {
+		return avlTree.prefix(prefix);
+	}
+
+	/**
+   * Method to search for a stock while another thread may be modifying the hash index.
+   * The search always terminates without throwing, but its result is only meaningful if no
+   * modification happened meanwhile, which the caller has to check.
+   * 
+   * @param symbol The symbol of the stock to be searched.
+   * @return The stock object if found, null otherwise.
+   */
+	protected Stock
+	searchStockConcurrent(String symbol) {
+		return index.getConcurrent(symbol);
 	}
 
 	/**
    * Method to update the details of a stock in the AVL tree.
+   * If the symbol changes, the stock is rekeyed in the AVL tree together with its new values in a single
+   * descent, in place when the order allows it.
+   * A stock already stored under the new symbol is replaced.
+   * 
    * @param symbol The symbol of the stock to be updated.
    * @param newSymbol The new symbol of the stock.
    * @param newPrice The new price of the stock.
    * @param newVolume The new volume of the stock.
    * @param newMarketCap The new market capitalization of the stock.
+   * @return The updated stock object, or null if the stock was not found.
    */
-	public void
+	@Override
+	public Stock
 	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
-		Stock stock = avlTree.search(symbol);
-		if (stock != null) {
-			stock.setPrice(newPrice);
-			stock.setVolume(newVolume);
-			stock.setMarketCap(newMarketCap);
-			if (!symbol.equals(newSymbol)) {
-				avlTree.delete(symbol);
-				stock.setSymbol(newSymbol);
-				avlTree.insert(stock);
+		Stock stock = index.get(symbol);
+		if (stock == null)
+			return null;
+		if (symbol.equals(newSymbol)) {
+			moveSecondary(stock, newPrice, newVolume, newMarketCap);
+			avlTree.updateValues(symbol, newPrice, newVolume, newMarketCap);
+			return stock;
+		}
+
+		removeSecondary(stock);
+		index.remove(symbol);
+		avlTree.rekey(symbol, newSymbol, newPrice, newVolume, newMarketCap);
+		Stock replaced = index.put(stock);
+		if (replaced != null)
+			removeSecondary(replaced);
+		insertSecondary(stock);
+		return stock;
+	}
+
+	/**
+   * Method to rename many stocks at once, for example during corporate actions.
+   * All renames are applied simultaneously, and a stock already stored under a new symbol is replaced.
+   * 
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	@Override
+	public int
+	renameStocks(Map<String, String> renames) {
+		List<Stock> renamed = new ArrayList<>();
+		for (String symbol : renames.keySet()) {
+			Stock stock = index.remove(symbol);
+			if (stock != null) {
+				removeSecondary(stock);
+				renamed.add(stock);
+			}
+		}
+		int count = avlTree.rekeyAll(renames);
+
+		Set<String> newSymbols = new HashSet<>();
+		boolean collisions = false;
+		for (Stock stock : renamed)
+			collisions |= !newSymbols.add(stock.getSymbol());
+		for (Stock stock : renamed) {
+			if (!collisions || avlTree.search(stock.getSymbol()) == stock) {
+				Stock replaced = index.put(stock);
+				if (replaced != null)
+					removeSecondary(replaced);
+				insertSecondary(stock);
 			}
 		}
+		return count;
+	}
+
+	/**
+   * Method to stream the k stocks with the highest value of a field, highest first.
+   * Time complexity is O(log n + k).
+   * 
+   * @param field The stock value to be ranked by.
+   * @param k The maximum number of stocks to be returned.
+   * @return The stream of the top stocks.
+   * @throws IllegalStateException If no secondary index is kept for the field.
+   */
+	public Stream<Stock>
+	topStocks(SecondaryIndex.Field field, int k) {
+		return secondaryIndex(field).top(k);
+	}
+
+	/**
+   * Method to stream the stocks with a value of a field in [low, high], lowest first.
+   * Time complexity is O(log n + k) for k stocks in the range.
+   * 
+   * @param field The stock value to be compared.
+   * @param low The inclusive lower bound of the value.
+   * @param high The inclusive upper bound of the value.
+   * @return The stream of stocks in the range.
+   * @throws IllegalStateException If no secondary index is kept for the field.
+   */
+	public Stream<Stock>
+	stocksBetween(SecondaryIndex.Field field, double low, double high) {
+		return secondaryIndex(field).range(low, high);
+	}
+
+	/**
+   * Method to get the secondary index of a field.
+   * @param field The stock value the index is ordered by.
+   * @return The secondary index of the field.
+   * @throws IllegalStateException If no secondary index is kept for the field.
+   */
+	private SecondaryIndex
+	secondaryIndex(SecondaryIndex.Field field) {
+		SecondaryIndex secondaryIndex = secondaryIndexes[field.ordinal()];
+		if (secondaryIndex == null)
+			throw new IllegalStateException("No secondary index on " + field);
+		return secondaryIndex;
+	}
+
+	/**
+   * Method to insert a stock into every secondary index.
+   * @param stock The stock object to be inserted.
+   */
+	private void
+	insertSecondary(Stock stock) {
+		for (SecondaryIndex secondaryIndex : secondaryIndexes) {
+			if (secondaryIndex != null)
+				secondaryIndex.insert(stock);
+		}
+	}
+
+	/**
+   * Method to remove a stock from every secondary index, before its symbol changes or after it left the tree.
+   * @param stock The stock object to be removed.
+   */
+	private void
+	removeSecondary(Stock stock) {
+		for (SecondaryIndex secondaryIndex : secondaryIndexes) {
+			if (secondaryIndex != null)
+				secondaryIndex.remove(stock);
+		}
+	}
+
+	/**
+   * Method to move a stock in every secondary index whose value changes, before the values are changed.
+   * 
+   * @param stock The stock object, still holding its old values.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   */
+	private void
+	moveSecondary(Stock stock, double price, long volume, long marketCap) {
+		for (SecondaryIndex secondaryIndex : secondaryIndexes) {
+			if (secondaryIndex != null)
+				secondaryIndex.move(stock, price, volume, marketCap);
+		}
+	}
+
+	/**
+   * Get the index of a symbol in symbol order, which is the number of stocks with a smaller symbol.
+   * @param symbol The symbol to be ranked.
+   * @return The number of stocks with a smaller symbol.
+   */
+	@Override
+	public int
+	rankOf(String symbol) {
+		return avlTree.rank(symbol);
+	}
+
+	/**
+   * Get the stock at an index in symbol order.
+   * @param index The index of the stock, starting from 0.
+   * @return The stock object at the index.
+   * @throws IndexOutOfBoundsException If there is no stock at the index.
+   */
+	@Override
+	public Stock
+	stockAt(int index) {
+		return avlTree.select(index);
+	}
+
+	/**
+   * Get the number of stocks with symbols in [fromSymbol, toSymbol).
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks in the range.
+   */
+	@Override
+	public int
+	countStocks(String fromSymbol, String toSymbol) {
+		return avlTree.countInRange(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Get the number of stocks, the total volume, the total market capitalization and the price range
+   * of the stocks with symbols in [fromSymbol, toSymbol). Time complexity is O(log n).
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The totals of the stocks in the range.
+   */
+	@Override
+	public AVLTree.Aggregate
+	aggregateStocks(String fromSymbol, String toSymbol) {
+		return avlTree.aggregate(fromSymbol, toSymbol);
+	}
+
+	/**
+   * Method to stream one page of stocks in symbol order, the rows [fromIndex, toIndex).
+   * The page is found in O(log n) instead of walking past all earlier stocks.
+   * 
+   * @param fromIndex The inclusive index of the first row.
+   * @param toIndex The exclusive index of the last row.
+   * @return The stream of stocks on the page.
+   * @throws IndexOutOfBoundsException If the rows are not within the stocks.
+   */
+	@Override
+	public Stream<Stock>
+	pageStocks(int fromIndex, int toIndex) {
+		return avlTree.slice(fromIndex, toIndex);
+	}
+
+	/**
+   * Get the number of stocks managed.
+   * @return The number of stocks in the AVL tree.
+   */
+	@Override
+	public int
+	size() {
+		return avlTree.size();
+	}
+
+	/**
+   * Get the height of the AVL tree.
+   * @return The height of the AVL tree.
+   */
+	@Override
+	public int
+	getHeight() {
+		return avlTree.getHeight();
+	}
+
+	/**
+   * Method to verify that the AVL tree is ordered and balanced.
+   * @return True if the AVL tree invariants hold, false otherwise.
+   */
+	@Override
+	public boolean
+	isBalanced() {
+		return avlTree.isBalanced();
 	}
 
 	/**
@@ -99,7 +613,18 @@ public class StockDataManager {
    */
 	public void
 	printTree() {
-		System.out.println("Stocks:");
-		avlTree.inOrderTraversal();
+		OutputSink out = new OutputSink();
+		printTree(out);
+		out.flush();
+	}
+
+	/**
+   * Method to write the stocks in the AVL tree to an output sink.
+   * @param out The sink to write to, which is not flushed.
+   */
+	public void
+	printTree(OutputSink out) {
+		out.println("Stocks:");
+		avlTree.inOrderTraversal(out);
 	}
 }
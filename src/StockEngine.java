@@ -0,0 +1,401 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * StockEngine.java
+ * This class runs a StockDataManager as a single-writer engine. Producer threads publish commands into
+ * a preallocated ring buffer without taking a lock, and one engine thread applies them to the manager
+ * in the order they were published. The engine thread takes every command that is ready as one batch
+ * and frees the slots once per batch, so the tree stays in the cache of one core and producers never
+ * contend on it.
+ * Each command is either submitted, returning a CompletableFuture completed by the engine thread,
+ * or posted, which is fire-and-forget. Searches go through the ring buffer as well, as the manager
+ * must only be used by the engine thread; stocks handed out are copies.
+ */
+public class StockEngine implements AutoCloseable {
+	/**
+   * The default number of slots of the ring buffer.
+   */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/**
+   * The number of times a waiting thread spins before it yields, and yields before it parks.
+   */
+	private static final int SPINS = 100;
+	/**
+   * The time a waiting producer parks before it looks at the ring buffer again, in nanoseconds.
+   */
+	private static final long PRODUCER_PARK_NANOS = 1_000;
+
+	/**
+   * The operations of the commands.
+   */
+	private static final byte ADD = 0;
+	private static final byte REMOVE = 1;
+	private static final byte SEARCH = 2;
+	private static final byte UPDATE = 3;
+	private static final byte BARRIER = 4;
+	private static final byte STOP = 5;
+
+	private final StockDataManager manager;
+	private final Slot[] slots;
+	private final int mask;
+	/**
+   * The sequence each slot was last published with, so the engine thread sees which slots are ready.
+   */
+	private final AtomicLongArray published;
+	/**
+   * The next sequence to be claimed by a producer.
+   */
+	private final AtomicLong claimed = new AtomicLong();
+	/**
+   * The sequence of the first command not yet applied. Slots below it may be reused.
+   */
+	private final AtomicLong applied = new AtomicLong();
+	private final Thread engine;
+	/**
+   * Whether the engine thread is about to park, in which case producers unpark it.
+   */
+	private volatile boolean sleeping;
+	private volatile boolean closed;
+	/**
+   * The counters of the engine thread, which only that thread writes.
+   */
+	private volatile long batches;
+	private volatile long failures;
+
+	/**
+   * Constructor to start an engine with the default capacity on a new StockDataManager.
+   */
+	public StockEngine() {
+		this(new StockDataManager(), DEFAULT_CAPACITY);
+	}
+
+	/**
+   * Constructor to start an engine on a manager. The manager must not be used by other threads afterwards.
+   * @param manager The manager the commands are applied to.
+   * @param capacity The number of slots of the ring buffer, rounded up to a power of two.
+   * @throws IllegalArgumentException If the capacity is less than 1 or more than 2^30.
+   */
+	public StockEngine(StockDataManager manager, int capacity) {
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		if (capacity == 1)
+			size = 1;
+		this.manager = manager;
+		this.slots = new Slot[size];
+		this.mask = size - 1;
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot();
+			published.set(i, -1);
+		}
+		engine = new Thread(this::run, "stock-engine");
+		engine.setDaemon(true);
+		engine.start();
+	}
+
+	/**
+   * Method to add or update a stock.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return The future of 0 if the stock is added, 1 if the stock is updated.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public CompletableFuture<Integer>
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		CompletableFuture<Integer> result = new CompletableFuture<>();
+		publish(ADD, symbol, null, price, volume, marketCap, result);
+		return result;
+	}
+
+	/**
+   * Method to remove a stock.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The future of the removed stock, or of null if the stock was not found.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public CompletableFuture<Stock>
+	removeStock(String symbol) {
+		CompletableFuture<Stock> result = new CompletableFuture<>();
+		publish(REMOVE, symbol, null, 0, 0, 0, result);
+		return result;
+	}
+
+	/**
+   * Method to search for a stock.
+   * @param symbol The symbol of the stock to be searched.
+   * @return The future of a copy of the stock if found, of null otherwise.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public CompletableFuture<Stock>
+	searchStock(String symbol) {
+		CompletableFuture<Stock> result = new CompletableFuture<>();
+		publish(SEARCH, symbol, null, 0, 0, 0, result);
+		return result;
+	}
+
+	/**
+   * Method to update the details of a stock.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return The future of a copy of the updated stock, or of null if the stock was not found.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public CompletableFuture<Stock>
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		CompletableFuture<Stock> result = new CompletableFuture<>();
+		publish(UPDATE, symbol, newSymbol, newPrice, newVolume, newMarketCap, result);
+		return result;
+	}
+
+	/**
+   * Method to add or update a stock without waiting for a result.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public void
+	postAddOrUpdateStock(String symbol, double price, long volume, long marketCap) {
+		publish(ADD, symbol, null, price, volume, marketCap, null);
+	}
+
+	/**
+   * Method to remove a stock without waiting for a result.
+   * @param symbol The symbol of the stock to be removed.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public void
+	postRemoveStock(String symbol) {
+		publish(REMOVE, symbol, null, 0, 0, 0, null);
+	}
+
+	/**
+   * Method to update the details of a stock without waiting for a result.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public void
+	postUpdateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap) {
+		publish(UPDATE, symbol, newSymbol, newPrice, newVolume, newMarketCap, null);
+	}
+
+	/**
+   * Method to wait until all commands published before are applied.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	public void
+	flush() {
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		publish(BARRIER, null, null, 0, 0, 0, result);
+		result.join();
+	}
+
+	/**
+   * Method to apply the commands published before and stop the engine thread.
+   * Commands must not be published while the engine is being closed. Closing twice has no effect.
+   */
+	@Override
+	public void
+	close() {
+		if (closed)
+			return;
+		publish(STOP, null, null, 0, 0, 0, null);
+		closed = true;
+		try {
+			engine.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+   * Get the number of commands applied so far.
+   * @return The number of commands applied.
+   */
+	public long
+	getAppliedCount() {
+		return applied.get();
+	}
+
+	/**
+   * Get the number of batches taken by the engine thread so far.
+   * @return The number of batches.
+   */
+	public long
+	getBatchCount() {
+		return batches;
+	}
+
+	/**
+   * Get the number of posted commands that failed so far.
+   * Submitted commands that fail complete their future exceptionally instead.
+   * @return The number of failed posted commands.
+   */
+	public long
+	getFailureCount() {
+		return failures;
+	}
+
+	/**
+   * Method to claim a slot, fill it with a command and publish it to the engine thread.
+   * The producer waits while the ring buffer is full.
+   * 
+   * @param operation The operation.
+   * @param symbol The symbol of the stock.
+   * @param newSymbol The new symbol of an update.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @param result The future to be completed, or null.
+   * @throws IllegalStateException If the engine is closed.
+   */
+	private void
+	publish(byte operation, String symbol, String newSymbol, double price, long volume, long marketCap,
+		CompletableFuture<?> result) {
+		if (closed)
+			throw new IllegalStateException("Engine is closed");
+		long sequence = claimed.getAndIncrement();
+		for (int waits = 0; sequence - applied.get() >= slots.length; waits++) {
+			if (waits < SPINS)
+				Thread.onSpinWait();
+			else if (waits < 2 * SPINS)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+		}
+		Slot slot = slots[(int)sequence & mask];
+		slot.operation = operation;
+		slot.symbol = symbol;
+		slot.newSymbol = newSymbol;
+		slot.price = price;
+		slot.volume = volume;
+		slot.marketCap = marketCap;
+		slot.result = result;
+		published.set((int)sequence & mask, sequence);
+		if (sleeping)
+			LockSupport.unpark(engine);
+	}
+
+	/**
+   * Method run by the engine thread to apply the published commands in batches until a STOP command.
+   * Each batch holds every command that is ready, and its slots are freed together once it is applied.
+   */
+	private void
+	run() {
+		long next = 0;
+		int waits = 0;
+		while (true) {
+			long end = next;
+			while (end - next < slots.length && published.get((int)end & mask) == end)
+				end++;
+			if (end == next) {
+				if (waits < SPINS) {
+					Thread.onSpinWait();
+				} else if (waits < 2 * SPINS) {
+					Thread.yield();
+				} else {
+					sleeping = true;
+					if (published.get((int)next & mask) != next)
+						LockSupport.park(this);
+					sleeping = false;
+				}
+				waits++;
+				continue;
+			}
+			waits = 0;
+			boolean stop = false;
+			batches++;
+			for (long sequence = next; sequence < end; sequence++)
+				stop |= apply(slots[(int)sequence & mask]);
+			next = end;
+			applied.set(next);
+			if (stop)
+				return;
+		}
+	}
+
+	/**
+   * Method to apply the command of a slot, complete its future and clear the slot.
+   * @param slot The slot.
+   * @return True if the command is STOP, false otherwise.
+   */
+	@SuppressWarnings("unchecked")
+	private boolean
+	apply(Slot slot) {
+		CompletableFuture<Object> result = (CompletableFuture<Object>)slot.result;
+		Object value = null;
+		try {
+			switch (slot.operation) {
+			case ADD:
+				value = manager.addOrUpdateStock(slot.symbol, slot.price, slot.volume, slot.marketCap);
+				break;
+			case REMOVE:
+				value = manager.removeStock(slot.symbol);
+				break;
+			case SEARCH:
+				value = copy(manager.searchStock(slot.symbol));
+				break;
+			case UPDATE:
+				value = copy(manager.updateStock(slot.symbol, slot.newSymbol, slot.price, slot.volume, slot.marketCap));
+				break;
+			default:
+				break;
+			}
+			if (result != null)
+				result.complete(value);
+		} catch (RuntimeException e) {
+			if (result != null)
+				result.completeExceptionally(e);
+			else
+				failures++;
+		}
+		boolean stop = slot.operation == STOP;
+		slot.symbol = null;
+		slot.newSymbol = null;
+		slot.result = null;
+		return stop;
+	}
+
+	/**
+   * Method to copy a stock before it is handed to another thread, as the engine thread keeps changing the original.
+   * @param stock The stock, or null.
+   * @return The copy, or null.
+   */
+	private static Stock
+	copy(Stock stock) {
+		return (stock == null) ? null : new Stock(stock);
+	}
+
+	/**
+   * Class holding one command of the ring buffer. The fields are written by the producer that claimed
+   * the slot before it is published, and read by the engine thread after.
+   */
+	private static class Slot {
+		private byte operation;
+		private String symbol;
+		private String newSymbol;
+		private double price;
+		private long volume;
+		private long marketCap;
+		private CompletableFuture<?> result;
+	}
+}
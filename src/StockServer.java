@@ -0,0 +1,339 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * StockServer.java
+ * This class serves a StockDataManager over TCP with the text protocol of the input files of Main.
+ * Clients send one command per line and get the lines Main prints for it; the output of PRINT is
+ * followed by an empty line so clients can find its end.
+ * One thread runs a selector over all connections and applies the commands itself, so the manager
+ * needs no locks. Clients may pipeline: every whole line that has arrived is answered, and the answers
+ * are written back together. A connection whose client does not read its answers stops being read
+ * once a bounded amount of output is waiting, and a connection that still has lines to answer yields
+ * to the others after each such amount, so one client cannot starve the rest.
+ */
+public class StockServer implements Closeable {
+	/**
+   * The default port of the server.
+   */
+	public static final int DEFAULT_PORT = 7070;
+
+	/**
+   * The size of the read buffer of a connection, which is also the maximum length of a line.
+   */
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+	/**
+   * The size of the buffer answers are formatted into before they are queued.
+   */
+	private static final int SINK_BUFFER_SIZE = 1 << 13;
+	/**
+   * The number of queued bytes of a connection at which it stops answering until they are written.
+   */
+	private static final int MAX_PENDING = 1 << 16;
+	/**
+   * The number of interned symbols at which the symbol table is emptied.
+   */
+	private static final int MAX_SYMBOLS = 1 << 16;
+
+	private final StockDataManager manager;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final int port;
+	/**
+   * The symbols of all connections, which are only used by the selector thread. The table is emptied
+   * between commands whenever it holds MAX_SYMBOLS symbols, so symbols that clients send once, such as
+   * searches for missing stocks, do not stay in it for the life of the server.
+   */
+	private final SymbolTable symbols = new SymbolTable();
+	private volatile boolean closed;
+
+	/**
+   * Constructor to open a server socket for a manager. The connections are served by run.
+   * @param manager The manager the commands are applied to, which must not be used by other threads.
+   * @param address The address to listen on; port 0 picks a free port.
+   * @throws IOException If the socket cannot be opened or bound.
+   */
+	public StockServer(StockDataManager manager, InetSocketAddress address) throws IOException {
+		this.manager = manager;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		try {
+			server.bind(address, 1024);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+			port = ((InetSocketAddress)server.getLocalAddress()).getPort();
+		} catch (IOException e) {
+			server.close();
+			selector.close();
+			throw e;
+		}
+	}
+
+	/**
+   * Main method to serve a new StockDataManager on a port of the loopback address.
+   * @param args The command line arguments.
+   * @throws IOException If the server cannot be started.
+   */
+	public static void
+	main(String[] args) throws IOException {
+		if (args.length > 1) {
+			System.out.println("Usage: java StockServer [port]");
+			return;
+		}
+		int port = (args.length == 1) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		try (StockServer server = new StockServer(new StockDataManager(), new InetSocketAddress("127.0.0.1", port))) {
+			System.out.println("Listening on port " + server.getPort());
+			server.run();
+		}
+	}
+
+	/**
+   * Get the port the server listens on.
+   * @return The port.
+   */
+	public int
+	getPort() {
+		return port;
+	}
+
+	/**
+   * Method to serve the connections on the calling thread until the server is closed.
+   * A failing connection is closed without affecting the others.
+   * @throws IOException If the selector fails.
+   */
+	public void
+	run() throws IOException {
+		try {
+			while (!closed) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Connection connection = (Connection)key.attachment();
+					try {
+						serve(key, connection);
+					} catch (IOException e) {
+						disconnect(key, connection);
+					}
+				}
+			}
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection)
+					disconnect(key, (Connection)key.attachment());
+			}
+			server.close();
+			selector.close();
+		}
+	}
+
+	/**
+   * Method to stop the server. The thread in run closes the connections and the socket.
+   */
+	@Override
+	public void
+	close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	/**
+   * Method to accept the waiting connections and register them for reading.
+   * A connection that cannot be set up is dropped.
+   */
+	private void
+	accept() {
+		while (true) {
+			SocketChannel channel;
+			try {
+				channel = server.accept();
+			} catch (IOException e) {
+				return;
+			}
+			if (channel == null)
+				return;
+			try {
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				channel.register(selector, SelectionKey.OP_READ, new Connection(channel, symbols));
+			} catch (IOException e) {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+					// the connection is dropped anyway
+				}
+			}
+		}
+	}
+
+	/**
+   * Method to answer the whole lines a connection has received and write the queued answers.
+   * At most MAX_PENDING bytes of answers are produced per call. If more lines may be waiting,
+   * the connection asks to be called again once writable, which lets the other connections go first.
+   * 
+   * @param key The key of the connection.
+   * @param connection The connection.
+   * @throws IOException If the connection cannot be read or written.
+   */
+	private void
+	serve(SelectionKey key, Connection connection) throws IOException {
+		boolean idle = false;
+		while (connection.outbox.size() < MAX_PENDING) {
+			if (symbols.size() >= MAX_SYMBOLS)
+				symbols.clear();
+			if (!connection.parser.next(connection.command)) {
+				idle = true;
+				break;
+			}
+			Main.processCommand(connection.command, manager, connection.out);
+			if (connection.command.getType() == Command.Type.PRINT)
+				connection.out.println();
+		}
+		connection.out.flush();
+		connection.outbox.writeTo(connection.channel);
+
+		boolean ended = connection.parser.isEndOfInput();
+		if (ended && idle && connection.outbox.size() == 0) {
+			disconnect(key, connection);
+		} else if (!idle || ended) {
+			key.interestOps(SelectionKey.OP_WRITE);
+		} else if (connection.outbox.size() > 0) {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+   * Method to close a connection.
+   * @param key The key of the connection.
+   * @param connection The connection.
+   */
+	private static void
+	disconnect(SelectionKey key, Connection connection) {
+		key.cancel();
+		try {
+			connection.parser.close();
+		} catch (IOException ignored) {
+			// the connection is gone anyway
+		}
+	}
+
+	/**
+   * Class holding the state of one client connection.
+   */
+	private static class Connection {
+		private final SocketChannel channel;
+		private final CommandParser parser;
+		private final Command command = new Command();
+		private final Outbox outbox = new Outbox();
+		/**
+     * The sink the answers are formatted with, which drains into the outbox.
+     */
+		private final OutputSink out = new OutputSink(outbox, SINK_BUFFER_SIZE);
+
+		/**
+     * Constructor to set up the parser of a connection.
+     * @param channel The channel of the connection.
+     * @param symbols The table the symbols are interned in.
+     */
+		Connection(SocketChannel channel, SymbolTable symbols) {
+			this.channel = channel;
+			this.parser = new CommandParser(channel, symbols, READ_BUFFER_SIZE);
+		}
+	}
+
+	/**
+   * Class holding the answers of a connection that are not written to the socket yet.
+   */
+	private static class Outbox extends OutputStream {
+		private byte[] data = new byte[SINK_BUFFER_SIZE];
+		private int start;
+		private int end;
+
+		/**
+     * Method to queue a byte.
+     * @param b The byte.
+     */
+		@Override
+		public void
+		write(int b) {
+			reserve(1);
+			data[end++] = (byte)b;
+		}
+
+		/**
+     * Method to queue bytes.
+     * 
+     * @param bytes The array holding the bytes.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     */
+		@Override
+		public void
+		write(byte[] bytes, int offset, int length) {
+			reserve(length);
+			System.arraycopy(bytes, offset, data, end, length);
+			end += length;
+		}
+
+		/**
+     * Get the number of queued bytes.
+     * @return The number of bytes.
+     */
+		int
+		size() {
+			return end - start;
+		}
+
+		/**
+     * Method to write as many queued bytes to a channel as it takes without waiting.
+     * @param channel The channel.
+     * @throws IOException If the channel cannot be written.
+     */
+		void
+		writeTo(SocketChannel channel) throws IOException {
+			if (start == end)
+				return;
+			start += channel.write(ByteBuffer.wrap(data, start, end - start));
+			if (start == end) {
+				start = 0;
+				end = 0;
+			}
+		}
+
+		/**
+     * Method to make room for bytes behind the queued ones, moving them to the front or growing the array.
+     * @param length The number of bytes.
+     */
+		private void
+		reserve(int length) {
+			if (end + length <= data.length)
+				return;
+			int size = end - start;
+			if (size + length > data.length)
+				data = Arrays.copyOfRange(data, start, Math.max(2 * data.length, size + length));
+			else
+				System.arraycopy(data, start, data, 0, size);
+			start = 0;
+			end = size;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * StockStore.java
+ * This interface declares the core operations of a stock data manager: the point operations, the
+ * navigation by symbol, the renaming of many stocks, the order statistics and the range queries.
+ * StockDataManager and CompactStockDataManager implement it, so callers such as benchmarks can use
+ * either engine through the same type. Whether the stocks handed out are the stored objects or copies
+ * is up to the implementation.
+ */
+public interface StockStore {
+	/**
+   * Method to add or update a stock.
+   * If the stock already exists, it is updated with the new values.
+   * If the stock does not exist, it is added.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   * @return 0 if the stock is added, 1 if the stock is updated.
+   */
+	int
+	addOrUpdateStock(String symbol, double price, long volume, long marketCap);
+
+	/**
+   * Method to remove a stock.
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock, or null if the stock was not found.
+   */
+	Stock
+	removeStock(String symbol);
+
+	/**
+   * Method to search for a stock.
+   * @param symbol The symbol of the stock to be searched.
+   * @return The stock if found, null otherwise.
+   */
+	Stock
+	searchStock(String symbol);
+
+	/**
+   * Method to update the details of a stock. A stock already stored under the new symbol is replaced.
+   * 
+   * @param symbol The symbol of the stock to be updated.
+   * @param newSymbol The new symbol of the stock.
+   * @param newPrice The new price of the stock.
+   * @param newVolume The new volume of the stock.
+   * @param newMarketCap The new market capitalization of the stock.
+   * @return The updated stock, or null if the stock was not found.
+   */
+	Stock
+	updateStock(String symbol, String newSymbol, double newPrice, long newVolume, long newMarketCap);
+
+	/**
+   * Method to rename many stocks at once. All renames are applied simultaneously,
+   * and a stock already stored under a new symbol is replaced.
+   * 
+   * @param renames The map from the current symbols to the new symbols.
+   * @return The number of stocks that were renamed.
+   */
+	int
+	renameStocks(Map<String, String> renames);
+
+	/**
+   * Method to get the stock with the greatest symbol less than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock if found, null otherwise.
+   */
+	Stock
+	floorStock(String symbol);
+
+	/**
+   * Method to get the stock with the least symbol greater than or equal to the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock if found, null otherwise.
+   */
+	Stock
+	ceilingStock(String symbol);
+
+	/**
+   * Method to get the stock with the least symbol strictly greater than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock if found, null otherwise.
+   */
+	Stock
+	higherStock(String symbol);
+
+	/**
+   * Method to get the stock with the greatest symbol strictly less than the given symbol.
+   * @param symbol The symbol to be compared with.
+   * @return The stock if found, null otherwise.
+   */
+	Stock
+	lowerStock(String symbol);
+
+	/**
+   * Method to stream the stocks with symbols in [fromSymbol, toSymbol) in symbol order.
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The stream of stocks in the range.
+   */
+	Stream<Stock>
+	rangeStocks(String fromSymbol, String toSymbol);
+
+	/**
+   * Get the index of a symbol in symbol order, which is the number of stocks with a smaller symbol.
+   * @param symbol The symbol to be ranked.
+   * @return The number of stocks with a smaller symbol.
+   */
+	int
+	rankOf(String symbol);
+
+	/**
+   * Get the stock at an index in symbol order.
+   * @param index The index of the stock, starting from 0.
+   * @return The stock at the index.
+   * @throws IndexOutOfBoundsException If there is no stock at the index.
+   */
+	Stock
+	stockAt(int index);
+
+	/**
+   * Get the number of stocks with symbols in [fromSymbol, toSymbol).
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The number of stocks in the range.
+   */
+	int
+	countStocks(String fromSymbol, String toSymbol);
+
+	/**
+   * Get the number of stocks, the total volume, the total market capitalization and the price range
+   * of the stocks with symbols in [fromSymbol, toSymbol).
+   * 
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   * @return The totals of the stocks in the range.
+   */
+	AVLTree.Aggregate
+	aggregateStocks(String fromSymbol, String toSymbol);
+
+	/**
+   * Method to stream one page of stocks in symbol order, the rows [fromIndex, toIndex).
+   * @param fromIndex The inclusive index of the first row.
+   * @param toIndex The exclusive index of the last row.
+   * @return The stream of stocks on the page.
+   * @throws IndexOutOfBoundsException If the rows are not within the stocks.
+   */
+	Stream<Stock>
+	pageStocks(int fromIndex, int toIndex);
+
+	/**
+   * Get the number of stocks managed.
+   * @return The number of stocks.
+   */
+	int
+	size();
+
+	/**
+   * Get the height of the tree holding the stocks.
+   * @return The height of the tree.
+   */
+	int
+	getHeight();
+
+	/**
+   * Method to verify that the tree holding the stocks is ordered and balanced.
+   * @return True if the tree invariants hold, false otherwise.
+   */
+	boolean
+	isBalanced();
+}
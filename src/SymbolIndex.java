@@ -0,0 +1,194 @@
+/**
+ * SymbolIndex.java
+ * This class implements an open-addressing hash index from stock symbols to Stock objects.
+ * Collisions are resolved by linear probing, and removals shift the following entries back
+ * instead of leaving tombstones, so lookups never have to skip deleted slots.
+ * The hash code of every stored symbol is kept next to the stock, so most mismatching slots are
+ * rejected without touching the stock or its symbol. Lookups, insertions and removals are O(1) on average.
+ */
+public class SymbolIndex {
+	/**
+   * The initial number of slots. The table always has a power of two slots.
+   */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Stock[] stocks;
+	private int[] hashes;
+	private int size;
+	private int mask;
+	private int shift;
+
+	/**
+   * Constructor to initialize an empty index.
+   */
+	public SymbolIndex() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+   * Get the stock stored under a symbol.
+   * @param symbol The symbol of the stock to be found.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	get(String symbol) {
+		int hash = symbol.hashCode();
+		for (int i = slot(hash);; i = (i + 1) & mask) {
+			Stock stock = stocks[i];
+			if (stock == null)
+				return null;
+			if (hashes[i] == hash && symbol.equals(stock.getSymbol()))
+				return stock;
+		}
+	}
+
+	/**
+   * Get the stock stored under a symbol while another thread may be modifying the index.
+   * The lookup reads the table once, probes at most every slot and never throws. The result is only
+   * meaningful if the caller checks afterwards that no modification happened during the lookup.
+   *
+   * @param symbol The symbol of the stock to be found.
+   * @return The stock object if found, null otherwise.
+   */
+	public Stock
+	getConcurrent(String symbol) {
+		Stock[] stocks = this.stocks;
+		int[] hashes = this.hashes;
+		if (stocks.length != hashes.length)
+			return null;
+
+		int hash = symbol.hashCode();
+		int mask = stocks.length - 1;
+		int i = (hash * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(mask) & 31);
+		for (int probes = 0; probes < stocks.length; probes++, i = (i + 1) & mask) {
+			Stock stock = stocks[i & mask];
+			if (stock == null)
+				return null;
+			if (hashes[i & mask] == hash && symbol.equals(stock.getSymbol()))
+				return stock;
+		}
+		return null;
+	}
+
+	/**
+   * Store a stock under its symbol, replacing the stock stored under the same symbol.
+   * @param stock The stock object to be stored.
+   * @return The stock previously stored under the symbol, or null if there was none.
+   */
+	public Stock
+	put(Stock stock) {
+		String symbol = stock.getSymbol();
+		int hash = symbol.hashCode();
+		int i = slot(hash);
+		for (; stocks[i] != null; i = (i + 1) & mask) {
+			if (hashes[i] == hash && symbol.equals(stocks[i].getSymbol())) {
+				Stock previous = stocks[i];
+				stocks[i] = stock;
+				return previous;
+			}
+		}
+
+		stocks[i] = stock;
+		hashes[i] = hash;
+		if (++size > stocks.length / 2)
+			resize(stocks.length * 2);
+		return null;
+	}
+
+	/**
+   * Remove the stock stored under a symbol.
+   * The entries after the removed one in its probe run are moved back into the gap where needed.
+   *
+   * @param symbol The symbol of the stock to be removed.
+   * @return The removed stock object, or null if there was no stock with the symbol.
+   */
+	public Stock
+	remove(String symbol) {
+		int hash = symbol.hashCode();
+		int i = slot(hash);
+		for (;; i = (i + 1) & mask) {
+			if (stocks[i] == null)
+				return null;
+			if (hashes[i] == hash && symbol.equals(stocks[i].getSymbol()))
+				break;
+		}
+
+		Stock removed = stocks[i];
+		int gap = i;
+		for (int j = (i + 1) & mask; stocks[j] != null; j = (j + 1) & mask) {
+			int home = slot(hashes[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				stocks[gap] = stocks[j];
+				hashes[gap] = hashes[j];
+				gap = j;
+			}
+		}
+		stocks[gap] = null;
+		size--;
+		return removed;
+	}
+
+	/**
+   * Remove every stock from the index.
+   */
+	public void
+	clear() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+   * Get the number of stocks stored in the index.
+   * @return The number of stocks in the index.
+   */
+	public int
+	size() {
+		return size;
+	}
+
+	/**
+   * Method to find the first slot of a hash code.
+   * The hash code is multiplied by the golden ratio and the top bits are used, which spreads
+   * similar symbols such as SYM1, SYM2, ... over the whole table.
+   *
+   * @param hash The hash code of the symbol.
+   * @return The index of the first slot to probe.
+   */
+	private int
+	slot(int hash) {
+		return (hash * 0x9E3779B9) >>> shift;
+	}
+
+	/**
+   * Method to move all stocks into a table with more slots.
+   * @param capacity The new number of slots, a power of two.
+   */
+	private void
+	resize(int capacity) {
+		Stock[] oldStocks = stocks;
+		int[] oldHashes = hashes;
+		allocate(capacity);
+		for (int i = 0; i < oldStocks.length; i++) {
+			if (oldStocks[i] == null)
+				continue;
+			int j = slot(oldHashes[i]);
+			while (stocks[j] != null)
+				j = (j + 1) & mask;
+			stocks[j] = oldStocks[i];
+			hashes[j] = oldHashes[i];
+			size++;
+		}
+	}
+
+	/**
+   * Method to replace the table by an empty one.
+   * @param capacity The number of slots, a power of two.
+   */
+	private void
+	allocate(int capacity) {
+		hashes = new int[capacity];
+		stocks = new Stock[capacity];
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(mask);
+		size = 0;
+	}
+}
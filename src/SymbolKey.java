@@ -0,0 +1,58 @@
+/**
+ * SymbolKey.java
+ * This class packs the first 8 characters of a stock symbol into a long that sorts like the symbol.
+ * Each character takes one byte, the first character the highest one, and shorter symbols are padded with zero bytes.
+ * A character of 0xFF or above does not fit into a byte, so it and all following bytes are set to 0xFF.
+ * The packing therefore never reverses the order of two symbols: if one key is less than another
+ * as an unsigned number, its symbol is less as well.
+ * Equal keys only mean equal symbols for symbols of at most 8 characters between 1 and 0xFE,
+ * so callers compare the strings whenever the keys are equal.
+ */
+public final class SymbolKey {
+	/**
+   * The number of characters packed into a key.
+   */
+	public static final int LENGTH = 8;
+
+	/**
+   * Private constructor to prevent instantiation of the class.
+   */
+	private SymbolKey() {
+		// private constructor to hide the implicit public one
+	}
+
+	/**
+   * Method to pack the first characters of a symbol into a key.
+   * @param symbol The symbol to be packed.
+   * @return The key of the symbol.
+   */
+	public static long
+	pack(String symbol) {
+		int length = Math.min(symbol.length(), LENGTH);
+		long key = 0;
+		for (int i = 0; i < length; i++) {
+			char c = symbol.charAt(i);
+			if (c >= 0xFF)
+				return (key << 8 << (8 * (LENGTH - 1 - i))) | (-1L >>> (8 * i));
+			key = (key << 8) | c;
+		}
+		return (length < LENGTH) ? key << (8 * (LENGTH - length)) : key;
+	}
+
+	/**
+   * Method to compare a symbol with another one using their keys first.
+   * The strings are only compared when the keys are equal.
+   * 
+   * @param key The key of the first symbol.
+   * @param symbol The first symbol.
+   * @param otherKey The key of the second symbol.
+   * @param otherSymbol The second symbol.
+   * @return A negative number, zero or a positive number if the first symbol is less than, equal to or greater than the second.
+   */
+	public static int
+	compare(long key, String symbol, long otherKey, String otherSymbol) {
+		if (key != otherKey)
+			return Long.compareUnsigned(key, otherKey);
+		return symbol.compareTo(otherSymbol);
+	}
+}
@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SymbolTable.java
+ * This class interns stock symbols read as UTF-8 bytes, so that a symbol seen before is returned
+ * as the same String without decoding or allocating anything.
+ * It is an open-addressing hash table with linear probing over the bytes of the symbols,
+ * doubled whenever it becomes half full. Symbols are only removed all at once by clear.
+ */
+public class SymbolTable {
+	/**
+   * The hash of no bytes, from which the hash of a symbol is built byte by byte.
+   */
+	public static final int EMPTY_HASH = 0x811C9DC5;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private byte[][] keys;
+	private String[] values;
+	private int[] hashes;
+	private int size;
+
+	/**
+   * Constructor to initialize an empty table.
+   */
+	public SymbolTable() {
+		keys = new byte[INITIAL_CAPACITY][];
+		values = new String[INITIAL_CAPACITY];
+		hashes = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+   * Method to get the symbol for the bytes in [from, to) of a buffer, adding it if it is new.
+   * 
+   * @param buffer The buffer holding the UTF-8 bytes of the symbol.
+   * @param from The inclusive start index of the bytes.
+   * @param to The exclusive end index of the bytes.
+   * @return The interned symbol.
+   */
+	public String
+	intern(ByteBuffer buffer, int from, int to) {
+		int hash = EMPTY_HASH;
+		for (int i = from; i < to; i++)
+			hash = hash(hash, buffer.get(i));
+		return intern(buffer, from, to, hash);
+	}
+
+	/**
+   * Method to get the symbol for the bytes in [from, to) of a buffer whose hash the caller already built with hash.
+   * 
+   * @param buffer The buffer holding the UTF-8 bytes of the symbol.
+   * @param from The inclusive start index of the bytes.
+   * @param to The exclusive end index of the bytes.
+   * @param hash The hash of the bytes.
+   * @return The interned symbol.
+   */
+	public String
+	intern(ByteBuffer buffer, int from, int to, int hash) {
+		hash ^= hash >>> 16;
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+		while (keys[slot] != null) {
+			if (hashes[slot] == hash && matches(keys[slot], buffer, from, to))
+				return values[slot];
+			slot = (slot + 1) & mask;
+		}
+
+		byte[] key = new byte[to - from];
+		buffer.get(from, key);
+		String symbol = new String(key, StandardCharsets.UTF_8);
+		keys[slot] = key;
+		values[slot] = symbol;
+		hashes[slot] = hash;
+		if (++size * 2 > keys.length)
+			grow();
+		return symbol;
+	}
+
+	/**
+   * Method to remove all symbols and shrink the table to its initial capacity.
+   * Symbols returned before stay valid, but are no longer returned for their bytes.
+   */
+	public void
+	clear() {
+		keys = new byte[INITIAL_CAPACITY][];
+		values = new String[INITIAL_CAPACITY];
+		hashes = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+   * Get the number of symbols in the table.
+   * @return The number of symbols.
+   */
+	public int
+	size() {
+		return size;
+	}
+
+	/**
+   * Method to add a byte to the FNV-1a hash of the bytes before it.
+   * 
+   * @param hash The hash of the bytes before.
+   * @param b The next byte.
+   * @return The hash including the byte.
+   */
+	public static int
+	hash(int hash, byte b) {
+		return (hash ^ b) * 0x01000193;
+	}
+
+	/**
+   * Method to check whether a key equals the bytes in [from, to) of a buffer.
+   * 
+   * @param key The key of a slot.
+   * @param buffer The buffer holding the bytes.
+   * @param from The inclusive start index of the bytes.
+   * @param to The exclusive end index of the bytes.
+   * @return True if the key and the bytes are equal, false otherwise.
+   */
+	private static boolean
+	matches(byte[] key, ByteBuffer buffer, int from, int to) {
+		if (key.length != to - from)
+			return false;
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != buffer.get(from + i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+   * Method to double the capacity of the table and insert all symbols again.
+   */
+	private void
+	grow() {
+		byte[][] oldKeys = keys;
+		String[] oldValues = values;
+		int[] oldHashes = hashes;
+		keys = new byte[2 * oldKeys.length][];
+		values = new String[keys.length];
+		hashes = new int[keys.length];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null)
+				continue;
+			int slot = oldHashes[i] & mask;
+			while (keys[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+			hashes[slot] = oldHashes[i];
+		}
+	}
+}
@@ -0,0 +1,549 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * WriteAheadLog.java
+ * This class implements an append-only binary log of the changes made to a StockDataManager.
+ * Each record holds its length, a CRC32C checksum, a log sequence number (LSN), the type of change and its arguments.
+ * Records are collected in a buffer and written as one batch, and the sync policy decides when the batch
+ * is forced to the disk: after every record, by a background thread every few milliseconds, or never.
+ * Opening a log replays its records to a handler and cuts off a torn or corrupt tail left by a crash.
+ * The log may be appended to by one thread at a time; only the background flusher runs alongside.
+ */
+public class WriteAheadLog implements Closeable {
+	/**
+   * The policies for forcing the log to the disk.
+   */
+	public enum SyncPolicy {
+		/**
+     * Every record is written and forced before the change returns. Nothing acknowledged is lost.
+     */
+		ALWAYS,
+		/**
+     * Records are written and forced as one group by a background thread every few milliseconds,
+     * so a crash of the machine loses at most the changes of the last interval.
+     */
+		GROUP,
+		/**
+     * Records are written when the buffer is full and forced only on close, leaving the rest to the operating system.
+     */
+		NONE
+	}
+
+	/**
+   * The handler that receives the records of a log when it is opened.
+   */
+	public interface Handler {
+		/**
+     * Method to replay the addition or update of a stock.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param price The price of the stock.
+     * @param volume The volume of the stock.
+     * @param marketCap The market capitalization of the stock.
+     */
+		void add(String symbol, double price, long volume, long marketCap);
+
+		/**
+     * Method to replay the removal of a stock.
+     * @param symbol The symbol of the stock.
+     */
+		void remove(String symbol);
+
+		/**
+     * Method to replay the update of a stock.
+     * 
+     * @param symbol The symbol of the stock.
+     * @param newSymbol The new symbol of the stock.
+     * @param price The new price of the stock.
+     * @param volume The new volume of the stock.
+     * @param marketCap The new market capitalization of the stock.
+     */
+		void update(String symbol, String newSymbol, double price, long volume, long marketCap);
+
+		/**
+     * Method to replay the removal of the stocks with symbols in [fromSymbol, toSymbol).
+     * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+     * @param toSymbol The exclusive upper bound, or null for no upper bound.
+     */
+		void removeRange(String fromSymbol, String toSymbol);
+
+		/**
+     * Method to replay the simultaneous renaming of stocks.
+     * @param renames The map from the current symbols to the new symbols, in the logged order.
+     */
+		void rename(Map<String, String> renames);
+	}
+
+	/**
+   * The types of the records.
+   */
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte UPDATE = 3;
+	private static final byte REMOVE_RANGE = 4;
+	private static final byte RENAME = 5;
+
+	/**
+   * The size of the length and checksum in front of every record.
+   */
+	private static final int HEADER_SIZE = 8;
+	/**
+   * The maximum size of a record body, which guards the replay against a corrupt length.
+   */
+	private static final int MAX_RECORD_SIZE = 1 << 24;
+	/**
+   * The size of a batch and of the read buffer of the replay.
+   */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final SyncPolicy policy;
+	private final CRC32C crc = new CRC32C();
+	/**
+   * The batch of records not yet written to the file. Guarded by the log itself.
+   */
+	private ByteBuffer batch;
+	/**
+   * The batch being written by the flusher, swapped with the current batch so appends do not wait for the disk.
+   */
+	private ByteBuffer spare;
+	/**
+   * The buffer a record is encoded into before it is added to the batch.
+   */
+	private ByteBuffer record;
+	/**
+   * The lock held while writing to the file, so batches reach the file in order.
+   */
+	private final Object writeLock = new Object();
+	private long lastLsn;
+	private final Thread flusher;
+	private volatile boolean closed;
+	/**
+   * The error of the background flusher, thrown by the next append.
+   */
+	private volatile IOException flushError;
+
+	/**
+   * Constructor to open or create a log, replay its records and prepare it for appending.
+   * Records up to the given LSN are skipped, as their changes are already in the snapshot.
+   * The file is cut off after the last complete record with a correct checksum.
+   * 
+   * @param file The file of the log.
+   * @param policy The policy for forcing the log to the disk.
+   * @param groupMillis The interval of the background flusher for the GROUP policy in milliseconds.
+   * @param afterLsn The LSN of the last change already recovered, or 0 to replay all records.
+   * @param handler The handler receiving the replayed records.
+   * @throws IOException If the file cannot be opened or read.
+   */
+	public WriteAheadLog(Path file, SyncPolicy policy, long groupMillis, long afterLsn, Handler handler) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.policy = policy;
+		this.lastLsn = afterLsn;
+		this.batch = ByteBuffer.allocate(BUFFER_SIZE);
+		this.spare = ByteBuffer.allocate(BUFFER_SIZE);
+		this.record = ByteBuffer.allocate(256);
+
+		long validLength = replay(afterLsn, handler);
+		channel.truncate(validLength);
+		channel.position(validLength);
+
+		if (policy == SyncPolicy.GROUP) {
+			flusher = new Thread(() -> runFlusher(groupMillis), "wal-flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		} else {
+			flusher = null;
+		}
+	}
+
+	/**
+   * Method to log the addition or update of a stock.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   */
+	public void
+	appendAdd(String symbol, double price, long volume, long marketCap) {
+		begin(ADD);
+		putString(symbol);
+		putValues(price, volume, marketCap);
+		commit();
+	}
+
+	/**
+   * Method to log the removal of a stock.
+   * @param symbol The symbol of the stock.
+   */
+	public void
+	appendRemove(String symbol) {
+		begin(REMOVE);
+		putString(symbol);
+		commit();
+	}
+
+	/**
+   * Method to log the update of a stock.
+   * 
+   * @param symbol The symbol of the stock.
+   * @param newSymbol The new symbol of the stock.
+   * @param price The new price of the stock.
+   * @param volume The new volume of the stock.
+   * @param marketCap The new market capitalization of the stock.
+   */
+	public void
+	appendUpdate(String symbol, String newSymbol, double price, long volume, long marketCap) {
+		begin(UPDATE);
+		putString(symbol);
+		putString(newSymbol);
+		putValues(price, volume, marketCap);
+		commit();
+	}
+
+	/**
+   * Method to log the removal of the stocks with symbols in [fromSymbol, toSymbol).
+   * @param fromSymbol The inclusive lower bound, or null for no lower bound.
+   * @param toSymbol The exclusive upper bound, or null for no upper bound.
+   */
+	public void
+	appendRemoveRange(String fromSymbol, String toSymbol) {
+		begin(REMOVE_RANGE);
+		putString(fromSymbol);
+		putString(toSymbol);
+		commit();
+	}
+
+	/**
+   * Method to log the simultaneous renaming of stocks.
+   * @param renames The map from the current symbols to the new symbols.
+   */
+	public void
+	appendRename(Map<String, String> renames) {
+		begin(RENAME);
+		ensureRecord(4);
+		record.putInt(renames.size());
+		for (Map.Entry<String, String> rename : renames.entrySet()) {
+			putString(rename.getKey());
+			putString(rename.getValue());
+		}
+		commit();
+	}
+
+	/**
+   * Get the LSN of the last record appended or replayed.
+   * @return The last LSN.
+   */
+	public long
+	getLastLsn() {
+		return lastLsn;
+	}
+
+	/**
+   * Method to write the buffered records to the file and force them to the disk.
+   * @throws UncheckedIOException If the file cannot be written.
+   */
+	public void
+	flush() {
+		try {
+			writeBatch(true);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+   * Method to drop all records, once a snapshot holds their changes. The LSNs keep counting up.
+   * @throws UncheckedIOException If the file cannot be truncated.
+   */
+	public void
+	reset() {
+		synchronized (writeLock) {
+			synchronized (this) {
+				batch.clear();
+			}
+			try {
+				channel.truncate(0);
+				channel.force(true);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+   * Method to stop the flusher, force the buffered records to the disk and close the file.
+   * Closing a closed log has no effect.
+   * @throws IOException If the file cannot be written or closed.
+   */
+	@Override
+	public void
+	close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		if (flusher != null) {
+			LockSupport.unpark(flusher);
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			writeBatch(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+   * Method to start encoding a record with the next LSN.
+   * @param type The type of the record.
+   * @throws UncheckedIOException If the background flusher failed.
+   */
+	private void
+	begin(byte type) {
+		IOException error = flushError;
+		if (error != null)
+			throw new UncheckedIOException(error);
+		record.clear();
+		record.position(HEADER_SIZE);
+		record.putLong(lastLsn + 1);
+		record.put(type);
+	}
+
+	/**
+   * Method to encode a string as its length in UTF-8 bytes followed by the bytes, with length -1 for null.
+   * @param s The string to be encoded, or null.
+   * @throws IllegalArgumentException If the string is longer than 32767 bytes in UTF-8.
+   */
+	private void
+	putString(String s) {
+		if (s == null) {
+			ensureRecord(2);
+			record.putShort((short)-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Symbol too long for the log: " + bytes.length + " bytes");
+		ensureRecord(2 + bytes.length);
+		record.putShort((short)bytes.length);
+		record.put(bytes);
+	}
+
+	/**
+   * Method to encode the values of a stock.
+   * 
+   * @param price The price of the stock.
+   * @param volume The volume of the stock.
+   * @param marketCap The market capitalization of the stock.
+   */
+	private void
+	putValues(double price, long volume, long marketCap) {
+		ensureRecord(24);
+		record.putDouble(price);
+		record.putLong(volume);
+		record.putLong(marketCap);
+	}
+
+	/**
+   * Method to grow the record buffer so that a number of further bytes fits.
+   * @param bytes The number of bytes to be encoded next.
+   */
+	private void
+	ensureRecord(int bytes) {
+		if (record.remaining() < bytes) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * record.capacity(), record.position() + bytes));
+			record.flip();
+			larger.put(record);
+			record = larger;
+		}
+	}
+
+	/**
+   * Method to finish the encoded record, add it to the batch and write the batch as the sync policy demands.
+   * @throws UncheckedIOException If the file cannot be written.
+   */
+	private void
+	commit() {
+		int length = record.position() - HEADER_SIZE;
+		if (length > MAX_RECORD_SIZE)
+			throw new IllegalArgumentException("Log record too large: " + length + " bytes");
+		crc.reset();
+		crc.update(record.array(), HEADER_SIZE, length);
+		record.putInt(0, length);
+		record.putInt(4, (int)crc.getValue());
+		record.flip();
+		lastLsn++;
+
+		try {
+			boolean added;
+			synchronized (this) {
+				added = batch.remaining() >= record.remaining();
+				if (added)
+					batch.put(record);
+			}
+			if (!added) {
+				writeBatch(false);
+				synchronized (writeLock) {
+					while (record.hasRemaining())
+						channel.write(record);
+				}
+			}
+			if (policy == SyncPolicy.ALWAYS)
+				writeBatch(true);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+   * Method to write the batch to the file, swapping it with the spare batch so appends can go on meanwhile.
+   * @param force True to force the file to the disk after writing.
+   * @throws IOException If the file cannot be written.
+   */
+	private void
+	writeBatch(boolean force) throws IOException {
+		synchronized (writeLock) {
+			ByteBuffer full;
+			synchronized (this) {
+				full = batch;
+				batch = spare;
+				spare = full;
+			}
+			full.flip();
+			while (full.hasRemaining())
+				channel.write(full);
+			full.clear();
+			if (force)
+				channel.force(false);
+		}
+	}
+
+	/**
+   * Method run by the background flusher to write and force the batch at a fixed interval.
+   * The flusher parks instead of sleeping, as interrupting a thread in a file operation closes the file.
+   * @param groupMillis The interval in milliseconds.
+   */
+	private void
+	runFlusher(long groupMillis) {
+		while (!closed) {
+			LockSupport.parkNanos(groupMillis * 1_000_000);
+			try {
+				writeBatch(true);
+			} catch (IOException e) {
+				flushError = e;
+				return;
+			}
+		}
+	}
+
+	/**
+   * Method to read the records of the file, pass those after an LSN to the handler and find the end of the valid records.
+   * 
+   * @param afterLsn The LSN of the last change already recovered.
+   * @param handler The handler receiving the replayed records.
+   * @return The length of the file up to the end of the last valid record.
+   * @throws IOException If the file cannot be read.
+   */
+	private long
+	replay(long afterLsn, Handler handler) throws IOException {
+		channel.position(0);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+		long validLength = 0;
+		byte[] body = new byte[256];
+		while (true) {
+			int length;
+			int checksum;
+			try {
+				length = in.readInt();
+				checksum = in.readInt();
+				if (length < 9 || length > MAX_RECORD_SIZE)
+					break;
+				if (body.length < length)
+					body = new byte[Math.max(length, 2 * body.length)];
+				in.readFully(body, 0, length);
+			} catch (EOFException e) {
+				break;
+			}
+			crc.reset();
+			crc.update(body, 0, length);
+			if ((int)crc.getValue() != checksum)
+				break;
+
+			ByteBuffer buffer = ByteBuffer.wrap(body, 0, length);
+			long lsn = buffer.getLong();
+			if (lsn > afterLsn)
+				apply(buffer, handler);
+			lastLsn = Math.max(lastLsn, lsn);
+			validLength += HEADER_SIZE + length;
+		}
+		return validLength;
+	}
+
+	/**
+   * Method to decode a record body after its LSN and pass it to the handler.
+   * @param buffer The buffer positioned at the type of the record.
+   * @param handler The handler receiving the record.
+   * @throws IOException If the record type is unknown.
+   */
+	private static void
+	apply(ByteBuffer buffer, Handler handler) throws IOException {
+		byte type = buffer.get();
+		switch (type) {
+		case ADD:
+			handler.add(getString(buffer), buffer.getDouble(), buffer.getLong(), buffer.getLong());
+			break;
+		case REMOVE:
+			handler.remove(getString(buffer));
+			break;
+		case UPDATE:
+			handler.update(getString(buffer), getString(buffer), buffer.getDouble(), buffer.getLong(), buffer.getLong());
+			break;
+		case REMOVE_RANGE:
+			handler.removeRange(getString(buffer), getString(buffer));
+			break;
+		case RENAME:
+			int count = buffer.getInt();
+			Map<String, String> renames = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++)
+				renames.put(getString(buffer), getString(buffer));
+			handler.rename(renames);
+			break;
+		default:
+			throw new IOException("Unknown log record type: " + type);
+		}
+	}
+
+	/**
+   * Method to decode a string written by putString.
+   * @param buffer The buffer positioned at the string.
+   * @return The string, or null.
+   */
+	private static String
+	getString(ByteBuffer buffer) {
+		int length = buffer.getShort();
+		if (length < 0)
+			return null;
+		String s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return s;
+	}
+}
@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Report.java
+ * This class prints the one-off reports that are not steady-state measurements and so do not fit JMH:
+ * the heap footprint of the engines, the restart and recovery times, the latency of the StockEngine at a
+ * fixed rate and the StockServer over loopback. It is compiled against the application classes by the
+ * report target of the makefile and is not part of the application build.
+ * The report to be printed is selected by name on the command line.
+ */
+public class Report {
+	/**
+   * Private constructor to prevent instantiation of the class.
+   */
+	private Report() {
+		// private constructor to hide the implicit public one
+	}
+
+	/**
+   * Main method to print the report selected by the first argument.
+   * @param args The command line arguments.
+   */
+	public static void
+	main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: java Report <memory|restart|durability|engine|server> [size]");
+			return;
+		}
+		int size = (args.length > 1) ? Integer.parseInt(args[1]) : 1_000_000;
+
+		switch (args[0]) {
+		case "memory":
+			reportMemory(size);
+			break;
+		case "restart":
+			reportRestart(size);
+			break;
+		case "durability":
+			reportDurability(size);
+			break;
+		case "engine":
+			reportEngine(size, 2, 1_000_000);
+			break;
+		case "server":
+			reportServer(size);
+			break;
+		default:
+			System.out.println("Unknown report: " + args[0]);
+			break;
+		}
+	}
+
+	/**
+   * Method to compare the heap taken by the object-based StockDataManager and the column-based
+   * CompactStockDataManager holding the same stocks. The symbols are created beforehand and shared by both,
+   * so the report shows what each engine adds on top of the symbol strings.
+   * 
+   * @param size The number of stocks.
+   */
+	private static void
+	reportMemory(int size) {
+		String[] symbols = createSymbols(size);
+		long baseline = usedMemory();
+
+		StockDataManager manager = new StockDataManager();
+		for (String symbol : symbols)
+			manager.addOrUpdateStock(symbol, 100, 1000, 1000000);
+		long managerBytes = usedMemory() - baseline;
+		System.out.println("StockDataManager:        " + managerBytes / (1024 * 1024) + " MB, " +
+				   managerBytes / size + " bytes per stock (height " + manager.getHeight() + ")");
+		manager = null;
+		baseline = usedMemory();
+
+		CompactStockDataManager compactManager = new CompactStockDataManager();
+		for (String symbol : symbols)
+			compactManager.addOrUpdateStock(symbol, 100, 1000, 1000000);
+		long compactBytes = usedMemory() - baseline;
+		System.out.println("CompactStockDataManager: " + compactBytes / (1024 * 1024) + " MB, " +
+				   compactBytes / size + " bytes per stock (height " + compactManager.getHeight() + ")");
+		System.out.println("Symbols shared by both:  " + symbols.length + " strings, not included above");
+	}
+
+	/**
+   * Method to compare the restart of the heap-based StockDataManager, which has to insert every stock again,
+   * with the restart of the MappedStockDataManager, which maps the file written before.
+   * The heap taken by each restarted manager is reported as well.
+   * 
+   * @param size The number of stocks.
+   */
+	private static void
+	reportRestart(int size) {
+		String[] symbols = createSymbols(size);
+		try {
+			Path file = Files.createTempFile("stocks", ".avl");
+			try {
+				try (MappedStockDataManager manager = new MappedStockDataManager(file)) {
+					for (String symbol : symbols)
+						manager.addOrUpdateStock(symbol, 100, 1000, 1000000);
+				}
+
+				long baseline = usedMemory();
+				long startTime = System.nanoTime();
+				StockDataManager heapManager = new StockDataManager();
+				for (String symbol : symbols)
+					heapManager.addOrUpdateStock(symbol, 100, 1000, 1000000);
+				Stock found = heapManager.searchStock(symbols[size / 2]);
+				long heapTime = System.nanoTime() - startTime;
+				long heapBytes = usedMemory() - baseline;
+				System.out.println("StockDataManager:       restart " + heapTime / 1_000_000 + " ms, heap " +
+						   heapBytes / (1024 * 1024) + " MB (" + found + ")");
+				heapManager = null;
+
+				baseline = usedMemory();
+				startTime = System.nanoTime();
+				try (MappedStockDataManager manager = new MappedStockDataManager(file)) {
+					found = manager.searchStock(symbols[size / 2]);
+					long mappedTime = System.nanoTime() - startTime;
+					long mappedBytes = usedMemory() - baseline;
+					System.out.println("MappedStockDataManager: restart " + mappedTime / 1_000_000 + " ms, heap " +
+							   mappedBytes / (1024 * 1024) + " MB (" + found + ", file " +
+							   Files.size(file) / (1024 * 1024) + " MB)");
+				}
+			} finally {
+				Files.delete(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+   * Method to measure the write throughput of the DurableStockDataManager at each sync policy, and the time
+   * to recover the stocks from the log alone and from a snapshot with a short log tail.
+   * The ALWAYS policy forces every write, so it is measured with at most 20000 writes.
+   * 
+   * @param size The number of writes.
+   */
+	private static void
+	reportDurability(int size) {
+		String[] symbols = createSymbols(size);
+		try {
+			for (WriteAheadLog.SyncPolicy policy : WriteAheadLog.SyncPolicy.values()) {
+				int writes = (policy == WriteAheadLog.SyncPolicy.ALWAYS) ? Math.min(size, 20000) : size;
+				Path directory = Files.createTempDirectory("stocks");
+				try {
+					long startTime = System.nanoTime();
+					try (DurableStockDataManager manager = new DurableStockDataManager(directory, policy,
+													 DurableStockDataManager.DEFAULT_GROUP_MILLIS, Long.MAX_VALUE)) {
+						for (int i = 0; i < writes; i++)
+							manager.addOrUpdateStock(symbols[i], 100, i, 1000000);
+					}
+					long writeTime = System.nanoTime() - startTime;
+
+					startTime = System.nanoTime();
+					long logTime;
+					try (DurableStockDataManager manager = new DurableStockDataManager(directory, policy)) {
+						logTime = System.nanoTime() - startTime;
+						manager.snapshot();
+						for (int i = 0; i < writes / 100; i++)
+							manager.addOrUpdateStock(symbols[i], 101, i, 1000000);
+					}
+
+					startTime = System.nanoTime();
+					try (DurableStockDataManager manager = new DurableStockDataManager(directory, policy)) {
+						long snapshotTime = System.nanoTime() - startTime;
+						System.out.println("Policy " + policy + ": " + writes + " writes at " +
+								   (long)(writes / (writeTime / 1e9)) + " writes/s, recovery from log " +
+								   logTime / 1_000_000 + " ms, from snapshot and 1% log " +
+								   snapshotTime / 1_000_000 + " ms (" + manager.size() + " stocks)");
+					}
+				} finally {
+					try (Stream<Path> files = Files.list(directory)) {
+						for (Path file : (Iterable<Path>)files::iterator)
+							Files.delete(file);
+					}
+					Files.delete(directory);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+   * Method to measure the StockEngine. First the producers post commands as fast as they can to find the
+   * throughput, then they submit commands at a fixed total rate and the end-to-end latency of each command
+   * is measured from the time it was due to be sent, so a stalled producer does not hide the delay.
+   * The commands are 50% ADD, 40% UPDATE and 10% REMOVE on 100000 symbols.
+   * 
+   * @param size The number of commands of each measurement.
+   * @param producers The number of producer threads.
+   * @param rate The target number of commands per second of all producers together.
+   */
+	private static void
+	reportEngine(int size, int producers, long rate) {
+		String[] symbols = createSymbols(100000);
+		int perProducer = size / producers;
+		System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors() + ", producers: " + producers);
+
+		try (StockEngine engine = new StockEngine()) {
+			Thread[] threads = new Thread[producers];
+			long startTime = System.nanoTime();
+			for (int t = 0; t < producers; t++) {
+				final int id = t;
+				threads[t] = new Thread(() -> {
+					Random random = new Random(id);
+					for (int i = 0; i < perProducer; i++) {
+						String symbol = symbols[random.nextInt(symbols.length)];
+						int kind = random.nextInt(10);
+						if (kind < 5)
+							engine.postAddOrUpdateStock(symbol, 100, i, 1000000);
+						else if (kind < 9)
+							engine.postUpdateStock(symbol, symbol, 101, i, 2000000);
+						else
+							engine.postRemoveStock(symbol);
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads)
+				join(thread);
+			engine.flush();
+			long elapsed = System.nanoTime() - startTime;
+			System.out.println("Posted: " + (long)(perProducer * producers / (elapsed / 1e9)) + " commands/s, " +
+					   engine.getAppliedCount() / Math.max(engine.getBatchCount(), 1) + " commands/batch");
+
+			for (int divisor : new int[] {10, 4, 2, 1}) {
+				long target = rate / divisor;
+				int count = Math.max(perProducer / divisor, 1);
+				long[] latencies = new long[count * producers];
+				long interval = producers * 1_000_000_000L / target;
+				long batches = engine.getBatchCount();
+				long applied = engine.getAppliedCount();
+				long start = System.nanoTime() + 1_000_000;
+				for (int t = 0; t < producers; t++) {
+					final int id = t;
+					threads[t] = new Thread(() -> {
+						Random random = new Random(id);
+						for (int i = 0; i < count; i++) {
+							long due = start + id * interval / producers + i * interval;
+							while (System.nanoTime() < due)
+								Thread.yield();
+							String symbol = symbols[random.nextInt(symbols.length)];
+							int kind = random.nextInt(10);
+							CompletableFuture<?> result;
+							if (kind < 5)
+								result = engine.addOrUpdateStock(symbol, 100, i, 1000000);
+							else if (kind < 9)
+								result = engine.updateStock(symbol, symbol, 101, i, 2000000);
+							else
+								result = engine.removeStock(symbol);
+							int index = id * count + i;
+							result.thenRun(() -> latencies[index] = System.nanoTime() - due);
+						}
+					});
+					threads[t].start();
+				}
+				for (Thread thread : threads)
+					join(thread);
+				engine.flush();
+				elapsed = System.nanoTime() - start;
+				Arrays.sort(latencies);
+				System.out.println("Target: " + target + " commands/s, achieved: " + (long)(latencies.length / (elapsed / 1e9)) +
+						   " commands/s, " + (engine.getAppliedCount() - applied) / Math.max(engine.getBatchCount() - batches, 1) +
+						   " commands/batch, latency p50: " + percentile(latencies, 0.5) + " ns, p90: " +
+						   percentile(latencies, 0.9) + " ns, p99: " + percentile(latencies, 0.99) + " ns, p99.9: " +
+						   percentile(latencies, 0.999) + " ns, max: " + latencies[latencies.length - 1] + " ns");
+			}
+		}
+	}
+
+	/**
+   * Method to measure a StockServer over loopback with the LoadGenerator, with 1, 16 and 128 connections
+   * that either wait for each answer or pipeline 32 commands at a time.
+   * @param size The number of commands of each measurement.
+   */
+	private static void
+	reportServer(int size) {
+		try {
+			StockServer server = new StockServer(new StockDataManager(), new InetSocketAddress("127.0.0.1", 0));
+			Thread serverThread = new Thread(() -> {
+				try {
+					server.run();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, "stock-server");
+			serverThread.start();
+			try {
+				InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+				System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+				for (int connections : new int[] {1, 16, 128}) {
+					for (int pipeline : new int[] {1, 32})
+						System.out.println(LoadGenerator.run(address, connections, size, pipeline));
+				}
+			} finally {
+				server.close();
+				join(serverThread);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+   * Method to find a percentile of sorted values.
+   * @param sorted The values in ascending order.
+   * @param fraction The percentile as a fraction between 0 and 1.
+   * @return The value below which the fraction of the values lies.
+   */
+	private static long
+	percentile(long[] sorted, double fraction) {
+		return sorted[Math.min((int)(sorted.length * fraction), sorted.length - 1)];
+	}
+
+	/**
+   * Method to measure the heap in use after the garbage collector has run.
+   * @return The number of bytes in use.
+   */
+	private static long
+	usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+   * Method to create the symbols used by the reports outside of the measured code.
+   * @param size The number of symbols.
+   * @return The array of symbols SYM0, SYM1, ...
+   */
+	private static String[]
+	createSymbols(int size) {
+		String[] symbols = new String[size];
+		for (int i = 0; i < size; i++)
+			symbols[i] = "SYM" + i;
+		return symbols;
+	}
+
+	/**
+   * Method to sleep without having to handle the interruption at every call site.
+   * @param millis The time to sleep in milliseconds.
+   */
+	private static void
+	sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+   * Method to wait for a thread without having to handle the interruption at every call site.
+   * @param thread The thread to wait for.
+   */
+	private static void
+	join(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}